@@ -0,0 +1,38 @@
+package com.iragui.benchmarks;
+
+import com.iragui.GUI;
+import com.iragui.objects.GUIObject;
+
+/**
+ * Plain object for benchmarks that need many of them. It receives mouse
+ * events and counts them, so the handlers cannot be optimized away.
+ */
+class BenchmarkObject extends GUIObject {
+
+	int events=0;
+
+	BenchmarkObject(String name, int layer, GUI gui, int x, int y, int sizeX, int sizeY) {
+		super(name, layer, gui, x, y, sizeX, sizeY, true, true, false, true, false);
+	}
+
+	@Override
+	public void update(boolean showFrame) {}
+
+	@Override
+	public void sendKey(int key, int action) {}
+
+	@Override
+	public void sendMousePos(long window, double xPos, double yPos) {
+		events++;
+	}
+
+	@Override
+	public void sendMouseButton(long window, int button, int action, int mods) {
+		events++;
+	}
+
+	@Override
+	public void sendMouseScroll(long window, double xOffset, double yOffset) {
+		events++;
+	}
+}
@@ -0,0 +1,35 @@
+package com.iragui.benchmarks;
+
+import com.iragui.GUI;
+
+/**
+ * Creates the {@link GUI} the benchmarks run against. It never opens a window
+ * and renders headless, so no display is needed. Benchmarks that create
+ * objects drawing with their own shader need an OpenGL context and use the
+ * headless EGL one; the others render on the CPU and need no driver at all.
+ */
+final class HeadlessGUI {
+
+	private HeadlessGUI() {}
+
+	/**
+	 * @param width    frame width in pixels
+	 * @param height   frame height in pixels
+	 * @param software true to render on the CPU, false for headless OpenGL
+	 * @return a started GUI with logging turned off
+	 */
+	static GUI create(int width, int height, boolean software) {
+		System.setProperty("java.awt.headless", "true");
+		GUI gui = new GUI("IraGUI benchmark", width, height, width, height, false, false, false, false, false, true);
+		gui.logOutput=false;
+		gui.getWindow().setHeadless(true);
+		gui.getWindow().setSoftwareRendering(software);
+		gui.begin();
+		return gui;
+	}
+
+	/** Releases the GUI's context and native buffers. */
+	static void close(GUI gui) {
+		gui.getWindow().close();
+	}
+}
@@ -0,0 +1,92 @@
+package com.iragui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.glfw.GLFW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iragui.GUI;
+import com.iragui.listeners.MouseListener;
+
+/**
+ * Dispatches mouse events through the {@link MouseListener} to many
+ * registered objects. With {@link #stacked} every object lies on the same
+ * tile under the cursor and receives each event; otherwise they are tiled
+ * over the frame and an event only reaches the few near the cursor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MouseDispatchBenchmark {
+
+	private static final int WIDTH=1920, HEIGHT=1080, TILE=24;
+
+	@Param({"10", "100", "1000"})
+	public int listeners;
+
+	@Param({"true", "false"})
+	public boolean stacked;
+
+	private GUI gui;
+	private MouseListener mouse;
+	private double[] pathX,pathY;
+	private int next;
+
+	@Setup
+	public void setup() {
+		gui = HeadlessGUI.create(WIDTH, HEIGHT, true);
+		mouse = gui.getWindow().getMouseListener();
+		int columns = WIDTH/TILE;
+		for(int i=0;i<listeners;i++) {
+			if(stacked) {
+				new BenchmarkObject("benchmark:"+i, i%8, gui, 0, 0, TILE, TILE);
+			} else {
+				new BenchmarkObject("benchmark:"+i, i%8, gui, (i%columns)*TILE, (i/columns)*TILE%HEIGHT, TILE, TILE);
+			}
+		}
+		// a diagonal sweep, so hover sets change between events; cursor y runs top down
+		int extentX = stacked?TILE:WIDTH, extentY = stacked?TILE:HEIGHT;
+		pathX = new double[256];
+		pathY = new double[256];
+		for(int i=0;i<pathX.length;i++) {
+			pathX[i] = (double) i*extentX/pathX.length;
+			pathY[i] = HEIGHT-(double) i*extentY/pathY.length;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		HeadlessGUI.close(gui);
+	}
+
+	@Benchmark
+	public void mouseMove() {
+		next = (next+1)%pathX.length;
+		mouse.mousePosCallback(0, pathX[next], pathY[next]);
+	}
+
+	@Benchmark
+	public void mouseClick() {
+		mouse.mouseButtonCallback(0, GLFW.GLFW_MOUSE_BUTTON_LEFT, GLFW.GLFW_PRESS, 0);
+		mouse.mouseButtonCallback(0, GLFW.GLFW_MOUSE_BUTTON_LEFT, GLFW.GLFW_RELEASE, 0);
+	}
+
+	@Benchmark
+	public void mouseScroll() {
+		mouse.mouseScrollCallback(0, 0, 1);
+	}
+}
@@ -0,0 +1,77 @@
+package com.iragui.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iragui.GUI;
+
+/**
+ * Adds, removes and re-layers objects in a {@link GUI} that already holds
+ * many of them. Objects are spread over {@link #layers} layers and each call
+ * works on the next object in turn, so the cost of finding an object in its
+ * layer list shows up instead of always hitting the same end of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectRegistryBenchmark {
+
+	@Param({"10000"})
+	public int objects;
+
+	@Param({"1", "16"})
+	public int layers;
+
+	private GUI gui;
+	private BenchmarkObject[] pool;
+	private int next;
+
+	@Setup
+	public void setup() {
+		gui = HeadlessGUI.create(1920, 1080, true);
+		pool = new BenchmarkObject[objects];
+		for(int i=0;i<objects;i++) {
+			pool[i] = new BenchmarkObject("benchmark:"+i, i%layers, gui, (i*8)%1920, ((i*8)/1920*8)%1080, 8, 8);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		HeadlessGUI.close(gui);
+	}
+
+	private BenchmarkObject nextObject() {
+		next = (next+1)%objects;
+		return pool[next];
+	}
+
+	@Benchmark
+	public void removeThenAdd() {
+		BenchmarkObject o = nextObject();
+		gui.removeObject(o);
+		gui.addObject(o);
+	}
+
+	@Benchmark
+	public void changeLayer() {
+		BenchmarkObject o = nextObject();
+		// moves to the neighbouring layer and back, leaving the layout as it was
+		o.setLayer(o.getLayer()+1);
+		o.setLayer(o.getLayer()-1);
+	}
+}
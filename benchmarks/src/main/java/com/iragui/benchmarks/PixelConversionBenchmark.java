@@ -0,0 +1,67 @@
+package com.iragui.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.BufferUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iragui.objects.WrappedBufferedImage;
+import com.iragui.util.PixelConverter;
+
+/**
+ * Converts a {@link BufferedImage} into a pixel buffer the way
+ * {@link WrappedBufferedImage} does when it wraps an image, in every direction
+ * a directional image generates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelConversionBenchmark {
+
+	/** Edge length of the square image; 512 and up cross {@link PixelConverter#PARALLEL_THRESHOLD}. */
+	@Param({"32", "128", "512", "2048"})
+	public int size;
+
+	@Param({"true", "false"})
+	public boolean rgba;
+
+	@Param({"0", "1"})
+	public int direction;
+
+	private BufferedImage image;
+	private ByteBuffer target;
+
+	@Setup
+	public void setup() {
+		image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		Random random = new Random(1);
+		for(int y=0;y<size;y++) {
+			for(int x=0;x<size;x++) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		target = BufferUtils.createByteBuffer(size*size*4);
+	}
+
+	@Benchmark
+	public ByteBuffer convert() {
+		target.clear();
+		return PixelConverter.convert(image, target, rgba, direction);
+	}
+}
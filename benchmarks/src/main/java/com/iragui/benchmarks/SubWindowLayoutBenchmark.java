@@ -0,0 +1,82 @@
+package com.iragui.benchmarks;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iragui.GUI;
+import com.iragui.objects.SubWindowObject;
+
+/**
+ * Runs the constraint pass of {@link SubWindowObject#update(boolean)} over a
+ * chain of nested subwindows, each holding {@link #children} objects spread
+ * over the constraint anchors. The root moves before every pass, so each
+ * child is actually repositioned. Subwindows draw their background with a
+ * shader, so this benchmark needs the headless OpenGL context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubWindowLayoutBenchmark {
+
+	@Param({"1", "4", "8"})
+	public int depth;
+
+	@Param({"10", "100"})
+	public int children;
+
+	@Param({"false", "true"})
+	public boolean decorated;
+
+	private GUI gui;
+	private SubWindowObject[] windows;
+	private int next;
+
+	@Setup
+	public void setup() {
+		gui = HeadlessGUI.create(1920, 1080, false);
+		windows = new SubWindowObject[depth];
+		for(int d=0;d<depth;d++) {
+			int size = 1600-d*150;
+			windows[d] = new SubWindowObject("benchmark:window:"+d, (d+1)*SubWindowObject.SUBWINDOW_LAYER_FACTOR*4,
+					gui, 0, 0, size, size/2, true, true,
+					Color.DARK_GRAY, Color.GRAY, decorated, false, Color.WHITE, "window "+d);
+			if(d>0) {
+				windows[d-1].add(windows[d], SubWindowObject.CENTER);
+			}
+			for(int i=0;i<children;i++) {
+				BenchmarkObject o = new BenchmarkObject("benchmark:window:"+d+":"+i, 0, gui, 0, 0, 16, 16);
+				windows[d].add(o, i%(SubWindowObject.BOTTOM_RIGHT+1));
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		HeadlessGUI.close(gui);
+	}
+
+	@Benchmark
+	public void moveAndUpdate() {
+		next^=1;
+		windows[0].setX(next*64);
+		for(int d=0;d<depth;d++) {
+			windows[d].update(true);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.iragui.benchmarks;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.glfw.GLFW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iragui.GUI;
+import com.iragui.objects.SubWindowObject;
+import com.iragui.objects.WritableTextBoxObject;
+
+/**
+ * Types into and deletes from a long line of a {@link WritableTextBoxObject},
+ * the way key events reach it. Each call inserts one character at the front
+ * of the line, where the most text has to move, and removes it again, so the
+ * line keeps its length across iterations. Text boxes follow their parent
+ * subwindow, whose shader needs the headless OpenGL context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBoxEditBenchmark {
+
+	@Param({"100", "1000", "5000"})
+	public int lineLength;
+
+	private GUI gui;
+	private WritableTextBoxObject box;
+
+	@Setup
+	public void setup() {
+		gui = HeadlessGUI.create(1920, 1080, false);
+		SubWindowObject window = new SubWindowObject("benchmark:window", SubWindowObject.SUBWINDOW_LAYER_FACTOR*4, gui,
+				0, 0, 1920, 1080, true, true, Color.DARK_GRAY, Color.GRAY, false, false, Color.WHITE, "text box");
+		box = new WritableTextBoxObject("benchmark:textBox", 1, gui, 0, 0, 1920, 1080, true, true, 4, window,
+				new Font("Monospaced", Font.PLAIN, 14), Color.WHITE, Color.BLACK, true);
+		window.add(box, SubWindowObject.FREE);
+		window.forceFocus();
+		StringBuilder line = new StringBuilder(lineLength);
+		for(int i=0;i<lineLength;i++) {
+			line.append((char)('a'+i%26));
+		}
+		box.appendLine(line.toString());
+		box.update(true);
+	}
+
+	@TearDown
+	public void tearDown() {
+		HeadlessGUI.close(gui);
+	}
+
+	@Benchmark
+	public void insertThenBackspace() {
+		box.sendKey(GLFW.GLFW_KEY_X, GLFW.GLFW_PRESS);
+		box.sendKey(GLFW.GLFW_KEY_X, GLFW.GLFW_RELEASE);
+		box.update(true);
+		// backspace is applied on the next update
+		box.sendKey(GLFW.GLFW_KEY_BACKSPACE, GLFW.GLFW_PRESS);
+		box.sendKey(GLFW.GLFW_KEY_BACKSPACE, GLFW.GLFW_RELEASE);
+		box.update(true);
+	}
+}
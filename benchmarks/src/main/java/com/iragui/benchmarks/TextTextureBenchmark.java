@@ -0,0 +1,83 @@
+package com.iragui.benchmarks;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iragui.GUI;
+import com.iragui.objects.TextObject;
+
+/**
+ * Changes the text of a {@link TextObject} and draws a frame, across string
+ * lengths. Each call switches between two strings of the same length through
+ * {@link TextObject#setText(String)}, which measures the new text, and then
+ * renders, so the glyph lookups and quad emission of headless OpenGL, or the
+ * AWT redraw of the software renderer, are measured too. Only the text's
+ * damaged rectangle is redrawn, so the frame costs little beyond the text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextTextureBenchmark {
+
+	@Param({"8", "64", "512"})
+	public int length;
+
+	@Param({"true", "false"})
+	public boolean antiAliasing;
+
+	@Param({"false", "true"})
+	public boolean software;
+
+	private GUI gui;
+	private TextObject text;
+	private String[] strings;
+	private int next;
+
+	@Setup
+	public void setup() {
+		gui = HeadlessGUI.create(1920, 1080, software);
+		StringBuilder a = new StringBuilder(length), b = new StringBuilder(length);
+		for(int i=0;i<length;i++) {
+			a.append((char)('a'+i%26));
+			b.append((char)('A'+i%26));
+		}
+		strings = new String[] {a.toString(), b.toString()};
+		text = new TextObject("benchmark:text", 1, gui, 0, 0, true, true, strings[0],
+				new Font("Monospaced", Font.PLAIN, 16), Color.WHITE, Color.BLACK, antiAliasing);
+		// rasterizes both strings' glyphs once, so iterations measure the steady state
+		for(String s : strings) {
+			text.setText(s);
+			gui.getWindow().render(true);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		HeadlessGUI.close(gui);
+	}
+
+	@Benchmark
+	public TextObject setTextAndRender() {
+		next^=1;
+		text.setText(strings[next]);
+		gui.getWindow().render(true);
+		return text;
+	}
+}
@@ -6,6 +6,8 @@ import java.io.InputStream;
 
 import javax.imageio.ImageIO;
 
+import com.iragui.util.ImageCache;
+
 public class FileSystem {
 	public static InputStream getInputStream(String string) {
 		try {
@@ -15,9 +17,14 @@ public class FileSystem {
 		}
 	}
 	
+	/**
+	 * Returns the decoded image for a resource path. Images are decoded once and
+	 * shared through {@link ImageCache#getImage(String)}, so the result must not be
+	 * modified; use {@link #loadImage(InputStream)} for a private copy.
+	 */
 	public static BufferedImage getImage(String string) {
 		try {
-			return loadImage(FileSystem.class.getClassLoader().getResourceAsStream(string));
+			return ImageCache.getImage(string);
 		} catch(Exception e) {
 			e.printStackTrace();
 			return null;
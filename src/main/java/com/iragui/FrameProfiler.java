@@ -0,0 +1,434 @@
+package com.iragui;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.lwjgl.opengl.GL33;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Measures where a window's frame time goes.
+ * <p>
+ * A frame runs from the end of one {@link Window#render(boolean)} (or
+ * {@link Window#render()}) call to the end of the next. During it the profiler
+ * adds up CPU time per phase ({@link #UPDATE}, {@link #RENDER},
+ * {@link #UPLOAD}, {@link #SWAP}, {@link #EVENTS}) and counts draw calls,
+ * texture uploads, shader binds and culled objects. The GPU time of the
+ * object pass is measured with {@code GL_TIME_ELAPSED} queries that are read
+ * a few frames later without waiting, so {@link Frame#getGpuNanos()} belongs to
+ * the earlier frame {@link Frame#getGpuFrame()}. Phases may nest: render time
+ * includes the uploads made while drawing.
+ * </p>
+ *
+ * <p>Finished frames go into a ring of the last {@link #HISTORY} frames that
+ * other threads read without locking through {@link #getFrame(int, Frame)},
+ * and are committed as {@code com.iragui.Frame} JFR events when a recording
+ * enables them. Profiling is off by default unless {@code -Diragui.profile=true}
+ * is set; while off every hook returns after one check.</p>
+ *
+ * <p>Code deep in the drawing path reports to the profiler attached to its
+ * thread, see {@link #current()}. With threaded rendering the render thread
+ * reports to the same profiler, so its draw calls and swaps land in whichever
+ * frame is being collected when they happen, and no GPU time is measured.</p>
+ */
+public class FrameProfiler {
+
+	/** Updating objects and dispatching input in {@link GUI#update()}. */
+	public static final int UPDATE = 0;
+	/** Drawing or recording the objects of a frame. */
+	public static final int RENDER = 1;
+	/** Uploading changed pixels to textures. */
+	public static final int UPLOAD = 2;
+	/** Presenting the frame with {@code glfwSwapBuffers}. */
+	public static final int SWAP = 3;
+	/** Polling window events and flushing input into the queue. */
+	public static final int EVENTS = 4;
+	/** Number of phases. */
+	public static final int PHASES = 5;
+
+	/** Draw calls issued. */
+	public static final int DRAW_CALLS = 0;
+	/** Texture uploads started. */
+	public static final int UPLOADS = 1;
+	/** Bytes of pixels uploaded to textures. */
+	public static final int UPLOAD_BYTES = 2;
+	/** Programs bound with {@code glUseProgram}. */
+	public static final int SHADER_BINDS = 3;
+	/** Objects skipped because they could not be seen. */
+	public static final int CULLED = 4;
+	/** Number of counters. */
+	public static final int COUNTERS = 5;
+
+	/** Number of recent frames kept. */
+	public static final int HISTORY = 240;
+
+	private static final int GPU_QUERIES = 4;
+
+	// slot layout: number, start, duration, gpu time, gpu frame, phases, counters
+	private static final int NUMBER = 0, START = 1, DURATION = 2, GPU_NANOS = 3, GPU_FRAME = 4, FIRST_PHASE = 5;
+	private static final int FIRST_COUNTER = FIRST_PHASE+PHASES;
+	private static final int SLOT = FIRST_COUNTER+COUNTERS;
+
+	private static final ThreadLocal<FrameProfiler> attached = new ThreadLocal<>();
+
+	private volatile boolean enabled = Boolean.getBoolean("iragui.profile");
+
+	private final LongAdder[] phases = new LongAdder[PHASES];
+	private final LongAdder[] counters = new LongAdder[COUNTERS];
+
+	private final long[] ring = new long[HISTORY*SLOT];
+	// per slot: 2*frame+1 while frame is written into it, 2*frame+2 once done
+	private final AtomicLongArray stamps = new AtomicLongArray(HISTORY);
+	private final AtomicLong published = new AtomicLong();
+	private long frameStart = System.nanoTime();
+
+	private int[] queries;
+	private final long[] queryFrame = new long[GPU_QUERIES];
+	private final boolean[] queryPending = new boolean[GPU_QUERIES];
+	private int nextQuery=0;
+	private long gpuNanos=-1,gpuFrame=-1;
+
+	FrameProfiler() {
+		for(int i=0;i<PHASES;i++) {
+			phases[i] = new LongAdder();
+		}
+		for(int i=0;i<COUNTERS;i++) {
+			counters[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @return the enabled profiler attached to the calling thread, or null if
+	 *         there is none or it is disabled
+	 */
+	public static FrameProfiler current() {
+		FrameProfiler p = attached.get();
+		return p!=null && p.enabled?p:null;
+	}
+
+	/** Makes this the profiler returned by {@link #current()} on the calling thread. */
+	void attach() {
+		attached.set(this);
+	}
+
+	/** Detaches the calling thread's profiler. */
+	static void detach() {
+		attached.remove();
+	}
+
+	/**
+	 * Adds to a counter of the calling thread's profiler, if it is enabled.
+	 *
+	 * @param counter one of {@link #DRAW_CALLS}, {@link #UPLOADS},
+	 *                {@link #UPLOAD_BYTES}, {@link #SHADER_BINDS}, {@link #CULLED}
+	 * @param amount  the amount to add
+	 */
+	public static void count(int counter, long amount) {
+		FrameProfiler p = current();
+		if(p!=null) {
+			p.counters[counter].add(amount);
+		}
+	}
+
+	/**
+	 * Counts one texture upload of the calling thread's profiler.
+	 *
+	 * @param bytes the number of pixel bytes uploaded
+	 */
+	public static void countUpload(long bytes) {
+		FrameProfiler p = current();
+		if(p!=null) {
+			p.counters[UPLOADS].increment();
+			p.counters[UPLOAD_BYTES].add(bytes);
+		}
+	}
+
+	/**
+	 * Enables or disables profiling. Disabled profilers keep the frames they
+	 * already collected.
+	 *
+	 * @param enabled whether to collect frames
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled=enabled;
+	}
+
+	/** @return true if frames are collected */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Starts timing a phase.
+	 *
+	 * @return the start time to pass to {@link #stop(int, long)}, or 0 if disabled
+	 */
+	public long start() {
+		return enabled?System.nanoTime():0;
+	}
+
+	/**
+	 * Adds the time since {@link #start()} to a phase of the current frame.
+	 *
+	 * @param phase one of {@link #UPDATE}, {@link #RENDER}, {@link #UPLOAD},
+	 *              {@link #SWAP}, {@link #EVENTS}
+	 * @param start the value returned by {@link #start()}
+	 */
+	public void stop(int phase, long start) {
+		if(start!=0) {
+			phases[phase].add(System.nanoTime()-start);
+		}
+	}
+
+	/**
+	 * Starts a GPU timer query around the object pass. Needs the context the
+	 * earlier queries were created in. Skipped, without waiting, while the
+	 * next query's result is still outstanding.
+	 *
+	 * @return true if a query was started and {@link #endGpuTimer()} must follow
+	 */
+	boolean beginGpuTimer() {
+		if(!enabled) {
+			return false;
+		}
+		if(queries==null) {
+			queries = new int[GPU_QUERIES];
+			GL33.glGenQueries(queries);
+		}
+		if(queryPending[nextQuery]) {
+			return false;
+		}
+		GL33.glBeginQuery(GL33.GL_TIME_ELAPSED, queries[nextQuery]);
+		return true;
+	}
+
+	/** Ends the query started by {@link #beginGpuTimer()}. */
+	void endGpuTimer() {
+		GL33.glEndQuery(GL33.GL_TIME_ELAPSED);
+		queryPending[nextQuery]=true;
+		queryFrame[nextQuery]=published.get();
+		nextQuery=(nextQuery+1)%GPU_QUERIES;
+	}
+
+	/** Collects the GPU timer results that are ready, without waiting for the others. */
+	private void pollGpuTimers() {
+		if(queries==null) {
+			return;
+		}
+		for(int i=0;i<GPU_QUERIES;i++) {
+			if(queryPending[i] && GL33.glGetQueryObjecti(queries[i], GL33.GL_QUERY_RESULT_AVAILABLE)!=0) {
+				long nanos = GL33.glGetQueryObjecti64(queries[i], GL33.GL_QUERY_RESULT);
+				queryPending[i]=false;
+				if(queryFrame[i]>gpuFrame) {
+					gpuFrame=queryFrame[i];
+					gpuNanos=nanos;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the GPU timer queries. Must be called in the context they were
+	 * created in, before it is released or another context becomes current.
+	 */
+	void deleteGpuTimers() {
+		if(queries!=null) {
+			GL33.glDeleteQueries(queries);
+			queries=null;
+			for(int i=0;i<GPU_QUERIES;i++) {
+				queryPending[i]=false;
+			}
+		}
+	}
+
+	/**
+	 * Finishes the current frame: reads ready GPU timers, publishes the frame
+	 * into the ring, commits its JFR event and starts the next one.
+	 */
+	void endFrame() {
+		long now = System.nanoTime();
+		if(!enabled) {
+			frameStart=now;
+			return;
+		}
+		pollGpuTimers();
+
+		long number = published.get();
+		int slot = (int) (number%HISTORY);
+		int base = slot*SLOT;
+		// mark the slot as being written before any of its values change
+		stamps.set(slot, 2*number+1);
+		VarHandle.storeStoreFence();
+		ring[base+NUMBER]=number;
+		ring[base+START]=frameStart;
+		ring[base+DURATION]=now-frameStart;
+		ring[base+GPU_NANOS]=gpuNanos;
+		ring[base+GPU_FRAME]=gpuFrame;
+		for(int i=0;i<PHASES;i++) {
+			ring[base+FIRST_PHASE+i]=phases[i].sumThenReset();
+		}
+		for(int i=0;i<COUNTERS;i++) {
+			ring[base+FIRST_COUNTER+i]=counters[i].sumThenReset();
+		}
+		stamps.setRelease(slot, 2*number+2);
+		// readers see the slot once the count covers it
+		published.set(number+1);
+		frameStart=now;
+
+		FrameEvent event = new FrameEvent();
+		if(event.shouldCommit()) {
+			event.frame=number;
+			event.frameTime=ring[base+DURATION];
+			event.updateTime=ring[base+FIRST_PHASE+UPDATE];
+			event.renderTime=ring[base+FIRST_PHASE+RENDER];
+			event.uploadTime=ring[base+FIRST_PHASE+UPLOAD];
+			event.swapTime=ring[base+FIRST_PHASE+SWAP];
+			event.eventTime=ring[base+FIRST_PHASE+EVENTS];
+			event.gpuTime=Math.max(gpuNanos,0);
+			event.gpuFrame=gpuFrame;
+			event.drawCalls=ring[base+FIRST_COUNTER+DRAW_CALLS];
+			event.uploads=ring[base+FIRST_COUNTER+UPLOADS];
+			event.uploadBytes=ring[base+FIRST_COUNTER+UPLOAD_BYTES];
+			event.shaderBinds=ring[base+FIRST_COUNTER+SHADER_BINDS];
+			event.culled=ring[base+FIRST_COUNTER+CULLED];
+			event.commit();
+		}
+	}
+
+	/** @return the number of frames published so far */
+	public long getFrameCount() {
+		return published.get();
+	}
+
+	/**
+	 * Copies a recent frame. Safe to call from any thread while frames are
+	 * being published.
+	 *
+	 * @param age    0 for the last finished frame, 1 for the one before, up to
+	 *               {@link #HISTORY}{@code -2}
+	 * @param target receives the frame
+	 * @return false if that frame does not exist or was overwritten while copying
+	 */
+	public boolean getFrame(int age, Frame target) {
+		long count = published.get();
+		long number = count-1-age;
+		if(age<0 || age>=HISTORY-1 || number<0) {
+			return false;
+		}
+		int slot = (int) (number%HISTORY);
+		long stamp = stamps.getAcquire(slot);
+		if(stamp!=2*number+2) {
+			return false;
+		}
+		System.arraycopy(ring, slot*SLOT, target.values, 0, SLOT);
+		VarHandle.loadLoadFence();
+		// a writer reusing the slot changes the stamp before touching the values
+		return stamps.getOpaque(slot)==stamp;
+	}
+
+	/**
+	 * @param age 0 for the last finished frame, 1 for the one before
+	 * @return a copy of the frame, or null if it is not available
+	 */
+	public Frame getFrame(int age) {
+		Frame f = new Frame();
+		return getFrame(age, f)?f:null;
+	}
+
+	/** A copy of one profiled frame, see {@link FrameProfiler#getFrame(int, Frame)}. */
+	public static class Frame {
+
+		private final long[] values = new long[SLOT];
+
+		/** @return the frame's sequence number, counting from 0 */
+		public long getNumber() {
+			return values[NUMBER];
+		}
+
+		/** @return {@link System#nanoTime()} when the frame started */
+		public long getStartNanos() {
+			return values[START];
+		}
+
+		/** @return the wall time from the end of the previous frame to the end of this one */
+		public long getDurationNanos() {
+			return values[DURATION];
+		}
+
+		/**
+		 * @param phase one of {@link FrameProfiler#UPDATE}, {@link FrameProfiler#RENDER},
+		 *              {@link FrameProfiler#UPLOAD}, {@link FrameProfiler#SWAP},
+		 *              {@link FrameProfiler#EVENTS}
+		 * @return CPU time spent in the phase during the frame
+		 */
+		public long getPhaseNanos(int phase) {
+			return values[FIRST_PHASE+phase];
+		}
+
+		/**
+		 * @param counter one of {@link FrameProfiler#DRAW_CALLS}, {@link FrameProfiler#UPLOADS},
+		 *                {@link FrameProfiler#UPLOAD_BYTES}, {@link FrameProfiler#SHADER_BINDS},
+		 *                {@link FrameProfiler#CULLED}
+		 * @return the counter's value for the frame
+		 */
+		public long getCount(int counter) {
+			return values[FIRST_COUNTER+counter];
+		}
+
+		/** @return GPU time of the object pass of {@link #getGpuFrame()}, or -1 if none was measured yet */
+		public long getGpuNanos() {
+			return values[GPU_NANOS];
+		}
+
+		/** @return the earlier frame {@link #getGpuNanos()} was measured in, or -1 */
+		public long getGpuFrame() {
+			return values[GPU_FRAME];
+		}
+	}
+
+	@Name("com.iragui.Frame")
+	@Label("IraGUI Frame")
+	@Category("IraGUI")
+	@Description("Time and work of one frame of an IraGUI window")
+	@StackTrace(false)
+	static class FrameEvent extends Event {
+		@Label("Frame")
+		long frame;
+		@Label("Frame Time") @Timespan(Timespan.NANOSECONDS)
+		long frameTime;
+		@Label("Update") @Timespan(Timespan.NANOSECONDS)
+		long updateTime;
+		@Label("Render") @Timespan(Timespan.NANOSECONDS)
+		long renderTime;
+		@Label("Texture Upload") @Timespan(Timespan.NANOSECONDS)
+		long uploadTime;
+		@Label("Swap Buffers") @Timespan(Timespan.NANOSECONDS)
+		long swapTime;
+		@Label("Events") @Timespan(Timespan.NANOSECONDS)
+		long eventTime;
+		@Label("GPU Time") @Timespan(Timespan.NANOSECONDS)
+		long gpuTime;
+		@Label("GPU Frame")
+		long gpuFrame;
+		@Label("Draw Calls")
+		long drawCalls;
+		@Label("Texture Uploads")
+		long uploads;
+		@Label("Uploaded") @DataAmount
+		long uploadBytes;
+		@Label("Shader Binds")
+		long shaderBinds;
+		@Label("Culled Objects")
+		long culled;
+	}
+}
@@ -7,7 +7,11 @@ import java.util.TreeMap;
 
 
 import com.iragui.objects.GUIObject;
+import com.iragui.objects.ProfilerOverlay;
 import com.iragui.objects.WrappedBufferedImage;
+import com.iragui.util.AsyncAppender;
+import com.iragui.util.Logger;
+import com.iragui.util.SpatialGrid;
 
 /**
  * Represents the core GUI manager responsible for rendering, updating,
@@ -20,20 +24,28 @@ import com.iragui.objects.WrappedBufferedImage;
  */
 public class GUI {
 	
+	private static final Trace.Scope UPDATE_SCOPE = Trace.scope("GUI.update");
+	
 	private HashSet<GUIObject> objects;
 	protected HashMap<String,GUIObject> objectsByName;
 	protected TreeMap<Integer,ArrayList<GUIObject>> objectsByLayer;
 	
 	private Window window;
+	private ProfilerOverlay profilerOverlay;
+	
+	private final SpatialGrid spatialIndex = new SpatialGrid();
 	
 	private boolean showFrame=true;
 	private boolean redrawEveryFrame;
 	private int frameCounter=0;
 	private final int frameCounterMax=2;
 	
-	 /** Whether to log debug output to the console. */
+	 /** Whether to log output to the console, see {@link #getLogger()}. */
 	public boolean logOutput = true;
 	
+	// created on first use, so the constructor does not hand out this GUI
+	private volatile Logger logger;
+	
 	/** Mouse cursor image used for horizontal resizing. */
 	public WrappedBufferedImage horizontalMouse;
 	
@@ -127,34 +139,68 @@ public class GUI {
 	/**
      * Updates all {@link GUIObject}s in the GUI.
      * <p>
+     * First dispatches the input recorded in the window's
+     * {@link com.iragui.listeners.InputQueue} since the last update.
      * Determines if a new frame should be shown based on
      * the {@code showFrame} and {@code redrawEveryFrame} flags.
      * </p>
      */
 	public void update() {
-		boolean initiallyShowFrame = this.showFrame;
+		Trace.begin(UPDATE_SCOPE);
+		try {
+			long start = window.getProfiler().start();
+			// input recorded during the last poll is handled here, before objects update
+			window.getInputQueue().drain();
+		
+			boolean initiallyShowFrame = this.showFrame;
 		
-		for(Integer l : objectsByLayer.keySet()) {
-			for(int i=0;i<objectsByLayer.get(l).size();i++) {
-				objectsByLayer.get(l).get(i).update(initiallyShowFrame);
+			for(Integer l : objectsByLayer.keySet()) {
+				for(int i=0;i<objectsByLayer.get(l).size();i++) {
+					objectsByLayer.get(l).get(i).update(initiallyShowFrame);
+				}
 			}
-		}
 		
-		if(this.showFrame && !initiallyShowFrame) {
-			// We'll draw next frame
-		} else if(showFrame){
-			if(!redrawEveryFrame) {
-				// No need to draw, we didn't get the signal
-				if(frameCounter>=frameCounterMax) {
-					this.showFrame=false;
-					frameCounter=0;
-				} else {
-					frameCounter++;
+			if(this.showFrame && !initiallyShowFrame) {
+				// We'll draw next frame
+			} else if(showFrame){
+				if(!redrawEveryFrame) {
+					// No need to draw, we didn't get the signal
+					if(frameCounter>=frameCounterMax) {
+						this.showFrame=false;
+						frameCounter=0;
+					} else {
+						frameCounter++;
+					}
 				}
 			}
+			window.getProfiler().stop(FrameProfiler.UPDATE, start);
+		} finally {
+			Trace.end();
 		}
 	}
 	
+	/**
+     * Shows or hides a {@link ProfilerOverlay} in the top left corner of the
+     * window. Showing it enables the window's {@link FrameProfiler}; hiding it
+     * leaves profiling as it is.
+     *
+     * @param visible whether to show the overlay
+     */
+	public void setProfilerOverlay(boolean visible) {
+		if(visible && profilerOverlay==null) {
+			window.getProfiler().setEnabled(true);
+			profilerOverlay = ProfilerOverlay.create("profilerOverlay", this);
+		} else if(!visible && profilerOverlay!=null) {
+			profilerOverlay.destroyObject();
+			profilerOverlay=null;
+		}
+	}
+	
+	/** @return true if the profiler overlay is shown */
+	public boolean isProfilerOverlay() {
+		return this.profilerOverlay!=null;
+	}
+	
 	/** Forces the next frame to be drawn. */
 	public void showNextFrame() {
 		this.showFrame=true;
@@ -175,6 +221,7 @@ public class GUI {
      */
 	public void removeObject(GUIObject o) {
 		objects.remove(o);
+		spatialIndex.remove(o);
 		objectsByName.remove(o.name);
 		removeObjectFromLayerList(o);
 		
@@ -196,12 +243,13 @@ public class GUI {
 	public void addObject(GUIObject o) {
 		
 		if(objects.contains(o)) {
-			println("Already have object "+o.name);
+			getLogger().warn("already have object {}", o.name);
 			return;
 		}
 		
 		objects.add(o);
 		objectsByName.put(o.name,o);
+		spatialIndex.add(o);
 		addObjectToLayerList(o);
 		
 		if(o.includesKeyCallback()) {
@@ -211,7 +259,7 @@ public class GUI {
 			this.window.getMouseListener().add(o);
 		}
 		
-		println("added object "+o.name);
+		getLogger().debug("added object {}", o.name);
 	}
 	
 	 /**
@@ -223,6 +271,10 @@ public class GUI {
 	public void confirmLayerUpdate(int oldLayer,GUIObject o) {
 		removeObjectFromLayerList(o);
 		addObjectToLayerList(o);
+
+		// listeners dispatch in z-order
+		this.window.getKeyListener().getRegistry().invalidateOrder();
+		this.window.getMouseListener().getRegistry().invalidateOrder();
 	}
 	
 	private void removeObjectFromLayerList(GUIObject o) {
@@ -233,30 +285,30 @@ public class GUI {
 						for(int i=0;i<objectsByLayer.get(l).size();i++) {
 							if(objectsByLayer.get(l).get(i)==o) {
 								objectsByLayer.get(l).remove(i);
-								println("object layer dy-sync detected when deleting "+o.name+" from layered list");
+								getLogger().debug("object layer dy-sync detected when deleting {} from layered list", o.name);
 								return;
 							}
 						}
 					}
 				}
 			} else {
-				println("removed "+o.name+" from layered list");
+				getLogger().debug("removed {} from layered list", o.name);
 				return;
 			}
-			println("[Warning] did not delete "+o.name+" from layered list");
+			getLogger().warn("did not delete {} from layered list", o.name);
 		} else {
 			for(Integer l : objectsByLayer.keySet()) {
 				if(!objectsByLayer.get(l).isEmpty()) {
 					for(int i=0;i<objectsByLayer.get(l).size();i++) {
 						if(objectsByLayer.get(l).get(i)==o) {
 							objectsByLayer.get(l).remove(i);
-							println("layer not found, deleted "+o.name+" from layered list anyways");
+							getLogger().debug("layer not found, deleted {} from layered list anyways", o.name);
 							return;
 						}
 					}
 				}
 			}
-			println("[Warning] did not delete "+o.name+" from layered list, and layer not found");
+			getLogger().warn("did not delete {} from layered list, and layer not found", o.name);
 		}
 	}
 	
@@ -300,6 +352,24 @@ public class GUI {
 		}
 	}
 
+	/**
+	 * @return the spatial index of this GUI's objects, used to route mouse events
+	 */
+	public SpatialGrid getSpatialIndex() {
+		return this.spatialIndex;
+	}
+	
+	/**
+	 * Returns the topmost visible object at a point.
+	 *
+	 * @param x x coordinate in window pixels
+	 * @param y y coordinate in window pixels, from the bottom
+	 * @return the object on the highest layer containing the point, or null
+	 */
+	public GUIObject getObjectAt(int x, int y) {
+		return spatialIndex.topmostAt(x,y);
+	}
+	
     /** @return the underlying {@link Window} for this GUI */
 	public Window getWindow() {
 		return this.window;
@@ -315,14 +385,29 @@ public class GUI {
 		return this.objectsByName;
 	}
 	
+	/** @return the logger writing this GUI's console output */
+	public Logger getLogger() {
+		Logger logger = this.logger;
+		if(logger==null) {
+			synchronized(this) {
+				logger = this.logger;
+				if(logger==null) {
+					logger = new Logger(this, AsyncAppender.getShared());
+					this.logger=logger;
+				}
+			}
+		}
+		return logger;
+	}
+	
 	/**
-     * Prints a string to console if {@link #logOutput} is enabled.
+     * Prints a string to console if {@link #logOutput} is enabled, at
+     * {@link Logger#INFO}. Prefer the templates of {@link #getLogger()},
+     * which skip building the string when the level is off.
      *
      * @param string the text to print
      */
 	public void println(String string) {
-		if(this.logOutput) {
-			System.out.println(string);
-		}
+		getLogger().info(string);
 	}
 }
@@ -0,0 +1,154 @@
+package com.iragui;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL;
+import org.lwjgl.egl.EGL10;
+import org.lwjgl.egl.EGL12;
+import org.lwjgl.egl.EGL14;
+import org.lwjgl.egl.EGLCapabilities;
+import org.lwjgl.egl.EXTPlatformBase;
+import org.lwjgl.egl.KHRCreateContext;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * An OpenGL 3.3 core context created through EGL without any window or display server.
+ * <p>
+ * Used by a headless {@link Window} ({@link Window#setHeadless(boolean)}),
+ * which draws every frame into an offscreen framebuffer that can be read back.
+ * The display comes from {@code EGL_MESA_platform_surfaceless} when the EGL
+ * library offers it, so Mesa's llvmpipe renders on machines with neither a GPU
+ * nor an X or Wayland server; otherwise the default display is used.
+ * </p>
+ *
+ * <p>The context is made current on the creating thread.</p>
+ */
+public class HeadlessContext {
+
+	/** Platform enum of {@code EGL_MESA_platform_surfaceless}. */
+	private static final int EGL_PLATFORM_SURFACELESS_MESA = 0x31DD;
+
+	private static volatile boolean loaded=false;
+
+	private long display=NULL;
+	private long context=NULL;
+	private long surface=NULL;
+
+	/**
+	 * Creates the context and makes it current.
+	 *
+	 * @throws IllegalStateException if EGL offers no display, config or
+	 *                               context for desktop OpenGL 3.3 core
+	 */
+	HeadlessContext() {
+		loaded=true;
+		String clientExtensions = EGL14.eglQueryString(EGL10.EGL_NO_DISPLAY, EGL10.EGL_EXTENSIONS);
+		if(EGL.getCapabilities().EGL_EXT_platform_base && clientExtensions!=null
+				&& clientExtensions.contains("EGL_MESA_platform_surfaceless")) {
+			display = EXTPlatformBase.eglGetPlatformDisplayEXT(EGL_PLATFORM_SURFACELESS_MESA, EGL14.EGL_DEFAULT_DISPLAY, (int[]) null);
+		}
+		if(display==EGL10.EGL_NO_DISPLAY) {
+			display = EGL10.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+		}
+		if(display==EGL10.EGL_NO_DISPLAY) {
+			throw new IllegalStateException("No EGL display available");
+		}
+
+		int[] major = new int[1], minor = new int[1];
+		if(!EGL10.eglInitialize(display, major, minor)) {
+			throw new IllegalStateException("Unable to initialize EGL: "+errorString());
+		}
+		EGLCapabilities caps = EGL.createDisplayCapabilities(display, major[0], minor[0]);
+		if(!EGL12.eglBindAPI(EGL14.EGL_OPENGL_API)) {
+			destroy();
+			throw new IllegalStateException("EGL display does not support desktop OpenGL");
+		}
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			int[] configAttributes = {
+					EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+					EGL12.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_BIT,
+					EGL10.EGL_RED_SIZE, 8,
+					EGL10.EGL_GREEN_SIZE, 8,
+					EGL10.EGL_BLUE_SIZE, 8,
+					EGL10.EGL_ALPHA_SIZE, 8,
+					EGL10.EGL_NONE
+			};
+			PointerBuffer configs = stack.mallocPointer(1);
+			int[] count = new int[1];
+			if(!EGL10.eglChooseConfig(display, configAttributes, configs, count) || count[0]==0) {
+				destroy();
+				throw new IllegalStateException("No EGL config for OpenGL with 8 bit RGBA");
+			}
+			long config = configs.get(0);
+
+			int[] contextAttributes = {
+					KHRCreateContext.EGL_CONTEXT_MAJOR_VERSION_KHR, 3,
+					KHRCreateContext.EGL_CONTEXT_MINOR_VERSION_KHR, 3,
+					KHRCreateContext.EGL_CONTEXT_OPENGL_PROFILE_MASK_KHR, KHRCreateContext.EGL_CONTEXT_OPENGL_CORE_PROFILE_BIT_KHR,
+					EGL10.EGL_NONE
+			};
+			context = EGL10.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, contextAttributes);
+			if(context==EGL10.EGL_NO_CONTEXT) {
+				destroy();
+				throw new IllegalStateException("Unable to create an OpenGL 3.3 core context: "+errorString());
+			}
+
+			// frames go to a framebuffer object, a surface is only needed where EGL insists on one
+			if(!caps.EGL_KHR_surfaceless_context) {
+				int[] surfaceAttributes = {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE};
+				surface = EGL10.eglCreatePbufferSurface(display, config, surfaceAttributes);
+			}
+		}
+
+		if(!EGL10.eglMakeCurrent(display, surface, surface, context)) {
+			destroy();
+			throw new IllegalStateException("Unable to make the EGL context current: "+errorString());
+		}
+		if(GL.getFunctionProvider()==null) {
+			GL.create(EGL.getFunctionProvider());
+		}
+		GL.createCapabilities();
+	}
+
+	/** @return the EGL context handle, which also identifies the context to {@link com.iragui.objects.ShaderRegistry} */
+	public long getContext() {
+		return this.context;
+	}
+
+	/**
+	 * Releases the context from this thread and destroys it along with the
+	 * display connection.
+	 */
+	public void destroy() {
+		if(display==EGL10.EGL_NO_DISPLAY) {
+			return;
+		}
+		EGL10.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+		if(surface!=EGL10.EGL_NO_SURFACE) {
+			EGL10.eglDestroySurface(display, surface);
+			surface=NULL;
+		}
+		if(context!=EGL10.EGL_NO_CONTEXT) {
+			EGL10.eglDestroyContext(display, context);
+			context=NULL;
+		}
+		EGL10.eglTerminate(display);
+		EGL12.eglReleaseThread();
+		display=NULL;
+	}
+
+	/**
+	 * @return the EGL context current on this thread, or {@code NULL} if none
+	 *         is or no headless context was ever created
+	 */
+	public static long getCurrentContext() {
+		return loaded?EGL14.eglGetCurrentContext():NULL;
+	}
+
+	private static String errorString() {
+		return "0x"+Integer.toHexString(EGL10.eglGetError());
+	}
+}
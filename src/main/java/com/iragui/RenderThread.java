@@ -0,0 +1,240 @@
+package com.iragui;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import com.iragui.objects.CompositeBuffer;
+import com.iragui.objects.DrawList;
+import com.iragui.objects.Shader;
+import com.iragui.objects.SpriteBatch;
+import com.iragui.util.Logger;
+
+/**
+ * Draws recorded frames on a dedicated thread that owns the window's OpenGL context.
+ * <p>
+ * With threaded rendering ({@link Window#setThreadedRendering(boolean)}) the
+ * thread calling {@link GUI#render()} only records each shown frame into a
+ * {@link DrawList} and submits it here, then goes on with the next update while
+ * this thread draws and presents. Texture uploads stay on the recording thread,
+ * which works in a hidden context sharing textures and programs with the
+ * window; a fence recorded with each frame makes this thread's draw wait for them.
+ * </p>
+ *
+ * <p>{@link #FRAME_SNAPSHOTS} lists rotate between the two threads: one being
+ * recorded, one queued and one being drawn. Frames are never dropped, since a
+ * composited frame only holds its damaged area; when both other snapshots are
+ * busy the recording thread waits, which paces it to the display.</p>
+ */
+public class RenderThread implements Runnable {
+
+	/** Number of frame snapshots shared by the recording and render threads. */
+	public static final int FRAME_SNAPSHOTS = 3;
+
+	private static final Trace.Scope DRAW_SCOPE = Trace.scope("RenderThread.draw");
+
+	private final GUI gui;
+	private final long handle;
+
+	private final ArrayDeque<DrawList> free = new ArrayDeque<>();
+	private final ArrayDeque<DrawList> queued = new ArrayDeque<>();
+	private boolean running=true;
+
+	private Thread thread;
+	private SpriteBatch batch;
+	private final CompositeBuffer composite = new CompositeBuffer();
+	private volatile boolean compositeFailed=false;
+	private int viewportWidth=-1,viewportHeight=-1;
+
+	/**
+	 * @param gui    the GUI whose frames are drawn, used for logging
+	 * @param handle the GLFW window owning the context to draw with; it must
+	 *               not be current on any other thread
+	 */
+	RenderThread(GUI gui, long handle) {
+		this.gui=gui;
+		this.handle=handle;
+		for(int i=0;i<FRAME_SNAPSHOTS;i++) {
+			free.add(new DrawList());
+		}
+	}
+
+	/** Starts drawing submitted frames. */
+	void start() {
+		thread = new Thread(this,"IraGUI render");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns an empty snapshot to record the next frame into, waiting until
+	 * the render thread hands one back.
+	 *
+	 * @return the snapshot, or null if the render thread has stopped
+	 */
+	synchronized DrawList acquire() {
+		while(free.isEmpty() && running) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		if(!running) {
+			return null;
+		}
+		DrawList list = free.poll();
+		list.reset();
+		return list;
+	}
+
+	/**
+	 * Queues a recorded frame for drawing.
+	 *
+	 * @param list a snapshot from {@link #acquire()}
+	 */
+	synchronized void submit(DrawList list) {
+		queued.add(list);
+		notifyAll();
+	}
+
+	/**
+	 * Draws the frames still queued, then stops the thread and releases the
+	 * context. Returns once the context is no longer current on it.
+	 */
+	void stop() {
+		synchronized(this) {
+			running=false;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** @return true if the composite framebuffer was rejected and frames must be drawn in full */
+	boolean isCompositeFailed() {
+		return this.compositeFailed;
+	}
+
+	/** @return true when called from the render thread */
+	boolean isCurrentThread() {
+		return Thread.currentThread()==thread;
+	}
+
+	/** @return the batch replaying frames, valid on the render thread */
+	SpriteBatch getSpriteBatch() {
+		return this.batch;
+	}
+
+	@Override
+	public void run() {
+		GLFW.glfwMakeContextCurrent(handle);
+		GL.createCapabilities();
+		Shader.resetCurrentProgram();
+		GLFW.glfwSwapInterval(1);
+		gui.getWindow().getProfiler().attach();
+		Trace.nameCurrentThread();
+
+		try {
+			batch = new SpriteBatch();
+			while(true) {
+				DrawList list;
+				synchronized(this) {
+					while(queued.isEmpty() && running) {
+						wait();
+					}
+					if(queued.isEmpty()) {
+						break;
+					}
+					list = queued.poll();
+				}
+
+				Trace.begin(DRAW_SCOPE);
+				try {
+					draw(list);
+				} finally {
+					Trace.end();
+				}
+
+				synchronized(this) {
+					free.add(list);
+					notifyAll();
+				}
+			}
+		} catch (Throwable e) {
+			gui.getLogger().log(Logger.ERROR, () -> {
+				StringWriter trace = new StringWriter();
+				e.printStackTrace(new PrintWriter(trace));
+				return "render thread failed: "+trace.toString().stripTrailing();
+			});
+		} finally {
+			synchronized(this) {
+				running=false;
+				notifyAll();
+			}
+			composite.delete();
+			if(batch!=null) {
+				batch.destroy();
+				batch=null;
+			}
+			GL.setCapabilities(null);
+			GLFW.glfwMakeContextCurrent(0);
+			FrameProfiler.detach();
+		}
+	}
+
+	private void draw(DrawList list) {
+		if(list.getFence()!=0) {
+			GL32.glWaitSync(list.getFence(), 0, GL32.GL_TIMEOUT_IGNORED);
+			GL32.glDeleteSync(list.getFence());
+		}
+
+		int width = list.getWidth();
+		int height = list.getHeight();
+		if(width!=viewportWidth || height!=viewportHeight) {
+			GL30.glViewport(0, 0, width, height);
+			viewportWidth=width;
+			viewportHeight=height;
+		}
+		GL30.glClearColor(list.getClearR(), list.getClearG(), list.getClearB(), list.getClearA());
+
+		if(list.isComposited()) {
+			if(!compositeFailed) {
+				composite.ensure(width, height);
+				if(composite.isComplete()) {
+					if(list.getClipWidth()>0 && list.getClipHeight()>0) {
+						composite.beginDamage(list.getClipX(), list.getClipY(), list.getClipWidth(), list.getClipHeight());
+						batch.replay(list);
+					}
+					composite.present();
+					swapBuffers();
+					return;
+				}
+				compositeFailed=true;
+			}
+			// a damage-only frame drawn on a cleared background would flash, so it is
+			// dropped and the recording thread records the next frame in full
+			return;
+		}
+
+		GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
+		batch.replay(list);
+		swapBuffers();
+	}
+
+	private void swapBuffers() {
+		FrameProfiler profiler = gui.getWindow().getProfiler();
+		long start = profiler.start();
+		GLFW.glfwSwapBuffers(handle);
+		profiler.stop(FrameProfiler.SWAP, start);
+	}
+}
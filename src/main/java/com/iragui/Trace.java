@@ -0,0 +1,149 @@
+package com.iragui;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.remotery.Remotery;
+
+/**
+ * Named CPU scopes streamed live to a <a href="https://github.com/Celtoys/Remotery">Remotery</a>
+ * viewer, for watching hitches while they happen rather than after the fact
+ * like the {@link FrameProfiler}.
+ * <p>
+ * Tracing is off unless {@code -Diragui.remotery=true} is set. {@link #ENABLED}
+ * is a constant, so while off the JIT drops every {@link #begin(Scope)} and
+ * {@link #end()} call and the Remotery natives are never loaded. While on, a
+ * server is started on the first use of this class, listening on localhost
+ * only, on port 17815 or {@code -Diragui.remotery.port}. Open Remotery's
+ * {@code vis/index.html} in a browser to connect.
+ * </p>
+ *
+ * <p>Scopes are created once, usually as static fields, so a sample costs no
+ * string encoding:</p>
+ * <pre>{@code
+ * private static final Trace.Scope UPDATE = Trace.scope("GUI.update");
+ *
+ * Trace.begin(UPDATE);
+ * try {
+ *     ...
+ * } finally {
+ *     Trace.end();
+ * }
+ * }</pre>
+ * Scopes nest per thread, so every begin needs its end, also when the code in
+ * between throws.
+ */
+public final class Trace {
+
+	/** Whether scopes are sent to Remotery, from {@code -Diragui.remotery}. */
+	public static final boolean ENABLED = Boolean.getBoolean("iragui.remotery");
+
+	private static final short DEFAULT_PORT = 17815;
+
+	private static volatile long instance;
+
+	static {
+		if(ENABLED) {
+			start();
+		}
+	}
+
+	private Trace() {}
+
+	/**
+	 * The encoded name of a scope and the hash Remotery caches for it.
+	 */
+	public static final class Scope {
+		private final ByteBuffer name;
+		private final IntBuffer hash;
+
+		private Scope(String name) {
+			this.name=MemoryUtil.memUTF8(name);
+			this.hash=MemoryUtil.memCallocInt(1);
+		}
+	}
+
+	/**
+	 * Creates a scope. Its native memory lives as long as the program, so
+	 * create scopes once rather than per call.
+	 *
+	 * @param name the name shown in the viewer
+	 * @return the scope, or null while tracing is off
+	 */
+	public static Scope scope(String name) {
+		if(!ENABLED) {
+			return null;
+		}
+		return new Scope(name);
+	}
+
+	/**
+	 * Opens a scope on the current thread.
+	 *
+	 * @param scope the scope from {@link #scope(String)}
+	 */
+	public static void begin(Scope scope) {
+		if(ENABLED && instance!=0) {
+			Remotery.rmt_BeginCPUSample(scope.name, Remotery.RMTSF_Aggregate, scope.hash);
+		}
+	}
+
+	/** Closes the scope opened last on the current thread. */
+	public static void end() {
+		if(ENABLED && instance!=0) {
+			Remotery.rmt_EndCPUSample();
+		}
+	}
+
+	/** Marks the end of a frame in the viewer. */
+	public static void markFrame() {
+		if(ENABLED && instance!=0) {
+			Remotery.rmt_MarkFrame();
+		}
+	}
+
+	/** Shows the current thread under its Java name in the viewer. */
+	public static void nameCurrentThread() {
+		if(ENABLED && instance!=0) {
+			Remotery.rmt_SetCurrentThreadName(Thread.currentThread().getName());
+		}
+	}
+
+	/** @return whether the Remotery server is running */
+	public static boolean isRunning() {
+		return instance!=0;
+	}
+
+	private static void start() {
+		try {
+			Remotery.rmt_Settings()
+				.port(Short.parseShort(System.getProperty("iragui.remotery.port", Short.toString(DEFAULT_PORT))))
+				.limit_connections_to_localhost(true)
+				.reuse_open_port(true);
+			try(MemoryStack stack = MemoryStack.stackPush()) {
+				PointerBuffer pointer = stack.mallocPointer(1);
+				int error = Remotery.rmt_CreateGlobalInstance(pointer);
+				if(error!=Remotery.RMT_ERROR_NONE) {
+					System.out.println("[Warning] Remotery could not start, error "+error);
+					return;
+				}
+				instance=pointer.get(0);
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(Trace::stop, "Remotery shutdown"));
+		} catch (Throwable e) {
+			// missing natives or a bad port leave tracing off rather than the GUI
+			System.out.println("[Warning] Remotery could not start: "+e);
+		}
+	}
+
+	private static void stop() {
+		long handle = instance;
+		instance=0;
+		if(handle!=0) {
+			Remotery.rmt_DestroyGlobalInstance(handle);
+		}
+	}
+}
@@ -17,6 +17,7 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 
+import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.Callbacks;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
@@ -28,13 +29,30 @@ import org.lwjgl.openal.ALCCapabilities;
 import org.lwjgl.openal.ALCapabilities;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
 import org.lwjgl.system.MemoryStack;
 
+import com.iragui.listeners.InputQueue;
 import com.iragui.listeners.KeyListener;
 import com.iragui.listeners.MouseListener;
 import com.iragui.listeners.WindowListener;
+import com.iragui.objects.CompositeBuffer;
+import com.iragui.objects.DamageTracker;
+import com.iragui.objects.DrawList;
+import com.iragui.objects.GLRenderer;
 import com.iragui.objects.GUIObject;
+import com.iragui.objects.GlyphCache;
+import com.iragui.objects.Shader;
+import com.iragui.objects.Renderer;
+import com.iragui.objects.ShaderRegistry;
+import com.iragui.objects.SoftwareRenderer;
+import com.iragui.objects.SpriteBatch;
+import com.iragui.objects.TextureAtlas;
+import com.iragui.objects.TextureUploader;
+import com.iragui.objects.VisibilityCuller;
 import com.iragui.objects.WrappedBufferedImage;
+import com.iragui.util.ImageCache;
+import com.iragui.util.Logger;
 
 /**
  * Represents a window in the GUI system, managing rendering, input, and audio context.
@@ -45,6 +63,8 @@ import com.iragui.objects.WrappedBufferedImage;
  */
 public class Window {
 	
+	private static final Trace.Scope RENDER_SCOPE = Trace.scope("Window.renderTexturedObjects");
+	
 	private GUI gui;
 	
 	private boolean resizable,maximized,exitOnClose,decorated,closed=false,init=false;
@@ -61,7 +81,59 @@ public class Window {
 	private WindowListener windowListener;
     private KeyListener keyListener;
     private MouseListener mouseListener;
+    private InputQueue inputQueue;
+    
+    private SpriteBatch spriteBatch;
+    private GLRenderer glRenderer;
+    private SoftwareRenderer softwareRenderer;
+    private TextureAtlas textureAtlas;
+    private ImageCache imageCache;
+    private GlyphCache glyphCache;
+    private TextureUploader textureUploader;
     
+    /**
+     * @return the sprite batch used to draw textured objects in this window; on
+     * the render thread, the batch replaying recorded frames
+     */
+   public SpriteBatch getSpriteBatch() {
+	   if(renderThread!=null && renderThread.isCurrentThread()) {
+		   return renderThread.getSpriteBatch();
+	   }
+	   return this.spriteBatch;
+   }
+   
+   /** @return the glyph cache used to draw text in this window, or null before initialization */
+   public GlyphCache getGlyphCache() {
+	   return this.glyphCache;
+   }
+   
+   /** @return the cache of decoded images and their textures for this window */
+   public ImageCache getImageCache() {
+	   return this.imageCache;
+   }
+   
+   /** @return the pixel buffer ring textures of this window are uploaded through, or null before initialization */
+   public TextureUploader getTextureUploader() {
+	   return this.textureUploader;
+   }
+   
+   private final FrameProfiler profiler = new FrameProfiler();
+   
+   /** @return the profiler timing this window's frames, see {@link FrameProfiler} */
+   public FrameProfiler getProfiler() {
+	   return this.profiler;
+   }
+   
+   /** @return the texture atlas shared by small images in this window, or null before initialization */
+   public TextureAtlas getTextureAtlas() {
+	   return this.textureAtlas;
+   }
+    
+    /** @return the queue GLFW input callbacks are recorded into */
+   public InputQueue getInputQueue() {
+	   return this.inputQueue;
+   }
+   
     /** @return the key listener associated with this window */
    public KeyListener getKeyListener() {
 	   return this.keyListener;
@@ -133,6 +205,8 @@ public class Window {
 		windowListener = new WindowListener(this,gui);
 		keyListener = new KeyListener(gui);
 		mouseListener = new MouseListener(gui);
+		inputQueue = new InputQueue(this);
+		imageCache = new ImageCache(this);
 		
 		this.pixelSizeX=this.sizeX/displayX;
 		this.pixelSizeY=this.sizeY/displayY;
@@ -148,9 +222,11 @@ public class Window {
 	}
 	
 	/**
-     * Renders the GUI and processes events. Clears the frame if {@code showNextFrame} is true.
+     * Renders the GUI and processes events. If {@code showNextFrame} is true,
+     * the parts of the window damaged since the last shown frame are redrawn
+     * (see {@link #setDamageTracking(boolean)}) and the frame is presented.
      *
-     * @param showNextFrame whether to clear and redraw the next frame
+     * @param showNextFrame whether to redraw and present the next frame
      */
 	public void render(boolean showNextFrame) {
 		if(closed) {
@@ -161,23 +237,458 @@ public class Window {
 			init();
 			init=true;
 		}
+		this.renderFrame(showNextFrame);
+		if(!closed) {
+			profiler.endFrame();
+			Trace.markFrame();
+		}
+	}
+	
+	/**
+	 * Draws and presents a frame if requested, then processes events.
+	 *
+	 * @param showNextFrame whether to redraw and present the next frame
+	 */
+	private void renderFrame(boolean showNextFrame) {
+		if(softwareRenderer!=null) {
+			this.renderSoftware(showNextFrame,true);
+			return;
+		}
+		if(headless) {
+			if(showNextFrame) {
+				this.renderOffscreen(true);
+			}
+			this.pollEvents();
+			return;
+		}
+		if(threadedRendering!=(renderThread!=null)) {
+			if(threadedRendering) {
+				startRenderThread();
+			} else {
+				stopRenderThread();
+			}
+		}
 		
 		if(!GLFW.glfwWindowShouldClose(window)) {
 			
-			if(showNextFrame) {
-				GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
-				this.renderTexturedObjects();
-				GLFW.glfwSwapBuffers(window);
+			// a frame the render thread dropped for lack of a composite is redrawn in full right away
+			if(renderThread!=null && (showNextFrame || damageTracking && renderThread.isCompositeFailed())) {
+				this.recordFrame();
+			} else if(showNextFrame) {
+				if(damageTracking) {
+					this.renderDamaged();
+				} else {
+					GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
+					this.renderTexturedObjects();
+				}
+				this.swapBuffers();
 			}
-			GLFW.glfwPollEvents();
+			this.pollEvents();
 		} else {
 			this.close();
 		}
 	}
 	
-	 /** Clears the window's color and depth buffers. */
+	/** Presents the back buffer. */
+	private void swapBuffers() {
+		long start = profiler.start();
+		GLFW.glfwSwapBuffers(window);
+		profiler.stop(FrameProfiler.SWAP, start);
+	}
+	
+	/** Processes window events and records the input into the {@link InputQueue}. */
+	private void pollEvents() {
+		long start = profiler.start();
+		if(!headless) {
+			GLFW.glfwPollEvents();
+		}
+		inputQueue.flush();
+		profiler.stop(FrameProfiler.EVENTS, start);
+	}
+	
+	private final DamageTracker damageTracker = new DamageTracker();
+	private boolean damageTracking = !Boolean.getBoolean("iragui.fullRedraw");
+	private final VisibilityCuller culler = new VisibilityCuller();
+	private boolean culling = !Boolean.getBoolean("iragui.noCulling");
+	private final CompositeBuffer composite = new CompositeBuffer();
+	
+	private boolean threadedRendering = Boolean.getBoolean("iragui.renderThread");
+	private RenderThread renderThread;
+	private long sharedContext=NULL;
+	private int recordedWidth=-1,recordedHeight=-1;
+	private float clearR,clearG,clearB,clearA;
+	
+	private boolean headless = Boolean.getBoolean("iragui.headless");
+	private HeadlessContext headlessContext;
+	
+	/**
+	 * Makes this window headless: instead of opening a GLFW window it renders
+	 * into an offscreen framebuffer of an EGL context (see
+	 * {@link HeadlessContext}), so it runs without a display, and frames can be
+	 * read back with {@link #readFrame(ByteBuffer)}. Input only arrives through
+	 * the {@link InputQueue}, there is no audio, and threaded rendering is
+	 * ignored. Must be set before the first render call. Disabled by default
+	 * unless {@code -Diragui.headless=true} is set.
+	 *
+	 * @param headless whether to render offscreen without a window
+	 * @throws IllegalStateException if the window was already initialized
+	 */
+	public void setHeadless(boolean headless) {
+		if(init) {
+			throw new IllegalStateException("headless mode must be set before the window is initialized");
+		}
+		this.headless=headless;
+	}
+	
+	/** @return true if this window renders offscreen without a display */
+	public boolean isHeadless() {
+		return this.headless;
+	}
+	
+	private boolean softwareRendering = Boolean.getBoolean("iragui.softwareRendering");
+	
+	/**
+	 * Draws frames with a {@link SoftwareRenderer} on the CPU instead of
+	 * OpenGL. Combined with {@link #setHeadless(boolean)} no OpenGL context is
+	 * created at all, which runs on servers without a GPU; otherwise each frame
+	 * is uploaded and shown in the window. Objects are drawn from their pixel
+	 * buffers, see {@link GUIObject#emitPixels(SoftwareRenderer)}, and threaded
+	 * rendering is ignored. Must be set
+	 * before the first render call. Disabled by default unless
+	 * {@code -Diragui.softwareRendering=true} is set.
+	 *
+	 * @param softwareRendering whether to draw on the CPU
+	 * @throws IllegalStateException if the window was already initialized
+	 */
+	public void setSoftwareRendering(boolean softwareRendering) {
+		if(init) {
+			throw new IllegalStateException("software rendering must be set before the window is initialized");
+		}
+		this.softwareRendering=softwareRendering;
+	}
+	
+	/** @return true if frames are drawn on the CPU */
+	public boolean isSoftwareRendering() {
+		return this.softwareRendering;
+	}
+	
+	/**
+	 * Draws a frame with the software renderer and, unless headless, shows it
+	 * in the window, then processes events.
+	 *
+	 * @param showNextFrame whether to draw the frame at all
+	 * @param clear         whether to redraw the damaged area from the
+	 *                      background, or to draw every object over the last frame
+	 */
+	private void renderSoftware(boolean showNextFrame, boolean clear) {
+		if(!headless && GLFW.glfwWindowShouldClose(window)) {
+			this.close();
+			return;
+		}
+		
+		if(showNextFrame) {
+			SoftwareRenderer r = softwareRenderer;
+			if(r.resize(this.sizeX, this.sizeY)) {
+				damageTracker.invalidate();
+			}
+			if(clear && damageTracking) {
+				if(damageTracker.collect(gui.objectsByLayer, this.sizeX, this.sizeY)) {
+					r.setClip(damageTracker.getX(), damageTracker.getY(), damageTracker.getWidth(), damageTracker.getHeight());
+					r.clear(clearR, clearG, clearB, clearA);
+					this.renderTexturedObjects(r);
+					r.clearClip();
+				}
+			} else {
+				if(clear) {
+					r.clear(clearR, clearG, clearB, clearA);
+				}
+				this.renderTexturedObjects(r);
+			}
+			
+			if(!headless) {
+				composite.ensure(this.sizeX, this.sizeY);
+				composite.upload(r.getPixels());
+				composite.present();
+				this.swapBuffers();
+			}
+		}
+		
+		this.pollEvents();
+	}
+	
+	/**
+	 * Draws a frame of a headless window into the composite framebuffer, where
+	 * it stays for {@link #readFrame(ByteBuffer)}.
+	 *
+	 * @param clear whether to redraw the damaged area from the background, or
+	 *              to draw every object over the last frame
+	 */
+	private void renderOffscreen(boolean clear) {
+		ensureComposite();
+		if(!composite.isComplete()) {
+			throw new IllegalStateException("offscreen framebuffer incomplete, headless rendering is not possible");
+		}
+		if(clear && damageTracking) {
+			if(damageTracker.collect(gui.objectsByLayer, this.sizeX, this.sizeY)) {
+				int x = damageTracker.getX();
+				int y = damageTracker.getY();
+				int width = damageTracker.getWidth();
+				int height = damageTracker.getHeight();
+				
+				composite.beginDamage(x, y, width, height);
+				
+				spriteBatch.setClip(x, y, width, height);
+				this.renderTexturedObjects();
+				spriteBatch.clearClip();
+			}
+			return;
+		}
+		
+		composite.bind();
+		if(clear) {
+			GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
+		}
+		this.renderTexturedObjects();
+	}
+	
+	/**
+	 * Reads the last rendered frame of a headless window.
+	 *
+	 * @param target receives the frame as RGBA, top row first, starting at its
+	 *               position; it needs {@code width*height*4} bytes remaining
+	 * @throws IllegalStateException if the window is not headless or has not rendered yet
+	 */
+	public void readFrame(ByteBuffer target) {
+		if(headless && softwareRenderer!=null) {
+			softwareRenderer.read(target);
+			return;
+		}
+		if(headlessContext==null) {
+			throw new IllegalStateException("frames can only be read back from a headless window after rendering");
+		}
+		composite.read(target);
+	}
+	
+	/**
+	 * Reads the last rendered frame of a headless window into a new buffer.
+	 *
+	 * @return the frame as RGBA, top row first, {@link #getSizeX()} pixels wide
+	 * @throws IllegalStateException if the window is not headless or has not rendered yet
+	 */
+	public ByteBuffer readFrame() {
+		ByteBuffer frame = softwareRenderer!=null?
+				BufferUtils.createByteBuffer(softwareRenderer.getWidth()*softwareRenderer.getHeight()*4):
+				BufferUtils.createByteBuffer(composite.getWidth()*composite.getHeight()*4);
+		readFrame(frame);
+		return frame;
+	}
+	
+	/**
+	 * Enables or disables drawing on a dedicated render thread, see
+	 * {@link RenderThread}. When enabled, {@link #render(boolean)} records the
+	 * frame and returns while another thread draws and presents it; this
+	 * thread keeps polling events and uploading textures in a hidden context
+	 * sharing the window's textures. Takes effect on the next render call.
+	 * Disabled by default unless {@code -Diragui.renderThread=true} is set.
+	 *
+	 * @param threadedRendering whether to draw on a render thread
+	 */
+	public void setThreadedRendering(boolean threadedRendering) {
+		this.threadedRendering=threadedRendering;
+	}
+	
+	/** @return true if frames are drawn on a render thread */
+	public boolean isThreadedRendering() {
+		return this.threadedRendering;
+	}
+	
+	/**
+	 * Moves drawing to a render thread. The window's context is handed to it,
+	 * and this thread continues in a hidden context in the same share group.
+	 */
+	private void startRenderThread() {
+		if(sharedContext==NULL) {
+			GLFW.glfwDefaultWindowHints();
+			GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, 3);
+			GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, 3);
+			GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
+			GLFW.glfwWindowHint(GLFW_VISIBLE,GLFW_FALSE);
+			sharedContext = GLFW.glfwCreateWindow(1,1,this.name,NULL,window);
+			if(sharedContext==NULL) {
+				gui.getLogger().warn("could not create a shared context, rendering stays on this thread");
+				threadedRendering=false;
+				return;
+			}
+		}
+		
+		// timer queries are not shared, and GPU time is not measured on the render thread
+		profiler.deleteGpuTimers();
+		GLFW.glfwMakeContextCurrent(sharedContext);
+		GL.createCapabilities();
+		Shader.resetCurrentProgram();
+		GL30.glPixelStorei(GL30.GL_UNPACK_ALIGNMENT, 1);
+		
+		damageTracker.invalidate();
+		renderThread = new RenderThread(gui,window);
+		renderThread.start();
+	}
+	
+	/** Stops the render thread and makes the window's context current here again. */
+	private void stopRenderThread() {
+		renderThread.stop();
+		renderThread=null;
+		
+		GLFW.glfwMakeContextCurrent(window);
+		GL.createCapabilities();
+		Shader.resetCurrentProgram();
+		damageTracker.invalidate();
+	}
+	
+	/**
+	 * Records the frame into a snapshot and submits it to the render thread.
+	 * Waits if the render thread is still behind by two frames.
+	 */
+	private void recordFrame() {
+		DrawList list = renderThread.acquire();
+		if(list==null) {
+			gui.getLogger().warn("render thread stopped, rendering on this thread");
+			stopRenderThread();
+			threadedRendering=false;
+			return;
+		}
+		
+		list.setTarget(this.sizeX, this.sizeY, clearR, clearG, clearB, clearA);
+		if(damageTracking && renderThread.isCompositeFailed()) {
+			gui.getLogger().warn("composite framebuffer incomplete, falling back to full redraws");
+			damageTracking=false;
+			damageTracker.invalidate();
+		}
+		
+		if(damageTracking) {
+			if(this.sizeX!=recordedWidth || this.sizeY!=recordedHeight) {
+				// the render thread recreates its composite at the new size
+				damageTracker.invalidate();
+			}
+			if(damageTracker.collect(gui.objectsByLayer, this.sizeX, this.sizeY)) {
+				int x = damageTracker.getX();
+				int y = damageTracker.getY();
+				int width = damageTracker.getWidth();
+				int height = damageTracker.getHeight();
+				list.setDamage(x, y, width, height);
+				
+				spriteBatch.setClip(x, y, width, height);
+				this.renderTexturedObjects(list);
+				spriteBatch.clearClip();
+			} else {
+				list.setDamage(0, 0, 0, 0);
+			}
+		} else {
+			this.renderTexturedObjects(list);
+		}
+		recordedWidth=this.sizeX;
+		recordedHeight=this.sizeY;
+		
+		// the render thread waits for the uploads made while recording
+		list.setFence(GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0));
+		GL30.glFlush();
+		renderThread.submit(list);
+	}
+	
+	/**
+	 * Enables or disables damage-region redraws. When disabled every shown
+	 * frame clears the window and redraws all objects. Enabled by default
+	 * unless {@code -Diragui.fullRedraw=true} is set.
+	 *
+	 * @param damageTracking whether to redraw only damaged regions
+	 */
+	public void setDamageTracking(boolean damageTracking) {
+		this.damageTracking=damageTracking;
+		damageTracker.invalidate();
+	}
+	
+	/** @return true if frames redraw only damaged regions */
+	public boolean isDamageTracking() {
+		return this.damageTracking;
+	}
+	
+	/**
+	 * Enables or disables skipping objects that cannot be seen, see
+	 * {@link VisibilityCuller}. Enabled by default unless
+	 * {@code -Diragui.noCulling=true} is set.
+	 *
+	 * @param culling whether to skip invisible objects
+	 */
+	public void setCulling(boolean culling) {
+		this.culling=culling;
+	}
+	
+	/** @return true if objects that cannot be seen are skipped */
+	public boolean isCulling() {
+		return this.culling;
+	}
+	
+	/** Redraws the whole window the next time a frame is shown. */
+	public void invalidate() {
+		damageTracker.invalidate();
+	}
+	
+	/**
+	 * Redraws the damaged part of the window into the composite framebuffer
+	 * and copies the composite to the back buffer. Objects outside the damaged
+	 * area are skipped, and the rest of the composite keeps last frame's pixels.
+	 */
+	private void renderDamaged() {
+		ensureComposite();
+		if(!damageTracking) {
+			GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
+			this.renderTexturedObjects();
+			return;
+		}
+		
+		if(damageTracker.collect(gui.objectsByLayer, this.sizeX, this.sizeY)) {
+			int x = damageTracker.getX();
+			int y = damageTracker.getY();
+			int width = damageTracker.getWidth();
+			int height = damageTracker.getHeight();
+			
+			composite.beginDamage(x, y, width, height);
+			
+			spriteBatch.setClip(x, y, width, height);
+			this.renderTexturedObjects();
+			spriteBatch.clearClip();
+		}
+		
+		composite.present();
+	}
+	
+	/** Creates or resizes the composite framebuffer to the window size. */
+	private void ensureComposite() {
+		if(!composite.ensure(sizeX, sizeY)) {
+			return;
+		}
+		if(!composite.isComplete()) {
+			gui.getLogger().warn("composite framebuffer incomplete, falling back to full redraws");
+			damageTracking=false;
+		}
+		damageTracker.invalidate();
+	}
+	
+	 /**
+	  * Clears the window's color and depth buffers, or the framebuffer of the
+	  * software renderer. Does nothing while this thread has no OpenGL context,
+	  * before {@link #init()} or while a render thread draws.
+	  */
 	public void clear() {
-		GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
+		if(softwareRenderer!=null) {
+			softwareRenderer.clear(clearR, clearG, clearB, clearA);
+		} else if(hasCurrentContext()) {
+			GL30.glClear(GL30.GL_COLOR_BUFFER_BIT |GL30.GL_DEPTH_BUFFER_BIT);
+		}
+	}
+	
+	/** @return whether this window's OpenGL context is current on the calling thread */
+	private boolean hasCurrentContext() {
+		return spriteBatch!=null && (renderThread==null || renderThread.isCurrentThread());
 	}
 	
 	 /** Renders the GUI and swaps buffers without clearing first. */
@@ -190,11 +701,33 @@ public class Window {
 			init();
 			init=true;
 		}
+		this.renderFrameOver();
+		if(!closed) {
+			profiler.endFrame();
+			Trace.markFrame();
+		}
+	}
+	
+	/** Draws every object over the last frame, presents it and processes events. */
+	private void renderFrameOver() {
+		if(softwareRenderer!=null) {
+			this.renderSoftware(true,false);
+			return;
+		}
+		if(headless) {
+			this.renderOffscreen(false);
+			this.pollEvents();
+			return;
+		}
 		
 		if(!GLFW.glfwWindowShouldClose(window)) {
-			this.renderTexturedObjects();
-			GLFW.glfwSwapBuffers(window);
-			GLFW.glfwPollEvents();
+			if(renderThread!=null) {
+				this.recordFrame();
+			} else {
+				this.renderTexturedObjects();
+				this.swapBuffers();
+			}
+			this.pollEvents();
 		} else {
 			this.close();
 		}
@@ -202,32 +735,91 @@ public class Window {
 	
 	 /**
      * Renders all textured objects in the GUI, layer by layer.
+     * Batchable objects are collected into the {@link SpriteBatch}; objects with
+     * their own shader end the current batch and draw themselves.
      * Removes objects that no longer exist in the GUI's name registry.
      */
 	private void renderTexturedObjects() {
+		renderTexturedObjects((DrawList) null);
+	}
+	
+	/**
+	 * Draws all textured objects through OpenGL, or records them into a
+	 * snapshot for the render thread, see {@link GLRenderer}.
+	 *
+	 * @param list the snapshot to record into, or null to draw
+	 */
+	private void renderTexturedObjects(DrawList list) {
+		glRenderer.setRecording(list);
+		boolean timed = list==null && profiler.beginGpuTimer();
+		renderTexturedObjects(glRenderer);
+		if(timed) {
+			profiler.endGpuTimer();
+		}
+	}
+	
+	/**
+	 * Hands every object to a renderer, layer by layer.
+	 * Removes objects that no longer exist in the GUI's name registry.
+	 *
+	 * @param renderer the renderer drawing the frame
+	 */
+	private void renderTexturedObjects(Renderer renderer) {
+		Trace.begin(RENDER_SCOPE);
+		try {
+			long start = profiler.start();
+			renderer.begin(this.sizeX, this.sizeY);
+			if(culling) {
+				culler.cull(gui.objectsByLayer, this.sizeX, this.sizeY);
+			}
 		
-		for(Integer l : gui.objectsByLayer.keySet()) {
+			for(Integer l : gui.objectsByLayer.keySet()) {
 			
-			Iterator<GUIObject> iterator = gui.objectsByLayer.get(l).iterator();
-			while (iterator.hasNext()) {
-			    GUIObject obj = iterator.next();
-			    if (gui.objectsByName.containsKey(obj.name)) {
-			        obj.render(window, this.sizeX, this.sizeY);
-			    } else {
-			        gui.println("Removing stale reference: " + obj.name);
-			        iterator.remove();
-			    }
+				Iterator<GUIObject> iterator = gui.objectsByLayer.get(l).iterator();
+				while (iterator.hasNext()) {
+				    GUIObject obj = iterator.next();
+				    if (gui.objectsByName.containsKey(obj.name)) {
+				    	if(!culling || !culler.isCulled(obj)) {
+				    		renderer.draw(obj);
+				    	}
+				    } else {
+				        gui.getLogger().debug("Removing stale reference: {}", obj.name);
+				        iterator.remove();
+				    }
+				}
 			}
+		
+			renderer.end();
+			profiler.stop(FrameProfiler.RENDER, start);
+		} finally {
+			Trace.end();
 		}
 	}
 	
 	/**
      * Initializes the GLFW window, OpenGL context, and sets up callbacks.
+     * A headless window only creates its offscreen context.
      *
-     * @throws IllegalStateException if GLFW fails to initialize
+     * @throws IllegalStateException if GLFW or the headless context fails to initialize
      * @throws RuntimeException      if the window cannot be created
      */
 	 public void init() {
+	    	profiler.attach();
+	    	Trace.nameCurrentThread();
+	    	if(headless && softwareRendering) {
+	    		gui.getLogger().info("creating headless software framebuffer of sizex: {} sizey: {}", sizeX, sizeY);
+	    		softwareRenderer = new SoftwareRenderer();
+	    		return;
+	    	}
+	    	if(headless) {
+	    		gui.getLogger().info("creating headless context of sizex: {} sizey: {}", sizeX, sizeY);
+	    		headlessContext = new HeadlessContext();
+	    		Shader.resetCurrentProgram();
+	    		GL30.glViewport(0, 0, this.sizeX, this.sizeY);
+	    		initGraphics();
+	    		return;
+	    	}
+	    	
 	    	// Set up an error callback
 	    	GLFWErrorCallback.createPrint(System.err).set();
 	    					
@@ -261,26 +853,28 @@ public class Window {
 	    	} else {
 	    		GLFW.glfwWindowHint(GLFW_DECORATED,GLFW_FALSE);
 	    	}
-	    	gui.println("creating window of sizex: "+this.sizeX+" sizey: "+sizeY);
+	    	gui.getLogger().info("creating window of sizex: {} sizey: {}", sizeX, sizeY);
 	    	window = GLFW.glfwCreateWindow(this.sizeX,this.sizeY,this.name,NULL,NULL);
 	    	if(window==NULL) {
 	    		throw new RuntimeException("Failed to create the GLFW window");
 	    	}
 	    			
 	    	GLFW.glfwMakeContextCurrent(window);
+	    	Shader.resetCurrentProgram();
 	    	GLFW.glfwSwapInterval(1);
 	    	GLFW.glfwShowWindow(window);
 	    	
-	    	GLFW.glfwSetWindowFocusCallback(window,windowListener::windowFocusCallback);
-	    	GLFW.glfwSetWindowMaximizeCallback(window,windowListener::windowMaximizeCallback);
-	    	GLFW.glfwSetWindowPosCallback(window,windowListener::windowPositionCallback);
-	    	GLFW.glfwSetWindowRefreshCallback(window,windowListener::windowRefreshCallback);
-	    	GLFW.glfwSetKeyCallback(window,keyListener::keyCallback);
-	    	GLFW.glfwSetCursorPosCallback(window,mouseListener::mousePosCallback);
-	    	GLFW.glfwSetMouseButtonCallback(window,mouseListener::mouseButtonCallback);
-	    	GLFW.glfwSetScrollCallback(window,mouseListener::mouseScrollCallback);
-	    	GLFW.glfwSetFramebufferSizeCallback(window,windowListener::windowFramebufferSizeCallback);
-	    	GLFW.glfwSetWindowCloseCallback(window,windowListener::windowCloseCallback);
+	    	// callbacks only record events, GUI.update dispatches them to the listeners
+	    	GLFW.glfwSetWindowFocusCallback(window,inputQueue::windowFocusCallback);
+	    	GLFW.glfwSetWindowMaximizeCallback(window,inputQueue::windowMaximizeCallback);
+	    	GLFW.glfwSetWindowPosCallback(window,inputQueue::windowPositionCallback);
+	    	GLFW.glfwSetWindowRefreshCallback(window,inputQueue::windowRefreshCallback);
+	    	GLFW.glfwSetKeyCallback(window,inputQueue::keyCallback);
+	    	GLFW.glfwSetCursorPosCallback(window,inputQueue::cursorPosCallback);
+	    	GLFW.glfwSetMouseButtonCallback(window,inputQueue::mouseButtonCallback);
+	    	GLFW.glfwSetScrollCallback(window,inputQueue::scrollCallback);
+	    	GLFW.glfwSetFramebufferSizeCallback(window,inputQueue::framebufferSizeCallback);
+	    	GLFW.glfwSetWindowCloseCallback(window,inputQueue::windowCloseCallback);
 	    	
 	    	try {
 	    		GL.createCapabilities();
@@ -289,10 +883,25 @@ public class Window {
 	    		GL.createCapabilities();
 	    	}
 	    	
-	    	
+	    	initGraphics();
+	    }
+	 
+	 /** Sets up blending and the shared drawing resources in the current context. */
+	 private void initGraphics() {
 	    	GL30.glEnable(GL30.GL_BLEND);
 	    	GL30.glBlendEquationSeparate(GL30.GL_FUNC_ADD, GL30.GL_FUNC_ADD);
 	    	GL30.glBlendFuncSeparate(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA, GL30.GL_ONE, GL30.GL_ZERO);
+	    	// a background set before the context existed
+	    	GL30.glClearColor(clearR, clearG, clearB, clearA);
+	    	
+	    	spriteBatch = new SpriteBatch();
+	    	glRenderer = new GLRenderer(spriteBatch, window);
+	    	if(softwareRendering) {
+	    		softwareRenderer = new SoftwareRenderer();
+	    	}
+	    	textureAtlas = new TextureAtlas();
+	    	glyphCache = new GlyphCache(textureAtlas);
+	    	textureUploader = new TextureUploader();
 	    }
 	 
 	 private long audioContext;
@@ -303,6 +912,10 @@ public class Window {
 	     * @throws AssertionError if the system does not support OpenAL 1.0
 	     */
 	    public void initSound() {
+	    	if(headless) {
+	    		// build agents running headless windows have no audio device
+	    		return;
+	    	}
 			String defaultDeviceName = alcGetString(0,ALC_DEFAULT_DEVICE_SPECIFIER);
 			audioDevice = alcOpenDevice(defaultDeviceName);
 			
@@ -325,6 +938,50 @@ public class Window {
 	     */
 	  public void close() {
 	    	
+	    	if(renderThread!=null) {
+	    		stopRenderThread();
+	    	}
+	    	profiler.deleteGpuTimers();
+	    	FrameProfiler.detach();
+	    	if(softwareRenderer!=null) {
+	    		softwareRenderer.destroy();
+	    		softwareRenderer=null;
+	    	}
+	    	if(spriteBatch!=null) {
+	    		spriteBatch.destroy();
+	    		spriteBatch=null;
+	    		glRenderer=null;
+	    	}
+	    	imageCache.destroy();
+	    	if(textureUploader!=null) {
+	    		textureUploader.destroy();
+	    		textureUploader=null;
+	    	}
+	    	glyphCache=null;
+	    	if(textureAtlas!=null) {
+	    		textureAtlas.destroy();
+	    		textureAtlas=null;
+	    	}
+	    	
+	    	composite.delete();
+	    	if(headless) {
+	    		if(headlessContext!=null) {
+	    			ShaderRegistry.destroyContext(headlessContext.getContext());
+	    			GL.destroy();
+	    			headlessContext.destroy();
+	    			headlessContext=null;
+	    		}
+	    		closed=true;
+	    		gui.getLogger().info("Window Closed");
+	    		return;
+	    	}
+	    	ShaderRegistry.destroyContext(window);
+	    	if(sharedContext!=NULL) {
+	    		// programs compiled in the hidden context live in the same share group
+	    		ShaderRegistry.destroyContext(sharedContext);
+	    		GLFW.glfwDestroyWindow(sharedContext);
+	    		sharedContext=NULL;
+	    	}
 	    	GL.destroy();
 	    	
 	    	ALC10.alcDestroyContext(audioContext);
@@ -342,7 +999,7 @@ public class Window {
 	    		System.exit(0);
 	    	}
 	    	closed=true;
-	    	gui.println("Window Closed");
+	    	gui.getLogger().info("Window Closed");
 	    }
 
 	  /**
@@ -358,9 +1015,6 @@ public class Window {
 				return;
 			}
 			
-			gui.println("float pX = this.sizeX / this.displayX :"+(float)this.sizeX / this.displayX);
-			gui.println("float pY = this.sizeY / this.displayY :"+(float)this.sizeY / this.displayY);
-			
 			float pX = (float) this.sizeX / this.displayX;
 			float pY = (float) this.sizeY / this.displayY;
 			
@@ -372,13 +1026,12 @@ public class Window {
 			this.displayX=(int) (x/pX);
 			this.displayY=(int) (y/pY);
 				
-			gui.println("x : "+x);
-			gui.println("pX : "+pX);
-			gui.println("displayX = (int) (x/PX) : "+(int) (x/pX));
-				
-			gui.println("y : "+y);
-			gui.println("pY : "+pY);
-			gui.println("displayY = (int) (y/PY) : "+(int) (y/pY));
+			Logger logger = gui.getLogger();
+			// checked first so resizing does not box the sizes while debug is off
+			if(logger.isEnabled(Logger.DEBUG)) {
+				logger.debug("x : {} pX : {} displayX : {}", x, pX, displayX);
+				logger.debug("y : {} pY : {} displayY : {}", y, pY, displayY);
+			}
 				
 			GL30.glViewport(0,0,sizeX,sizeY);
 				
@@ -397,7 +1050,9 @@ public class Window {
 		}
 	  
 	  /**
-	     * Sets the background clear color for OpenGL rendering.
+	     * Sets the background clear color. It is applied to the OpenGL context
+	     * once one exists, and used directly by the software renderer, so it can
+	     * be set before {@link #init()} and without a GPU.
 	     *
 	     * @param r red component (0–1)
 	     * @param g green component (0–1)
@@ -405,7 +1060,14 @@ public class Window {
 	     * @param a alpha component (0–1)
 	     */
 	 public void setBackground(float r, float g, float b, float a) {
-		GL30.glClearColor(r,g,b,a);
+		if(hasCurrentContext()) {
+			GL30.glClearColor(r,g,b,a);
+		}
+		this.clearR=r;
+		this.clearG=g;
+		this.clearB=b;
+		this.clearA=a;
+		damageTracker.invalidate();
 	 }
 	  
 	  private int pixelSizeX,pixelSizeY;
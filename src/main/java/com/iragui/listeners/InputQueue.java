@@ -0,0 +1,266 @@
+package com.iragui.listeners;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.iragui.Window;
+
+/**
+ * Single-producer, single-consumer ring buffer between the GLFW callbacks and
+ * the listeners that dispatch input to objects.
+ * <p>
+ * GLFW callbacks only record raw events here, each with a
+ * {@link System#nanoTime()} timestamp. {@link com.iragui.GUI#update()} drains
+ * the queue once per frame and replays the events through {@link MouseListener},
+ * {@link KeyListener} and {@link WindowListener}, so object handlers always run
+ * at the same point of the frame. Consecutive cursor moves are merged into the
+ * last position and consecutive scrolls into their summed offsets before they
+ * are published, so a high-rate mouse costs one dispatch per frame.
+ * </p>
+ *
+ * <p>The producer is the thread calling {@code glfwPollEvents}, the consumer the
+ * thread calling {@link #drain()}; they may be the same. Events that arrive
+ * while the queue is full are dropped and counted, see {@link #getDroppedCount()}.</p>
+ */
+public class InputQueue {
+
+	/** Number of events the queue holds between two drains. */
+	public static final int CAPACITY = 4096;
+
+	private static final int MASK = CAPACITY-1;
+
+	private static final int CURSOR_POS = 1;
+	private static final int MOUSE_BUTTON = 2;
+	private static final int SCROLL = 3;
+	private static final int KEY = 4;
+	private static final int FOCUS = 5;
+	private static final int MAXIMIZE = 6;
+	private static final int POSITION = 7;
+	private static final int REFRESH = 8;
+	private static final int FRAMEBUFFER_SIZE = 9;
+	private static final int CLOSE = 10;
+
+	private final int[] type = new int[CAPACITY];
+	private final long[] time = new long[CAPACITY];
+	private final double[] d0 = new double[CAPACITY];
+	private final double[] d1 = new double[CAPACITY];
+	private final int[] i0 = new int[CAPACITY];
+	private final int[] i1 = new int[CAPACITY];
+	private final int[] i2 = new int[CAPACITY];
+	private final int[] i3 = new int[CAPACITY];
+
+	/** Next slot to read, written by the consumer. */
+	private final AtomicLong head = new AtomicLong();
+	/** Next slot to write, written by the producer. */
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	// merged events not yet published, producer side only
+	private int pending=0;
+	private long pendingTime;
+	private double pendingX,pendingY;
+
+	private final Window window;
+	private long eventTime;
+
+	/**
+	 * @param window the window whose listeners receive the events
+	 */
+	public InputQueue(Window window) {
+		this.window=window;
+	}
+
+	/** GLFW cursor position callback. */
+	public void cursorPosCallback(long handle, double xPos, double yPos) {
+		if(pending!=CURSOR_POS) {
+			flush();
+			pending=CURSOR_POS;
+		}
+		pendingTime=System.nanoTime();
+		pendingX=xPos;
+		pendingY=yPos;
+	}
+
+	/** GLFW scroll callback. */
+	public void scrollCallback(long handle, double xOffset, double yOffset) {
+		if(pending!=SCROLL) {
+			flush();
+			pending=SCROLL;
+			pendingX=0;
+			pendingY=0;
+		}
+		pendingTime=System.nanoTime();
+		pendingX+=xOffset;
+		pendingY+=yOffset;
+	}
+
+	/** GLFW mouse button callback. */
+	public void mouseButtonCallback(long handle, int button, int action, int mods) {
+		flush();
+		int slot = claim();
+		if(slot>=0) {
+			i0[slot]=button;
+			i1[slot]=action;
+			i2[slot]=mods;
+			publish(slot,MOUSE_BUTTON,System.nanoTime());
+		}
+	}
+
+	/** GLFW key callback. */
+	public void keyCallback(long handle, int key, int scanCode, int action, int mods) {
+		flush();
+		int slot = claim();
+		if(slot>=0) {
+			i0[slot]=key;
+			i1[slot]=scanCode;
+			i2[slot]=action;
+			i3[slot]=mods;
+			publish(slot,KEY,System.nanoTime());
+		}
+	}
+
+	/** GLFW window focus callback. */
+	public void windowFocusCallback(long handle, boolean focused) {
+		pushInts(FOCUS,focused?1:0,0);
+	}
+
+	/** GLFW window maximize callback. */
+	public void windowMaximizeCallback(long handle, boolean maximized) {
+		pushInts(MAXIMIZE,maximized?1:0,0);
+	}
+
+	/** GLFW window position callback. */
+	public void windowPositionCallback(long handle, int x, int y) {
+		pushInts(POSITION,x,y);
+	}
+
+	/** GLFW window refresh callback. */
+	public void windowRefreshCallback(long handle) {
+		pushInts(REFRESH,0,0);
+	}
+
+	/** GLFW framebuffer size callback. */
+	public void framebufferSizeCallback(long handle, int width, int height) {
+		pushInts(FRAMEBUFFER_SIZE,width,height);
+	}
+
+	/** GLFW window close callback. */
+	public void windowCloseCallback(long handle) {
+		pushInts(CLOSE,0,0);
+	}
+
+	private void pushInts(int eventType, int a, int b) {
+		flush();
+		int slot = claim();
+		if(slot>=0) {
+			i0[slot]=a;
+			i1[slot]=b;
+			publish(slot,eventType,System.nanoTime());
+		}
+	}
+
+	/**
+	 * Publishes a merged cursor move or scroll that is still being collected.
+	 * Called after {@code glfwPollEvents} so the last merged event of a poll is
+	 * visible to the next drain.
+	 */
+	public void flush() {
+		if(pending==0) {
+			return;
+		}
+		int slot = claim();
+		if(slot>=0) {
+			d0[slot]=pendingX;
+			d1[slot]=pendingY;
+			publish(slot,pending,pendingTime);
+		}
+		pending=0;
+	}
+
+	private int claim() {
+		long t = tail.get();
+		if(t-head.get()>=CAPACITY) {
+			dropped.incrementAndGet();
+			return -1;
+		}
+		return (int) (t&MASK);
+	}
+
+	private void publish(int slot, int eventType, long nanoTime) {
+		type[slot]=eventType;
+		time[slot]=nanoTime;
+		// release store, the consumer sees the slot's fields once it sees the new tail
+		tail.lazySet(tail.get()+1);
+	}
+
+	/**
+	 * Dispatches every queued event to the window's listeners, oldest first.
+	 *
+	 * @return the number of events dispatched
+	 */
+	public int drain() {
+		long h = head.get();
+		long t = tail.get();
+		long handle = window.getWindow();
+		MouseListener mouse = window.getMouseListener();
+		KeyListener keys = window.getKeyListener();
+		WindowListener windowListener = window.getWindowListener();
+
+		for(long n=h;n<t;n++) {
+			int slot = (int) (n&MASK);
+			eventTime=time[slot];
+			switch(type[slot]) {
+			case CURSOR_POS:
+				mouse.mousePosCallback(handle,d0[slot],d1[slot]);
+				break;
+			case SCROLL:
+				mouse.mouseScrollCallback(handle,d0[slot],d1[slot]);
+				break;
+			case MOUSE_BUTTON:
+				mouse.mouseButtonCallback(handle,i0[slot],i1[slot],i2[slot]);
+				break;
+			case KEY:
+				keys.keyCallback(handle,i0[slot],i1[slot],i2[slot],i3[slot]);
+				break;
+			case FOCUS:
+				windowListener.windowFocusCallback(handle,i0[slot]!=0);
+				break;
+			case MAXIMIZE:
+				windowListener.windowMaximizeCallback(handle,i0[slot]!=0);
+				break;
+			case POSITION:
+				windowListener.windowPositionCallback(handle,i0[slot],i1[slot]);
+				break;
+			case REFRESH:
+				windowListener.windowRefreshCallback(handle);
+				break;
+			case FRAMEBUFFER_SIZE:
+				windowListener.windowFramebufferSizeCallback(handle,i0[slot],i1[slot]);
+				break;
+			case CLOSE:
+				windowListener.windowCloseCallback(handle);
+				break;
+			}
+			head.lazySet(n+1);
+		}
+		return (int) (t-h);
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} at which the event being dispatched
+	 * was received, valid inside handlers called from {@link #drain()}
+	 */
+	public long getEventTime() {
+		return this.eventTime;
+	}
+
+	/** @return the number of events recorded but not yet drained */
+	public int size() {
+		return (int) (tail.get()-head.get());
+	}
+
+	/** @return the number of events lost because the queue was full */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
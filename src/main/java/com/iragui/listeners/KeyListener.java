@@ -2,43 +2,66 @@ package com.iragui.listeners;
 
 import static org.lwjgl.glfw.GLFW.*;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 
 import com.iragui.GUI;
+import com.iragui.Trace;
 import com.iragui.objects.GUIObject;
 
 
 public class KeyListener {
 	
+	private static final Trace.Scope KEY_SCOPE = Trace.scope("KeyListener.keyCallback");
+	
 	private boolean[] keys = new boolean[350];
 	private GUI gui;
-	private HashMap<String,GUIObject> callbacks;
+	private final ListenerRegistry callbacks = new ListenerRegistry();
+	private final ArrayList<GUIObject> dispatch = new ArrayList<>();
 	
 	public KeyListener(GUI gui) {
 		this.gui=gui;
-		this.callbacks=new HashMap<>();
 	}
 	
+	/**
+	 * Registers an object for key events if its
+	 * {@link GUIObject#getInputEvents() input events} include them.
+	 */
 	public void add(GUIObject obj) {
-		this.callbacks.put(obj.name,obj);
+		int kinds = obj.getInputEvents()&ListenerRegistry.KEY;
+		if(kinds!=0) {
+			this.callbacks.add(obj,kinds);
+		}
 	}
 	public void remove(GUIObject obj) {
-		this.callbacks.remove(obj.name);
+		this.callbacks.remove(obj);
+	}
+	
+	/** @return the registry key events are dispatched from */
+	public ListenerRegistry getRegistry() {
+		return callbacks;
 	}
 	
 	public void keyCallback(long window, int key, int scanCode, int action, int mods) {
 		
-		if(action==GLFW_PRESS) {
-			getKeys()[key]=true;
-		} else if(action==GLFW_RELEASE) {
-			getKeys()[key]=false;
-		} else if(action==GLFW_REPEAT) {
-			getKeys()[key]=true;
-		}
-		gui.showNextFrame();
+		Trace.begin(KEY_SCOPE);
+		try {
+			if(action==GLFW_PRESS) {
+				getKeys()[key]=true;
+			} else if(action==GLFW_RELEASE) {
+				getKeys()[key]=false;
+			} else if(action==GLFW_REPEAT) {
+				getKeys()[key]=true;
+			}
+			gui.showNextFrame();
 		
-		for(String i : callbacks.keySet()) {
-			callbacks.get(i).sendKey(key,action);
+			// handlers may add or remove objects, so dispatch from a copy
+			dispatch.clear();
+			callbacks.collect(ListenerRegistry.KEY,dispatch);
+			for(int i=0;i<dispatch.size();i++) {
+				dispatch.get(i).sendKey(key,action);
+			}
+		} finally {
+			Trace.end();
 		}
 	}
 	
@@ -0,0 +1,233 @@
+package com.iragui.listeners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import com.iragui.objects.GUIObject;
+
+/**
+ * Registered input handlers kept in dense arrays and dispatched in z-order.
+ * <p>
+ * Every object gets a stable integer handle when it is added, which stays
+ * valid until it is removed; freed handles are reused. Each handler declares
+ * the event kinds it consumes as a bit mask of {@link #KEY},
+ * {@link #MOUSE_MOVE}, {@link #MOUSE_BUTTON} and {@link #MOUSE_SCROLL}, and
+ * the registry keeps one dispatch list per kind, so an event only visits the
+ * objects that handle it.
+ * </p>
+ *
+ * <p>Dispatch lists are ordered topmost first: highest layer, then the most
+ * recently added object within a layer, matching the order objects are drawn
+ * in. They are rebuilt lazily after an add, a remove or
+ * {@link #invalidateOrder()}.</p>
+ */
+public class ListenerRegistry {
+
+	/** Key presses, repeats and releases. */
+	public static final int KEY = 1;
+	/** Cursor movement. */
+	public static final int MOUSE_MOVE = 1<<1;
+	/** Mouse button presses and releases. */
+	public static final int MOUSE_BUTTON = 1<<2;
+	/** Mouse wheel and touchpad scrolling. */
+	public static final int MOUSE_SCROLL = 1<<3;
+	/** Every mouse event kind. */
+	public static final int MOUSE = MOUSE_MOVE|MOUSE_BUTTON|MOUSE_SCROLL;
+
+	private static final int KINDS = 4;
+
+	// indexed by handle
+	private GUIObject[] objects = new GUIObject[16];
+	private int[] kinds = new int[16];
+	private long[] sequence = new long[16];
+	private int[] rank = new int[16];
+
+	private int[] freeHandles = new int[16];
+	private int freeCount=0;
+	private int handleCount=0;
+	private int size=0;
+	private long nextSequence=0;
+
+	private final IdentityHashMap<GUIObject,Integer> handles = new IdentityHashMap<>();
+
+	// per event kind, handles in dispatch order
+	private final int[][] lists = new int[KINDS][16];
+	private final int[] listSizes = new int[KINDS];
+	private boolean orderDirty=false;
+
+	/**
+	 * Registers an object for the given event kinds. An object that is already
+	 * registered keeps its handle and only has its kinds replaced.
+	 *
+	 * @param o     the handler
+	 * @param kinds bit mask of the event kinds it consumes
+	 * @return the object's handle
+	 */
+	public int add(GUIObject o, int kinds) {
+		Integer existing = handles.get(o);
+		if(existing!=null) {
+			this.kinds[existing]=kinds;
+			orderDirty=true;
+			return existing;
+		}
+
+		int handle;
+		if(freeCount>0) {
+			handle=freeHandles[--freeCount];
+		} else {
+			handle=handleCount++;
+			if(handle==objects.length) {
+				int capacity = objects.length*2;
+				objects=Arrays.copyOf(objects,capacity);
+				this.kinds=Arrays.copyOf(this.kinds,capacity);
+				sequence=Arrays.copyOf(sequence,capacity);
+				rank=Arrays.copyOf(rank,capacity);
+			}
+		}
+		objects[handle]=o;
+		this.kinds[handle]=kinds;
+		sequence[handle]=nextSequence++;
+		handles.put(o,handle);
+		size++;
+		orderDirty=true;
+		return handle;
+	}
+
+	/**
+	 * Unregisters an object. Objects that are not registered are ignored.
+	 *
+	 * @param o the handler
+	 */
+	public void remove(GUIObject o) {
+		Integer handle = handles.remove(o);
+		if(handle==null) {
+			return;
+		}
+		objects[handle]=null;
+		kinds[handle]=0;
+		if(freeCount==freeHandles.length) {
+			freeHandles=Arrays.copyOf(freeHandles,freeCount*2);
+		}
+		freeHandles[freeCount++]=handle;
+		size--;
+		orderDirty=true;
+	}
+
+	/**
+	 * @param o the handler
+	 * @return its handle, or -1 if it is not registered
+	 */
+	public int getHandle(GUIObject o) {
+		Integer handle = handles.get(o);
+		return handle==null?-1:handle;
+	}
+
+	/**
+	 * @param handle a handle returned by {@link #add(GUIObject, int)}
+	 * @return the registered object, or null if the handle is free
+	 */
+	public GUIObject get(int handle) {
+		return handle>=0 && handle<handleCount?objects[handle]:null;
+	}
+
+	/**
+	 * @param o    the handler
+	 * @param kind one of the event kind constants
+	 * @return true if the object is registered for the kind
+	 */
+	public boolean accepts(GUIObject o, int kind) {
+		Integer handle = handles.get(o);
+		return handle!=null && (kinds[handle]&kind)!=0;
+	}
+
+	/**
+	 * Appends the objects registered for an event kind, topmost first. The
+	 * list is a copy, so handlers may add or remove objects while it is dispatched.
+	 *
+	 * @param kind   one of the event kind constants
+	 * @param result list the objects are appended to
+	 * @return the result list
+	 */
+	public ArrayList<GUIObject> collect(int kind, ArrayList<GUIObject> result) {
+		ensureOrder();
+		int list = Integer.numberOfTrailingZeros(kind);
+		int[] order = lists[list];
+		for(int i=0;i<listSizes[list];i++) {
+			result.add(objects[order[i]]);
+		}
+		return result;
+	}
+
+	/**
+	 * Sorts registered objects topmost first. Objects that are not registered
+	 * go last.
+	 *
+	 * @param list the objects to sort in place
+	 */
+	public void sortByZ(ArrayList<GUIObject> list) {
+		ensureOrder();
+		// dispatch lists are short, insertion sort avoids allocating
+		for(int i=1;i<list.size();i++) {
+			GUIObject o = list.get(i);
+			int r = rankOf(o);
+			int j=i-1;
+			while(j>=0 && rankOf(list.get(j))>r) {
+				list.set(j+1,list.get(j));
+				j--;
+			}
+			list.set(j+1,o);
+		}
+	}
+
+	/** Rebuilds the dispatch order before the next event, after a layer changed. */
+	public void invalidateOrder() {
+		this.orderDirty=true;
+	}
+
+	/** @return the number of registered objects */
+	public int size() {
+		return size;
+	}
+
+	private int rankOf(GUIObject o) {
+		Integer handle = handles.get(o);
+		return handle==null?Integer.MAX_VALUE:rank[handle];
+	}
+
+	private void ensureOrder() {
+		if(!orderDirty) {
+			return;
+		}
+		orderDirty=false;
+
+		Integer[] order = new Integer[size];
+		int n=0;
+		for(int h=0;h<handleCount;h++) {
+			if(objects[h]!=null) {
+				order[n++]=h;
+			}
+		}
+		Arrays.sort(order,(a,b)->{
+			int layerA = objects[a].getLayer(), layerB = objects[b].getLayer();
+			if(layerA!=layerB) {
+				return Integer.compare(layerB,layerA);
+			}
+			return Long.compare(sequence[b],sequence[a]);
+		});
+
+		Arrays.fill(listSizes,0);
+		for(int i=0;i<n;i++) {
+			int h = order[i];
+			rank[h]=i;
+			for(int k=0;k<KINDS;k++) {
+				if((kinds[h]&(1<<k))!=0) {
+					if(listSizes[k]==lists[k].length) {
+						lists[k]=Arrays.copyOf(lists[k],listSizes[k]*2);
+					}
+					lists[k][listSizes[k]++]=h;
+				}
+			}
+		}
+	}
+}
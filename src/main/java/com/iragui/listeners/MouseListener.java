@@ -2,25 +2,109 @@ package com.iragui.listeners;
 
 import static org.lwjgl.glfw.GLFW.*;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 
 import com.iragui.GUI;
+import com.iragui.Trace;
 import com.iragui.objects.GUIObject;
 
+/**
+ * Receives GLFW mouse callbacks and routes them to registered objects.
+ * <p>
+ * Events are not broadcast. Each one goes to the objects the GUI's
+ * {@link com.iragui.util.SpatialGrid} finds under the pointer, to the objects
+ * that were under it on the previous event so they can react to the pointer
+ * leaving, and to the objects that received the last button press until every
+ * button is released, so drags keep reaching them. Only objects registered
+ * for the event's kind in the {@link ListenerRegistry} receive it, topmost first.
+ * </p>
+ *
+ * <p>Unlike a broadcast, a button press only reaches objects at or near the
+ * pointer, so a {@link com.iragui.objects.SubWindowObject} no longer sees
+ * presses elsewhere in the window and is not marked as pressed by them. Every
+ * object that did receive a press also receives the matching releases, even
+ * when the pointer left it, so drags and resizes always end. Focus is
+ * unchanged: it only ever moved to the window that was clicked, and clicking
+ * outside every subwindow still leaves the focused one focused. Scrolling
+ * reaches a focused subwindow only while the pointer is over it.</p>
+ */
 public class MouseListener {
+	private static final Trace.Scope POS_SCOPE = Trace.scope("MouseListener.mousePosCallback");
+	private static final Trace.Scope BUTTON_SCOPE = Trace.scope("MouseListener.mouseButtonCallback");
+	private static final Trace.Scope SCROLL_SCOPE = Trace.scope("MouseListener.mouseScrollCallback");
+	
 	private double scrollX,scrollY;
 	private double xPos,yPos,lastX,lastY;
 	private boolean[] mouseButtonPressed = new boolean[3];
 	private boolean isDragging;
 	private GUI gui;
 	
-	private HashMap<String,GUIObject> callbacks;
+	private final ListenerRegistry callbacks = new ListenerRegistry();
+	
+	private final ArrayList<GUIObject> hits = new ArrayList<>();
+	private LinkedHashSet<GUIObject> hovered = new LinkedHashSet<>();
+	private LinkedHashSet<GUIObject> nextHovered = new LinkedHashSet<>();
+	private final LinkedHashSet<GUIObject> captured = new LinkedHashSet<>();
+	private final LinkedHashSet<GUIObject> targets = new LinkedHashSet<>();
+	private final ArrayList<GUIObject> dispatch = new ArrayList<>();
 	
+	/**
+	 * Registers an object for the mouse events among its
+	 * {@link GUIObject#getInputEvents() input events}.
+	 */
 	public void add(GUIObject obj) {
-		this.callbacks.put(obj.name,obj);
+		int kinds = obj.getInputEvents()&ListenerRegistry.MOUSE;
+		if(kinds!=0) {
+			this.callbacks.add(obj,kinds);
+		}
 	}
 	public void remove(GUIObject obj) {
-		this.callbacks.remove(obj.name);
+		this.callbacks.remove(obj);
+		hovered.remove(obj);
+		captured.remove(obj);
+	}
+	
+	/** @return the registry mouse events are dispatched from */
+	public ListenerRegistry getRegistry() {
+		return callbacks;
+	}
+	
+	/**
+	 * Collects the objects an event of the given kind at the pointer position
+	 * goes to into {@link #dispatch}, topmost first: registered objects under
+	 * the pointer, the ones under it on the previous event, and the ones
+	 * holding a button press.
+	 */
+	private void route(double xPos, double yPos, int kind) {
+		hits.clear();
+		gui.getSpatialIndex().query((int) xPos, (int) (gui.getWindow().getSizeY()-yPos), hits);
+		
+		nextHovered.clear();
+		for(int i=0;i<hits.size();i++) {
+			GUIObject o = hits.get(i);
+			if(callbacks.getHandle(o)>=0) {
+				nextHovered.add(o);
+			}
+		}
+		
+		targets.clear();
+		targets.addAll(nextHovered);
+		targets.addAll(hovered);
+		targets.addAll(captured);
+		
+		LinkedHashSet<GUIObject> swap = hovered;
+		hovered = nextHovered;
+		nextHovered = swap;
+		
+		// handlers may add or remove objects, so dispatch from a copy
+		dispatch.clear();
+		for(GUIObject o : targets) {
+			if(callbacks.accepts(o,kind)) {
+				dispatch.add(o);
+			}
+		}
+		callbacks.sortByZ(dispatch);
 	}
 	
 	public MouseListener(GUI gui) {
@@ -31,49 +115,72 @@ public class MouseListener {
 		this.lastX=0.0;
 		this.lastY=0.0;
 		this.gui=gui;
-		this.callbacks=new HashMap<>();
 	}
 	
 	public void mousePosCallback(long window, double xPos, double yPos) {
-		this.lastX=xPos;
-		this.lastY=yPos;
-		this.xPos=xPos;
-		this.yPos=yPos;
-		this.isDragging = getMouseButtonPressed()[0] || getMouseButtonPressed()[1] || getMouseButtonPressed()[2];
+		Trace.begin(POS_SCOPE);
+		try {
+			this.lastX=xPos;
+			this.lastY=yPos;
+			this.xPos=xPos;
+			this.yPos=yPos;
+			this.isDragging = getMouseButtonPressed()[0] || getMouseButtonPressed()[1] || getMouseButtonPressed()[2];
 		
-		for(String key : callbacks.keySet()) {
-			callbacks.get(key).sendMousePos(window,xPos,yPos);
-		}
+			route(xPos,yPos,ListenerRegistry.MOUSE_MOVE);
+			for(int i=0;i<dispatch.size();i++) {
+				dispatch.get(i).sendMousePos(window,xPos,yPos);
+			}
 		
-		if(isDragging) {
-			gui.showNextFrame();
+			if(isDragging) {
+				gui.showNextFrame();
+			}
+		} finally {
+			Trace.end();
 		}
 	}
 	
 	public void mouseButtonCallback(long window, int button, int action, int mods) {
-		if(action==GLFW_PRESS) {
-			if(button<getMouseButtonPressed().length) {
-				getMouseButtonPressed()[button] = true;
+		Trace.begin(BUTTON_SCOPE);
+		try {
+			if(action==GLFW_PRESS) {
+				if(button<getMouseButtonPressed().length) {
+					getMouseButtonPressed()[button] = true;
+				}
+			} else if(action==GLFW_RELEASE) {
+				if(button<getMouseButtonPressed().length) {
+					getMouseButtonPressed()[button] = false;
+					isDragging=false;
+				}
 			}
-		} else if(action==GLFW_RELEASE) {
-			if(button<getMouseButtonPressed().length) {
-				getMouseButtonPressed()[button] = false;
-				isDragging=false;
+			gui.showNextFrame();
+			route(this.xPos,this.yPos,ListenerRegistry.MOUSE_BUTTON);
+			if(action==GLFW_PRESS) {
+				captured.addAll(dispatch);
 			}
-		}
-		gui.showNextFrame();
-		for(String key : callbacks.keySet()) {
-			callbacks.get(key).sendMouseButton(window,button,action,mods);
+			for(int i=0;i<dispatch.size();i++) {
+				dispatch.get(i).sendMouseButton(window,button,action,mods);
+			}
+			if(action==GLFW_RELEASE && !(mouseButtonPressed[0]||mouseButtonPressed[1]||mouseButtonPressed[2])) {
+				captured.clear();
+			}
+		} finally {
+			Trace.end();
 		}
 	}
 	
 	public void mouseScrollCallback(long window,double xOffset,double yOffset) {
-		scrollX=xOffset;
-		scrollY=yOffset;
-		gui.showNextFrame();
+		Trace.begin(SCROLL_SCOPE);
+		try {
+			scrollX=xOffset;
+			scrollY=yOffset;
+			gui.showNextFrame();
 		
-		for(String key : callbacks.keySet()) {
-			callbacks.get(key).sendMouseScroll(window, xOffset, yOffset);
+			route(this.xPos,this.yPos,ListenerRegistry.MOUSE_SCROLL);
+			for(int i=0;i<dispatch.size();i++) {
+				dispatch.get(i).sendMouseScroll(window, xOffset, yOffset);
+			}
+		} finally {
+			Trace.end();
 		}
 	}
 	
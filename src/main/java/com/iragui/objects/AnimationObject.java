@@ -71,6 +71,7 @@ public abstract class AnimationObject extends GUIObject{
 		for(Integer key : frames.keySet()) {
 			frames.get(key).setX(x);
 		}
+		boundsChanged();
 	}
 	
 	 /**
@@ -84,6 +85,7 @@ public abstract class AnimationObject extends GUIObject{
 		for(Integer key : frames.keySet()) {
 			frames.get(key).setY(y);
 		}
+		boundsChanged();
 	}
 	
 	/**
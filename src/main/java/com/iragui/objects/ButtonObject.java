@@ -3,6 +3,7 @@ package com.iragui.objects;
 import org.lwjgl.glfw.GLFW;
 
 import com.iragui.GUI;
+import com.iragui.listeners.ListenerRegistry;
 
 /**
  * Represents an interactive button within the GUI system. 
@@ -62,6 +63,12 @@ public class ButtonObject extends AnimationObject {
 		this.disabled=false;
 	}
 
+	/** Buttons react to hover and clicks only. */
+	@Override
+	public int getInputEvents() {
+		return ListenerRegistry.MOUSE_MOVE|ListenerRegistry.MOUSE_BUTTON;
+	}
+	
 	@Override
 	public void sendKey(int key, int action) {}
 
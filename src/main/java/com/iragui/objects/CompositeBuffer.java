@@ -0,0 +1,143 @@
+package com.iragui.objects;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL30;
+
+import com.iragui.FrameProfiler;
+
+/**
+ * Offscreen framebuffer that keeps the last drawn frame, so a frame only has
+ * to redraw the area a {@link DamageTracker} reports and can then be copied to
+ * the window.
+ * <p>Framebuffer objects are not shared between contexts; a composite belongs
+ * to the context current when {@link #ensure(int, int)} created it.</p>
+ */
+public class CompositeBuffer {
+
+	private int framebuffer=0,texture=0;
+	private int width,height;
+	private boolean complete=true;
+
+	/**
+	 * Creates or resizes the framebuffer.
+	 *
+	 * @param width  framebuffer width in pixels
+	 * @param height framebuffer height in pixels
+	 * @return true if it was (re)created, which loses its contents
+	 */
+	public boolean ensure(int width, int height) {
+		if(framebuffer!=0 && this.width==width && this.height==height) {
+			return false;
+		}
+		delete();
+
+		this.width=width;
+		this.height=height;
+
+		texture = GL30.glGenTextures();
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, texture);
+		GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MIN_FILTER, GL30.GL_NEAREST);
+		GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MAG_FILTER, GL30.GL_NEAREST);
+		GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, GL30.GL_RGBA8, width, height, 0, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+
+		framebuffer = GL30.glGenFramebuffers();
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL30.GL_TEXTURE_2D, texture, 0);
+		complete = GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER)==GL30.GL_FRAMEBUFFER_COMPLETE;
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+		return true;
+	}
+
+	/** @return false if the driver rejected the framebuffer and it cannot be drawn to */
+	public boolean isComplete() {
+		return this.complete;
+	}
+
+	/**
+	 * Binds the framebuffer and clears an area of it to the clear color.
+	 *
+	 * @param x      left edge in pixels
+	 * @param y      bottom edge in pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 */
+	public void beginDamage(int x, int y, int width, int height) {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		GL30.glEnable(GL30.GL_SCISSOR_TEST);
+		GL30.glScissor(x, y, width, height);
+		GL30.glClear(GL30.GL_COLOR_BUFFER_BIT);
+		GL30.glDisable(GL30.GL_SCISSOR_TEST);
+	}
+
+	/** Binds the framebuffer so the whole frame is drawn into it. */
+	public void bind() {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+	}
+
+	/**
+	 * Reads the composite back into client memory as RGBA, top row first.
+	 *
+	 * @param target receives {@code width*height*4} bytes from its position
+	 */
+	public void read(ByteBuffer target) {
+		int rowBytes = width*4;
+		int base = target.position();
+		GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, framebuffer);
+		GL30.glPixelStorei(GL30.GL_PACK_ALIGNMENT, 1);
+		GL30.glReadPixels(0, 0, width, height, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, target);
+		GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, 0);
+
+		// OpenGL returns the bottom row first
+		byte[] top = new byte[rowBytes], bottom = new byte[rowBytes];
+		for(int row=0;row<height/2;row++) {
+			int topIndex = base+row*rowBytes;
+			int bottomIndex = base+(height-1-row)*rowBytes;
+			target.get(topIndex, top);
+			target.get(bottomIndex, bottom);
+			target.put(topIndex, bottom);
+			target.put(bottomIndex, top);
+		}
+	}
+
+	/**
+	 * Replaces the composite's contents, for frames drawn by a {@link SoftwareRenderer}.
+	 *
+	 * @param argb {@code width*height} ARGB pixels, bottom row first
+	 */
+	public void upload(int[] argb) {
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, texture);
+		GL30.glTexSubImage2D(GL30.GL_TEXTURE_2D, 0, 0, 0, width, height, GL30.GL_BGRA, GL30.GL_UNSIGNED_INT_8_8_8_8_REV, argb);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+		FrameProfiler.countUpload((long) width*height*4);
+	}
+
+	/** @return the composite width in pixels */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/** @return the composite height in pixels */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/** Copies the whole composite to the default framebuffer and binds the latter. */
+	public void present() {
+		GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, framebuffer);
+		GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, 0);
+		GL30.glBlitFramebuffer(0, 0, width, height, 0, 0, width, height, GL30.GL_COLOR_BUFFER_BIT, GL30.GL_NEAREST);
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+	}
+
+	/** Deletes the framebuffer and its texture. */
+	public void delete() {
+		if(framebuffer!=0) {
+			GL30.glDeleteFramebuffers(framebuffer);
+			GL30.glDeleteTextures(texture);
+			framebuffer=0;
+			texture=0;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.iragui.objects;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Finds the part of a window that changed since the last drawn frame.
+ * <p>
+ * For every object the tracker remembers the framebuffer rectangle it covered
+ * and a snapshot of what it looked like when it was last drawn: visibility,
+ * layer, rotation, flips and its {@link GUIObject#markDamaged() damage version}.
+ * When any of these differ, both the old and the new rectangle are damaged.
+ * Objects that disappeared from the layer lists damage the rectangle they
+ * covered. The result is the bounding box of all damaged rectangles, in
+ * OpenGL framebuffer coordinates (origin at the bottom-left).
+ * </p>
+ *
+ * <p>Positions and sizes are compared rather than tracked through setters,
+ * since {@link GUIObject#x} and {@link GUIObject#y} are public fields.</p>
+ */
+public class DamageTracker {
+
+	private ArrayList<GUIObject> drawn = new ArrayList<>();
+	private ArrayList<GUIObject> next = new ArrayList<>();
+	private int frame=0;
+	private boolean full=true;
+
+	private int damageX0,damageY0,damageX1,damageY1;
+
+	/** Damages the whole window on the next {@link #collect(Map, int, int)}. */
+	public void invalidate() {
+		this.full=true;
+	}
+
+	/**
+	 * Compares every object with its state when last drawn and records it as
+	 * drawn in its current state.
+	 *
+	 * @param objectsByLayer the objects that will be drawn, by layer
+	 * @param windowWidth    framebuffer width in pixels
+	 * @param windowHeight   framebuffer height in pixels
+	 * @return true if anything needs to be redrawn
+	 */
+	public boolean collect(Map<Integer,? extends Iterable<GUIObject>> objectsByLayer, int windowWidth, int windowHeight) {
+		frame++;
+		damageX0=Integer.MAX_VALUE;
+		damageY0=Integer.MAX_VALUE;
+		damageX1=Integer.MIN_VALUE;
+		damageY1=Integer.MIN_VALUE;
+
+		for(Iterable<GUIObject> layer : objectsByLayer.values()) {
+			for(GUIObject o : layer) {
+				if(o.drawnFrame==frame) {
+					continue;
+				}
+				boolean seen = o.drawnFrame==frame-1;
+				int oldX0=o.drawnX0,oldY0=o.drawnY0,oldX1=o.drawnX1,oldY1=o.drawnY1;
+				int oldState=o.drawnState;
+
+				record(o,windowHeight);
+				next.add(o);
+
+				if(!seen || oldState!=o.drawnState ||
+				   oldX0!=o.drawnX0 || oldY0!=o.drawnY0 || oldX1!=o.drawnX1 || oldY1!=o.drawnY1) {
+					if(seen) {
+						damage(oldX0,oldY0,oldX1,oldY1);
+					}
+					damage(o.drawnX0,o.drawnY0,o.drawnX1,o.drawnY1);
+				}
+			}
+		}
+
+		// objects drawn last frame that are gone now
+		for(GUIObject o : drawn) {
+			if(o.drawnFrame!=frame) {
+				damage(o.drawnX0,o.drawnY0,o.drawnX1,o.drawnY1);
+				o.drawnFrame=-1;
+			}
+		}
+
+		ArrayList<GUIObject> swap = drawn;
+		drawn = next;
+		next = swap;
+		next.clear();
+
+		if(full) {
+			full=false;
+			damageX0=0;
+			damageY0=0;
+			damageX1=windowWidth;
+			damageY1=windowHeight;
+		}
+
+		damageX0=Math.max(damageX0,0);
+		damageY0=Math.max(damageY0,0);
+		damageX1=Math.min(damageX1,windowWidth);
+		damageY1=Math.min(damageY1,windowHeight);
+		return damageX1>damageX0 && damageY1>damageY0;
+	}
+
+	/** @return left edge of the damaged area after {@link #collect(Map, int, int)} */
+	public int getX() {
+		return damageX0;
+	}
+
+	/** @return bottom edge of the damaged area */
+	public int getY() {
+		return damageY0;
+	}
+
+	/** @return width of the damaged area */
+	public int getWidth() {
+		return Math.max(damageX1-damageX0,0);
+	}
+
+	/** @return height of the damaged area */
+	public int getHeight() {
+		return Math.max(damageY1-damageY0,0);
+	}
+
+	private void damage(int x0, int y0, int x1, int y1) {
+		if(x1<=x0 || y1<=y0) {
+			return;
+		}
+		damageX0=Math.min(damageX0,x0);
+		damageY0=Math.min(damageY0,y0);
+		damageX1=Math.max(damageX1,x1);
+		damageY1=Math.max(damageY1,y1);
+	}
+
+	/**
+	 * Stores the rectangle an object covers now, its quad clipped by its
+	 * scissor rectangle, and a hash of the state that affects its pixels.
+	 */
+	private void record(GUIObject o, int windowHeight) {
+		o.drawnFrame=frame;
+
+		int state = o.getDamageVersion();
+		state = state*31+o.layer;
+		state = state*31+(o.getRotation()&3);
+		state = state*31+(o.getHFlip()?1:0);
+		state = state*31+(o.getVFlip()?1:0);
+		state = state*31+(o.visible?1:0);
+		o.drawnState=state;
+
+		if(!o.visible) {
+			o.drawnX0=o.drawnY0=o.drawnX1=o.drawnY1=0;
+			return;
+		}
+
+		o.updateScreenBounds(windowHeight);
+		o.drawnX0=o.screenX0;
+		o.drawnY0=o.screenY0;
+		o.drawnX1=o.screenX1;
+		o.drawnY1=o.screenY1;
+	}
+}
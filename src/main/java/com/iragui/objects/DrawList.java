@@ -0,0 +1,209 @@
+package com.iragui.objects;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A compact, recorded frame: everything needed to draw it without touching
+ * the objects it was recorded from.
+ * <p>
+ * A {@link SpriteBatch} in recording mode ({@link SpriteBatch#beginRecording(DrawList, int, int)})
+ * appends each batch run here instead of drawing it: the texture, shader mode,
+ * scissor rectangle and the run's vertices. Objects that draw with their own
+ * shader add a {@link Command} holding a copy of the state they draw from.
+ * Another batch, usually on another thread and context sharing the textures,
+ * draws the frame with {@link SpriteBatch#replay(DrawList)}.
+ * </p>
+ *
+ * <p>Besides the draw list a frame carries its size, clear color and damaged
+ * area, see {@link com.iragui.RenderThread}. Lists are reused between frames,
+ * {@link #reset()} keeps their storage.</p>
+ */
+public class DrawList {
+
+	/**
+	 * Drawing done outside the batch, replayed in order with the batch runs.
+	 * Implementations must only read state they copied when recorded.
+	 */
+	public interface Command {
+		/**
+		 * Draws on the replaying context. The batch is between runs; the
+		 * command may change the program, vertex array and scissor, which the
+		 * batch restores afterwards.
+		 *
+		 * @param batch        the replaying batch
+		 * @param windowWidth  framebuffer width in pixels
+		 * @param windowHeight framebuffer height in pixels
+		 */
+		void execute(SpriteBatch batch, int windowWidth, int windowHeight);
+	}
+
+	static final int BATCH = 1;
+	static final int COMMAND = 2;
+
+	/** Ints per batch run: op, texture, distance field, scissor x, y, width, height, quads. */
+	static final int BATCH_INTS = 8;
+
+	int[] ops = new int[256];
+	int opCount=0;
+	float[] vertices = new float[4096];
+	int vertexCount=0;
+	final ArrayList<Command> commands = new ArrayList<>();
+
+	private int width,height;
+	private float clearR,clearG,clearB,clearA;
+	private boolean composited;
+	private int clipX,clipY,clipWidth,clipHeight;
+	private long fence;
+
+	/** Empties the list for the next frame. */
+	public void reset() {
+		opCount=0;
+		vertexCount=0;
+		commands.clear();
+		composited=false;
+		clipX=clipY=clipWidth=clipHeight=0;
+		fence=0;
+	}
+
+	void addBatch(int texture, boolean distanceField, int scissorX, int scissorY, int scissorWidth, int scissorHeight,
+			FloatBuffer quadVertices, int quads) {
+		ensureOps(BATCH_INTS);
+		ops[opCount++]=BATCH;
+		ops[opCount++]=texture;
+		ops[opCount++]=distanceField?1:0;
+		ops[opCount++]=scissorX;
+		ops[opCount++]=scissorY;
+		ops[opCount++]=scissorWidth;
+		ops[opCount++]=scissorHeight;
+		ops[opCount++]=quads;
+
+		int floats = quadVertices.limit();
+		if(vertexCount+floats>vertices.length) {
+			vertices=Arrays.copyOf(vertices,Math.max(vertices.length*2,vertexCount+floats));
+		}
+		quadVertices.get(0,vertices,vertexCount,floats);
+		vertexCount+=floats;
+	}
+
+	void addCommand(Command command) {
+		ensureOps(2);
+		ops[opCount++]=COMMAND;
+		ops[opCount++]=commands.size();
+		commands.add(command);
+	}
+
+	private void ensureOps(int count) {
+		if(opCount+count>ops.length) {
+			ops=Arrays.copyOf(ops,ops.length*2);
+		}
+	}
+
+	/**
+	 * Sets the framebuffer the frame was recorded for.
+	 *
+	 * @param width  framebuffer width in pixels
+	 * @param height framebuffer height in pixels
+	 * @param r      clear color red, 0 to 1
+	 * @param g      clear color green, 0 to 1
+	 * @param b      clear color blue, 0 to 1
+	 * @param a      clear color alpha, 0 to 1
+	 */
+	public void setTarget(int width, int height, float r, float g, float b, float a) {
+		this.width=width;
+		this.height=height;
+		this.clearR=r;
+		this.clearG=g;
+		this.clearB=b;
+		this.clearA=a;
+	}
+
+	/**
+	 * Marks the frame as drawn into a composite framebuffer that keeps the
+	 * previous frame, where only the given area was recorded. An empty area
+	 * means nothing changed.
+	 *
+	 * @param x      left edge of the damaged area
+	 * @param y      bottom edge of the damaged area
+	 * @param width  width of the damaged area
+	 * @param height height of the damaged area
+	 */
+	public void setDamage(int x, int y, int width, int height) {
+		this.composited=true;
+		this.clipX=x;
+		this.clipY=y;
+		this.clipWidth=width;
+		this.clipHeight=height;
+	}
+
+	/** @param fence sync object signalled once the recording context's uploads are done, or 0 */
+	public void setFence(long fence) {
+		this.fence=fence;
+	}
+
+	/** @return the sync object set with {@link #setFence(long)}, or 0 */
+	public long getFence() {
+		return this.fence;
+	}
+
+	/** @return framebuffer width in pixels */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/** @return framebuffer height in pixels */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/** @return clear color red */
+	public float getClearR() {
+		return this.clearR;
+	}
+
+	/** @return clear color green */
+	public float getClearG() {
+		return this.clearG;
+	}
+
+	/** @return clear color blue */
+	public float getClearB() {
+		return this.clearB;
+	}
+
+	/** @return clear color alpha */
+	public float getClearA() {
+		return this.clearA;
+	}
+
+	/** @return true if the frame only redraws a damaged area of a composite */
+	public boolean isComposited() {
+		return this.composited;
+	}
+
+	/** @return left edge of the damaged area */
+	public int getClipX() {
+		return this.clipX;
+	}
+
+	/** @return bottom edge of the damaged area */
+	public int getClipY() {
+		return this.clipY;
+	}
+
+	/** @return width of the damaged area */
+	public int getClipWidth() {
+		return this.clipWidth;
+	}
+
+	/** @return height of the damaged area */
+	public int getClipHeight() {
+		return this.clipHeight;
+	}
+
+	/** @return number of quads recorded */
+	public int getQuadCount() {
+		return vertexCount/SpriteBatch.FLOATS_PER_QUAD;
+	}
+}
@@ -0,0 +1,81 @@
+package com.iragui.objects;
+
+/**
+ * Draws objects through OpenGL. Batchable objects are collected into a
+ * {@link SpriteBatch}; objects with their own shader end the current batch
+ * and draw themselves with {@link GUIObject#render(long, int, int)}.
+ * <p>While recording for the render thread ({@link #setRecording(DrawList)})
+ * no OpenGL draw calls are made and objects with their own shader are
+ * recorded as the command returned by
+ * {@link GUIObject#createDrawCommand(int, int)}.</p>
+ */
+public class GLRenderer implements Renderer {
+
+	private final SpriteBatch batch;
+	private final long window;
+
+	private DrawList recording;
+	private int windowWidth,windowHeight;
+
+	/**
+	 * @param batch  the batch of the current context
+	 * @param window GLFW window handle passed on to objects drawing themselves
+	 */
+	public GLRenderer(SpriteBatch batch, long window) {
+		this.batch=batch;
+		this.window=window;
+	}
+
+	/**
+	 * Records the next frame into a snapshot instead of drawing it.
+	 *
+	 * @param list the snapshot to record into, or null to draw
+	 */
+	public void setRecording(DrawList list) {
+		this.recording=list;
+	}
+
+	@Override
+	public void begin(int windowWidth, int windowHeight) {
+		this.windowWidth=windowWidth;
+		this.windowHeight=windowHeight;
+		if(recording!=null) {
+			batch.beginRecording(recording, windowWidth, windowHeight);
+		} else {
+			batch.begin(windowWidth, windowHeight);
+		}
+	}
+
+	@Override
+	public void draw(GUIObject o) {
+		if(o.isBatchable()) {
+			batch.draw(o, windowHeight);
+		} else if(recording!=null) {
+			batch.addCommand(o.createDrawCommand(windowWidth, windowHeight), windowWidth, windowHeight);
+		} else {
+			batch.end();
+			o.render(window, windowWidth, windowHeight);
+			batch.begin(windowWidth, windowHeight);
+		}
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		batch.setClip(x, y, width, height);
+	}
+
+	@Override
+	public void clearClip() {
+		batch.clearClip();
+	}
+
+	@Override
+	public void end() {
+		batch.end();
+		recording=null;
+	}
+
+	/** The batch belongs to the window and is destroyed with it. */
+	@Override
+	public void destroy() {}
+}
@@ -1,15 +1,14 @@
 package com.iragui.objects;
 
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 
-import org.joml.Matrix4f;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL30;
-import org.lwjgl.system.MemoryStack;
 
+import com.iragui.FrameProfiler;
 import com.iragui.GUI;
+import com.iragui.listeners.ListenerRegistry;
+import com.iragui.util.BufferPool;
+import com.iragui.util.ImageCache;
 
 /**
 * Base class for all objects that can be managed and rendered inside a {@link GUI}.
@@ -39,7 +38,14 @@ public abstract class GUIObject {
 	/** OpenGL pixel buffer storing object texture data. */
 	protected ByteBuffer pixelBuffer;
 	
-	/** Object position in pixels (top-left corner). */
+	/** Whether {@link #pixelBuffer} came from the {@link BufferPool} and is freed by this object. */
+	private boolean ownsPixelBuffer=false;
+	
+	/**
+	 * Object position in pixels (top-left corner). Prefer {@link #setX(int)}
+	 * and {@link #setY(int)}; after writing these directly call
+	 * {@link #boundsChanged()} so hit-testing sees the move.
+	 */
 	public int x,y;
 	
 	/** Window-constrained bounds. */
@@ -59,6 +65,7 @@ public abstract class GUIObject {
 	/** Sets the rendering scale of this object. */
 	public void setScale(int scale) {
 		this.scale=scale;
+		boundsChanged();
 	}
 	
 	protected int constraint;
@@ -78,14 +85,37 @@ public abstract class GUIObject {
 		return this.includeKeyCallback;
 	}
 	
+	/**
+	 * Event kinds this object consumes, as a {@link ListenerRegistry} bit mask.
+	 * Read when the object is registered with the listeners; subclasses whose
+	 * handlers ignore some kinds override it so those events skip them.
+	 *
+	 * @return the event kinds the object's handlers use
+	 */
+	public int getInputEvents() {
+		return (includeKeyCallback?ListenerRegistry.KEY:0)|(includeMouseCallback?ListenerRegistry.MOUSE:0);
+	}
+	
 	/** Sets the X position in pixels. */
 	public void setX(int x) {
 		this.x=x;
+		boundsChanged();
 	}
 	
 	/** Sets the Y position in pixels. */
 	public void setY(int y) {
 		this.y=y;
+		boundsChanged();
+	}
+	
+	/**
+	 * Re-indexes this object in the GUI's {@link com.iragui.util.SpatialGrid}.
+	 * Called by the position, size and scale setters; subclasses that write
+	 * {@link #x}, {@link #y}, {@link #sizeX} or {@link #sizeY} directly call it
+	 * afterwards.
+	 */
+	protected void boundsChanged() {
+		gui.getSpatialIndex().update(this);
 	}
 	
 	/** @return current X position */
@@ -110,10 +140,11 @@ public abstract class GUIObject {
 	}
 	
 	
-	private static boolean globalShaderCompiled=false;
-	
 	private boolean dirty=true;
 	
+	/** Part of the pixel buffer changed since the last upload; the end is exclusive and clamped when uploading. */
+	private int dirtyX0=0,dirtyY0=0,dirtyX1=Integer.MAX_VALUE,dirtyY1=Integer.MAX_VALUE;
+	
 	/** Pixel format constants. */
 	public static final int RGBA = 4, RGB = 3;
 	
@@ -244,7 +275,80 @@ public abstract class GUIObject {
 	* Marks this object as needing re-texturing on next render.
 	*/
 	protected void allowReTexture() {
+		expandDirtyRect(0,0,Integer.MAX_VALUE,Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Marks part of the pixel buffer for upload on the next render. Changes
+	 * accumulate into their bounding box, which is all that is uploaded.
+	 */
+	private void expandDirtyRect(int x0, int y0, int x1, int y1) {
+		this.dirtyX0=Math.min(dirtyX0,x0);
+		this.dirtyY0=Math.min(dirtyY0,y0);
+		this.dirtyX1=Math.max(dirtyX1,x1);
+		this.dirtyY1=Math.max(dirtyY1,y1);
 		this.dirty=true;
+		markDamaged();
+	}
+	
+	private void clearDirtyRect() {
+		this.dirtyX0=Integer.MAX_VALUE;
+		this.dirtyY0=Integer.MAX_VALUE;
+		this.dirtyX1=0;
+		this.dirtyY1=0;
+		this.dirty=false;
+	}
+	
+	private int damageVersion=0;
+	
+	/**
+	 * Reports that this object will look different the next time it is drawn,
+	 * so the area it covers is redrawn even if it did not move. Moves, resizes,
+	 * visibility changes and {@link #allowReTexture()} are detected on their own;
+	 * subclasses call this when anything else that affects their pixels changes.
+	 */
+	public void markDamaged() {
+		this.damageVersion++;
+	}
+	
+	/** @return a counter increased by every {@link #markDamaged()} */
+	public int getDamageVersion() {
+		return this.damageVersion;
+	}
+	
+	/** State of this object when last drawn, kept by {@link DamageTracker}. */
+	int drawnFrame=-1,drawnState;
+	int drawnX0,drawnY0,drawnX1,drawnY1;
+	
+	/** Framebuffer rectangle from {@link #updateScreenBounds(int)}, origin at the bottom-left. */
+	int screenX0,screenY0,screenX1,screenY1;
+	
+	/** Whether {@link VisibilityCuller} found this object invisible this frame. */
+	boolean culled;
+	
+	/**
+	 * Computes the framebuffer rectangle this object covers: the bounding box
+	 * of its transformed quad, cut to its scissor rectangle. The rectangle is
+	 * empty when the right or top edge is not past the left or bottom one.
+	 *
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	void updateScreenBounds(int windowHeight) {
+		updateQuadTransform(windowHeight);
+		float ex = Math.abs(quadXX)+Math.abs(quadXY);
+		float ey = Math.abs(quadYX)+Math.abs(quadYY);
+		// the quad transform is top-down, the scissor is bottom-up
+		float cy = windowHeight-quadCenterY;
+		
+		int x0 = (int) Math.floor(quadCenterX-ex);
+		int y0 = (int) Math.floor(cy-ey);
+		int x1 = (int) Math.ceil(quadCenterX+ex);
+		int y1 = (int) Math.ceil(cy+ey);
+		
+		screenX0=Math.max(x0,Math.max(minX,winMinX));
+		screenY0=Math.max(y0,Math.max(minY,winMinY));
+		screenX1=Math.min(x1,Math.min(limitX,winLimitX));
+		screenY1=Math.min(y1,Math.min(limitY,winLimitY));
 	}
 	
 	/** Visibility flag. */
@@ -267,54 +371,6 @@ public abstract class GUIObject {
 		gui.showNextFrame();
 	}
 	
-	 
-	private static final String shader = 
-		    "#type vertex\n" +
-		    "#version 330 core\n" +
-		    "\n" +
-		    "layout(location = 0) in vec3 inPosition;\n" +
-		    "layout(location = 1) in vec2 inTexCoord;\n" +
-		    "\n" +
-		    "uniform mat4 transform;\n" +
-		    "out vec2 texCoord;\n" +
-		    "\n" +
-		    "void main() {\n" +
-		    "    gl_Position = transform * vec4(inPosition, 1);\n" +
-		    "    texCoord = inTexCoord;\n" +
-		    "}\n" +
-		    "\n" +
-		    "#type fragment\n" +
-		    "#version 330 core\n" +
-		    "\n" +
-		    "in vec2 texCoord;\n" +
-		    "out vec4 fragColor;\n" +
-		    "uniform sampler2D textureSampler;\n" +
-		    "\n" +
-		    "void main() {\n" +
-		    "    fragColor = texture(textureSampler, texCoord);\n" +
-		    "}";
-
-
-	private static final Shader s = new Shader(shader,true);
-	
-	private static final int[] squareVerticesInt = {
-    	    -1, 1, 0,    // Top-left in NDC
-    	    1, 1, 0,     // Top-right in NDC
-    	    1, -1, 0,    // Bottom-right in NDC
-    	    1, -1, 0,    // Bottom-right in NDC
-    	    -1, -1, 0,   // Bottom-left in NDC
-    	    -1, 1, 0     // Top-left in NDC
-    	};
-    
-    private static final int[] textureCoordsInt = {
-    	    0, 0, // Bottom-left (was top-left before)
-    	    1, 0, // Bottom-right (was top-right before)
-    	    1, 1, // Top-right (was bottom-right before)
-    	    1, 1, // Top-right (same as above)
-    	    0, 1, // Top-left (was bottom-left before)
-    	    0, 0  // Bottom-left (same as above)
-    	};
-    
     /**
     * Constructs a new GUI object with full parameter control.
     *
@@ -441,6 +497,84 @@ public abstract class GUIObject {
 		this.generateTexture();
 		gui.addObject(this);
 	}
+	
+	/**
+	 * Constructs an image object, which takes no input and does not update.
+	 * Its pixels either come from a shared {@link ImageCache} entry or are its
+	 * own, and own pixels can be moved into the {@link TextureAtlas} when the
+	 * object is first drawn.
+	 *
+	 * @param name           unique object name
+	 * @param layer          rendering layer index
+	 * @param gui            parent GUI instance
+	 * @param x              initial X position
+	 * @param y              initial Y position
+	 * @param sizeX          object width in pixels
+	 * @param sizeY          object height in pixels
+	 * @param nearestFilter  whether to use nearest-neighbor filtering
+	 * @param rgba           whether to use RGBA (vs RGB)
+	 * @param cachedImage    an entry acquired for this object to draw instead of own pixels, or null
+	 * @param allocatePixels whether to allocate a zeroed pixel buffer when there is no entry; a
+	 *                       subclass passing false assigns {@link #pixelBuffer} itself and frees it
+	 * @param atlas          whether own pixels are placed in the atlas, see {@link #placeInAtlas()}
+	 */
+	protected GUIObject(String name, 
+			int layer, 
+			GUI gui, 
+			int x, 
+			int y, 
+			int sizeX, 
+			int sizeY,
+			boolean nearestFilter,
+			boolean rgba,
+			ImageCache.Entry cachedImage,
+			boolean allocatePixels,
+			boolean atlas) {
+		
+		this.includeKeyCallback=false;
+		this.includeMouseCallback=false;
+		this.updates=false;
+		
+		this.name=name;
+		this.layer=layer;
+		this.gui=gui;
+		this.x=x;
+		this.y=y;
+		this.sizeX=sizeX;
+		this.sizeY=sizeY;
+		
+		this.limitX=9999;
+		this.limitY=9999;
+		
+		this.nearestFilter=nearestFilter;
+		this.rgba=rgba;
+		
+		this.minX=0;
+		this.minY=0;
+		
+		this.winLimitX=9999;
+		this.winLimitY=9999;
+		this.winMinX=0;
+		this.winMinY=0;
+		
+		if(this.rgba) {
+			BYTES_PER_PIXEL=RGBA;
+			glPixelInt=GL30.GL_RGBA;
+		} else {
+			BYTES_PER_PIXEL=RGB;
+			glPixelInt=GL30.GL_RGB;
+		}
+		
+		if(cachedImage!=null) {
+			this.cachedImage=cachedImage;
+			this.pixelBuffer=cachedImage.getPixels();
+		} else if(allocatePixels) {
+			this.pixelBuffer=BufferPool.acquire(this.sizeX * this.sizeY * BYTES_PER_PIXEL);
+			this.ownsPixelBuffer=true;
+		}
+		this.atlasOnDraw=atlas && cachedImage==null;
+		gui.addObject(this);
+	}
 
 	/** @return current rendering layer */
 	public int getLayer() {
@@ -469,65 +603,188 @@ public abstract class GUIObject {
 	/** Handles mouse scroll input. */
 	public abstract void sendMouseScroll(long window, double xOffset, double yOffset);
 	
-	protected int vao;
-	protected int vbo;
 	private int textureID;
-	private int texCoordsVbo;
 	private boolean nearestFilter;
 	
-	private void updatePixelInfo(int texture) {
+	/** Region of the window's {@link TextureAtlas} holding this object's pixels, or null. */
+	private TextureAtlas.Region atlasRegion;
+	
+	/** Shared image this object's pixels and texture come from, or null. */
+	private ImageCache.Entry cachedImage;
+	
+	/** Whether {@link #placeInAtlas()} is still to be tried before this object is first drawn. */
+	private boolean atlasOnDraw=false;
+	
+	/**
+	 * Uploads the changed rectangle of the pixel buffer. Atlas regions are
+	 * small and always uploaded whole.
+	 */
+	private void updatePixelInfo() {
+		if(atlasRegion!=null) {
+			gui.getWindow().getTextureAtlas().upload(atlasRegion, pixelBuffer);
+			clearDirtyRect();
+			return;
+		}
+		// creating the texture uploads every pixel and clears the rectangle
+		int texture = getTextureID();
+		
+		int x0 = Math.max(dirtyX0,0);
+		int y0 = Math.max(dirtyY0,0);
+		int width = Math.min(dirtyX1,this.sizeX)-x0;
+		int height = Math.min(dirtyY1,this.sizeY)-y0;
+		clearDirtyRect();
+		if(width<=0 || height<=0) {
+			return;
+		}
+		
+		int offset = (x0+y0*this.sizeX)*BYTES_PER_PIXEL;
+		TextureUploader uploader = gui.getWindow().getTextureUploader();
+		if(uploader!=null) {
+			uploader.upload(texture, x0, y0, width, height, getGlPixelInt(), pixelBuffer.slice(offset,pixelBuffer.limit()-offset), this.sizeX);
+			return;
+		}
 		GL30.glBindTexture(GL30.GL_TEXTURE_2D, texture);
-		GL30.glTexSubImage2D(GL30.GL_TEXTURE_2D, 0, 0, 0, this.sizeX, this.sizeY, getGlPixelInt(), GL30.GL_UNSIGNED_BYTE,pixelBuffer);
+		GL30.glPixelStorei(GL30.GL_UNPACK_ROW_LENGTH, this.sizeX);
+		GL30.glPixelStorei(GL30.GL_UNPACK_SKIP_PIXELS, x0);
+		GL30.glPixelStorei(GL30.GL_UNPACK_SKIP_ROWS, y0);
+		GL30.glTexSubImage2D(GL30.GL_TEXTURE_2D, 0, x0, y0, width, height, getGlPixelInt(), GL30.GL_UNSIGNED_BYTE,pixelBuffer);
+		FrameProfiler.countUpload((long) width*height*BYTES_PER_PIXEL);
+		GL30.glPixelStorei(GL30.GL_UNPACK_ROW_LENGTH, 0);
+		GL30.glPixelStorei(GL30.GL_UNPACK_SKIP_PIXELS, 0);
+		GL30.glPixelStorei(GL30.GL_UNPACK_SKIP_ROWS, 0);
 		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
 	}
 	
+	/**
+	 * Uploads the pixel buffer if it changed since the last upload.
+	 * Called from {@link #emitQuads(SpriteBatch, int)} before this object's quad is drawn.
+	 */
+	void prepareTexture() {
+		placeInAtlasOnDraw();
+		if(cachedImage!=null) {
+			gui.getWindow().getImageCache().upload(cachedImage);
+			clearDirtyRect();
+			return;
+		}
+		if (this.dirty) {
+			FrameProfiler profiler = gui.getWindow().getProfiler();
+			long start = profiler.start();
+	        updatePixelInfo();
+	        profiler.stop(FrameProfiler.UPLOAD, start);
+	    }
+	}
+	
+	/**
+	 * Allocates the pixel buffer from the {@link BufferPool}, returning the
+	 * previous one if this object owned it. The OpenGL texture itself is only
+	 * created the first time {@link #getTextureID()} is called, so objects that
+	 * are never drawn (or live in the {@link TextureAtlas}) never own one.
+	 */
 	private void generateTexture() {
-		
-		if(!globalShaderCompiled) {
-			s.compile();
-			globalShaderCompiled=true;
+		freePixelBuffer();
+		pixelBuffer = BufferPool.acquire(this.sizeX * this.sizeY * BYTES_PER_PIXEL);
+		ownsPixelBuffer=true;
+	}
+	
+	private void freePixelBuffer() {
+		if(ownsPixelBuffer) {
+			BufferPool.release(pixelBuffer);
+			ownsPixelBuffer=false;
 		}
-        
-		IntBuffer verticesBuffer = BufferUtils.createIntBuffer(squareVerticesInt.length);
-		verticesBuffer.put(squareVerticesInt).flip();
-        
-        //FloatBuffer verticesBuffer = BufferUtils.createFloatBuffer(squareVertices.length);
-        //verticesBuffer.put(squareVertices).flip();
-		
-		IntBuffer textureBuffer = BufferUtils.createIntBuffer(textureCoordsInt.length);
-        textureBuffer.put(textureCoordsInt).flip();
-
-        //FloatBuffer textureBuffer = BufferUtils.createFloatBuffer(textureCoords.length);
-        //textureBuffer.put(textureCoords).flip();
-        
-        this.vbo = GL30.glGenBuffers();
-        
-        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, this.vbo);
-        GL30.glBufferData(GL30.GL_ARRAY_BUFFER, verticesBuffer, GL30.GL_STATIC_DRAW);
-
-       this.texCoordsVbo = GL30.glGenBuffers();
-        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, texCoordsVbo);
-        GL30.glBufferData(GL30.GL_ARRAY_BUFFER, textureBuffer, GL30.GL_STATIC_DRAW);
-
-        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
-        
-        this.vao = GL30.glGenVertexArrays();
-        GL30.glBindVertexArray(this.vao);
-
-        // Bind the vertex buffer
-        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, this.vbo);
-        GL30.glVertexAttribPointer(0, 3, GL30.GL_INT, false, 0, 0);
-        GL30.glEnableVertexAttribArray(0);
-
-        // Bind the texture coordinate buffer
-        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, texCoordsVbo);
-        GL30.glVertexAttribPointer(1, 2, GL30.GL_INT, false, 0, 0);
-        GL30.glEnableVertexAttribArray(1);
-        
-        GL30.glBindVertexArray(0);
-        GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
-        
-        this.setTextureID(createRandomTexture(this.sizeX,this.sizeY));
+	}
+	
+	/**
+	 * Moves this object's pixels into the window's {@link TextureAtlas} so it
+	 * is drawn from a shared page instead of its own texture. Only RGBA objects
+	 * no larger than {@link TextureAtlas#MAX_REGION_SIZE} that do not already
+	 * own a texture are placed.
+	 *
+	 * @return true if this object is backed by the atlas
+	 */
+	protected boolean placeInAtlas() {
+		if(atlasRegion!=null) {
+			return true;
+		}
+		if(!rgba || textureID!=0 || preserveTextureIDOverride || gui.getWindow()==null) {
+			return false;
+		}
+		TextureAtlas atlas = gui.getWindow().getTextureAtlas();
+		if(atlas==null) {
+			return false;
+		}
+		atlasRegion = atlas.allocate(this.sizeX, this.sizeY, isNearestFilter());
+		if(atlasRegion==null) {
+			return false;
+		}
+		this.allowReTexture();
+		return true;
+	}
+	
+	private void placeInAtlasOnDraw() {
+		if(atlasOnDraw) {
+			atlasOnDraw=false;
+			this.placeInAtlas();
+		}
+	}
+	
+	/**
+	 * Makes this object draw a shared image from the window's {@link ImageCache}
+	 * instead of its own pixels. The entry is released when this object is
+	 * destroyed or when its pixels are first modified.
+	 *
+	 * @param entry an entry acquired for this object
+	 */
+	protected void useCachedImage(ImageCache.Entry entry) {
+		releaseCachedImage();
+		freePixelBuffer();
+		this.cachedImage=entry;
+		this.pixelBuffer=entry.getPixels();
+		clearDirtyRect();
+	}
+	
+	private void releaseCachedImage() {
+		if(cachedImage!=null) {
+			gui.getWindow().getImageCache().release(cachedImage);
+			cachedImage=null;
+		}
+	}
+	
+	/**
+	 * Gives this object its own copy of a shared image before the pixels are
+	 * modified, so other holders of the entry are not affected.
+	 */
+	private void detachCachedImage(boolean copyPixels) {
+		if(cachedImage==null) {
+			return;
+		}
+		if(copyPixels) {
+			ByteBuffer copy = BufferPool.acquire(pixelBuffer.limit());
+			copy.put(0,pixelBuffer,0,pixelBuffer.limit());
+			pixelBuffer=copy;
+			ownsPixelBuffer=true;
+		}
+		releaseCachedImage();
+		this.placeInAtlas();
+		this.allowReTexture();
+	}
+	
+	private void releaseAtlasRegion() {
+		if(atlasRegion!=null) {
+			TextureAtlas atlas = gui.getWindow()==null?null:gui.getWindow().getTextureAtlas();
+			if(atlas!=null) {
+				atlas.release(atlasRegion);
+			}
+			atlasRegion=null;
+		}
+	}
+	
+	/** @return the atlas region holding this object's pixels, or null if it owns its texture */
+	public TextureAtlas.Region getAtlasRegion() {
+		placeInAtlasOnDraw();
+		if(cachedImage!=null) {
+			return cachedImage.getRegion();
+		}
+		return this.atlasRegion;
 	}
 	
 	private int createRandomTexture(int sX, int sY) {
@@ -550,10 +807,9 @@ public abstract class GUIObject {
         GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_WRAP_S, GL30.GL_REPEAT);
         GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_WRAP_T, GL30.GL_REPEAT);
 
-        pixelBuffer = BufferUtils.createByteBuffer(sX * sY * BYTES_PER_PIXEL);
-        
         // Upload the pixel data to the texture
       	GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, getGlPixelInt(), sX, sY, 0, getGlPixelInt(), GL30.GL_UNSIGNED_BYTE, pixelBuffer);
+      	FrameProfiler.countUpload((long) sX*sY*BYTES_PER_PIXEL);
     
         // Unbind the texture
       	GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
@@ -562,6 +818,8 @@ public abstract class GUIObject {
 	}
 	
 	/** Renders this object using OpenGL. 
+	 * <p>Draws through the window's {@link SpriteBatch}. When called while the
+	 * batch is already drawing, the quad is appended to the current batch.</p>
 	 * @param window GLFW window id as a long
 	 * @param windowWidth GLFW window width in pixels
 	 * @param windowHeight GLFW window height in pixels
@@ -571,92 +829,145 @@ public abstract class GUIObject {
 	    if (!visible) {
 	        return;
 	    }
-
-	    if (this.dirty) {
-	        updatePixelInfo(getTextureID());
-	        this.dirty = false;
-	    }
-
-	    GL30.glUseProgram(s.getId());
-
-	    // Define the object's size in pixels
-	    float objectWidthInPixels = (this.sizeX/2.0f)*scale;  // Object width in pixels
-	    float objectHeightInPixels = (this.sizeY/2.0f)*scale; // Object height in pixels
-
-	    // Create the orthographic projection matrix (in pixel space), flipping the Y-axis
-	    Matrix4f projection = new Matrix4f().ortho(0, windowWidth, windowHeight, 0, -1, 1);
-
-	    // Create the transformation matrix (translation and scaling in pixel space)
-	    Matrix4f transform = new Matrix4f()
-	        .translate(windowWidth - (windowWidth - x - objectWidthInPixels),(windowHeight - y - objectHeightInPixels), 0)  // Align top-left corner and adjust Y
-	       .scale(objectWidthInPixels, objectHeightInPixels,0)   // Scale by pixel size
-	    	    .rotateZ((float) (Math.toRadians(rotation * 90)))  // apply 90° step rotation
-	    	    .rotateY((float)(Math.toRadians(hFlip*180)))
-	    	    .rotateX((float)(Math.toRadians(vFlip*180)));                         
-	    	    
-	    
-
-	    // Multiply projection matrix by transform matrix to get final transformation
-	    Matrix4f finalTransform = projection.mul(transform);
 	    
-	    try (MemoryStack stack = MemoryStack.stackPush()) {
-	        FloatBuffer matrixBuffer = stack.mallocFloat(16);
-	        finalTransform.get(matrixBuffer);
-	        int transformLoc = GL30.glGetUniformLocation(s.getId(), "transform");
-	        if (transformLoc == -1) {
-	            System.err.println("Could not find uniform 'transform'");
-	        } else {
-	            GL30.glUniformMatrix4fv(transformLoc,false,matrixBuffer);
-	        }
-	    }
-	    
-	    //adjustTextureCoordinates();
-
-	    GL30.glActiveTexture(GL30.GL_TEXTURE0);
-	    GL30.glBindTexture(GL30.GL_TEXTURE_2D, getTextureID());
-
-	    int textureSamplerLocation = GL30.glGetUniformLocation(s.getId(), "textureSampler");
-	    if (textureSamplerLocation == -1) {
-	        System.err.println("Could not find uniform 'textureSampler'");
+	    SpriteBatch batch = gui.getWindow().getSpriteBatch();
+	    if(batch.isDrawing()) {
+	    	batch.draw(this,windowHeight);
 	    } else {
-	        GL30.glUniform1i(textureSamplerLocation, 0);  // Set the uniform to texture unit 0
+	    	batch.begin(windowWidth,windowHeight);
+	    	batch.draw(this,windowHeight);
+	    	batch.end();
 	    }
+	}
+	
+	/**
+	 * Emits this object's quads into a drawing {@link SpriteBatch}. The batch has
+	 * already applied this object's scissor rectangle. The default uploads the
+	 * pixel buffer if needed and emits one quad with this object's texture;
+	 * subclasses that are built from several pieces, such as {@link TextObject},
+	 * override it.
+	 *
+	 * @param batch        the batch to append to
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	protected void emitQuads(SpriteBatch batch, int windowHeight) {
+		prepareTexture();
+		batch.setTexture(getTextureID());
+		batch.putQuad(this,windowHeight);
+	}
+	
+	/**
+	 * Emits this object into a {@link SoftwareRenderer}, which has already
+	 * applied this object's scissor rectangle. The default draws the pixel
+	 * buffer over the whole quad; subclasses that do not keep their look in
+	 * the pixel buffer, such as {@link TextObject}, override it.
+	 *
+	 * @param renderer the renderer to emit into
+	 */
+	protected void emitPixels(SoftwareRenderer renderer) {
+		renderer.putImage(this, pixelBuffer, BYTES_PER_PIXEL, this.sizeX, this.sizeY);
+	}
+	
+	/** Framebuffer transform of this object's quad, see {@link #updateQuadTransform(int)}. */
+	float quadCenterX,quadCenterY,quadXX,quadXY,quadYX,quadYY;
+	
+	private boolean quadTransformValid=false;
+	private int quadX,quadY,quadSizeX,quadSizeY,quadScale,quadRotation,quadHFlip,quadVFlip,quadWindowHeight;
+	
+	/**
+	 * Brings the cached quad transform up to date. A point {@code (lx,ly)} in the
+	 * quad's [-1,1] corner space, where +y is the bottom edge, lands at
+	 * {@code (quadCenterX+quadXX*lx+quadXY*ly, quadCenterY+quadYX*lx+quadYY*ly)}
+	 * in framebuffer pixels. The transform is only rebuilt when the position,
+	 * size, scale, rotation, flips or window height differ from the last call;
+	 * {@link #x} and {@link #y} are public and may be written directly, so the
+	 * inputs are compared rather than tracked through setters.
+	 *
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	void updateQuadTransform(int windowHeight) {
+		int rot = rotation&3;
+		if(quadTransformValid && quadX==x && quadY==y && quadSizeX==sizeX && quadSizeY==sizeY &&
+		   quadScale==scale && quadRotation==rot && quadHFlip==hFlip && quadVFlip==vFlip &&
+		   quadWindowHeight==windowHeight) {
+			return;
+		}
+		quadTransformValid=true;
+		quadX=x;
+		quadY=y;
+		quadSizeX=sizeX;
+		quadSizeY=sizeY;
+		quadScale=scale;
+		quadRotation=rot;
+		quadHFlip=hFlip;
+		quadVFlip=vFlip;
+		quadWindowHeight=windowHeight;
+		
+		float hw = (sizeX/2.0f)*scale;
+		float hh = (sizeY/2.0f)*scale;
+		quadCenterX = x+hw;
+		quadCenterY = windowHeight-y-hh;
+		
+		// flips first, then the rotation, matching translate * scale * rotZ * rotY * rotX
+		float fx = hFlip==1?-1:1;
+		float fy = vFlip==1?-1:1;
+		float m00,m01,m10,m11;
+		switch(rot) {
+		case 1:
+			m00=0;
+			m01=-fy;
+			m10=fx;
+			m11=0;
+			break;
+		case 2:
+			m00=-fx;
+			m01=0;
+			m10=0;
+			m11=-fy;
+			break;
+		case 3:
+			m00=0;
+			m01=fy;
+			m10=-fx;
+			m11=0;
+			break;
+		default:
+			m00=fx;
+			m01=0;
+			m10=0;
+			m11=fy;
+			break;
+		}
+		quadXX=hw*m00;
+		quadXY=hw*m01;
+		quadYX=hh*m10;
+		quadYY=hh*m11;
+	}
+	
+	/**
+	 * Whether this object is drawn as a plain textured quad and can be
+	 * collected into a {@link SpriteBatch}. Objects that render with their
+	 * own shader return false and are drawn through {@link #render(long, int, int)}.
+	 *
+	 * @return true if this object can be batched
+	 */
+	public boolean isBatchable() {
+		return true;
+	}
 
-	    GL30.glBindVertexArray(vao);  // Bind VAO
-	    GL30.glEnableVertexAttribArray(0);  // Enable position attribute
-	    GL30.glEnableVertexAttribArray(1);  // Enable texture attribute
-	    
-	    GL30.glEnable(GL30.GL_SCISSOR_TEST);
-
-	    int startX = (this.minX>this.winMinX?this.minX:this.winMinX);
-	    int startY = (this.minY>this.winMinY?this.minY:this.winMinY);
-	    int endX  = this.limitX<this.winLimitX?this.limitX:this.winLimitX;
-	    int endY = this.limitY<this.winLimitY?this.limitY:this.winLimitY;
-	    
-	    int width = endX-startX;
-	    int height = endY-startY;
-	    
-	    width=width<0?0:width;
-	    height=height<0?0:height;
-
-	    GL30.glScissor(startX, startY, width, height);  // Set scissor box
-
-	    // Draw the object
-	    GL30.glDrawArrays(GL30.GL_TRIANGLES, 0, 6);  // Draw call
-
-	    // Disable Scissor Test
-	    GL30.glDisable(GL30.GL_SCISSOR_TEST);
-
-	   // GL30.glDrawArrays(GL30.GL_TRIANGLES, 0, 6);  // Draw call
-
-	    // Unbind VAO, disable vertex attributes
-	    GL30.glBindVertexArray(0);  // Unbind VAO
-	    GL30.glDisableVertexAttribArray(0);
-	    GL30.glDisableVertexAttribArray(1);
-
-	    // Unbind texture and shader
-	    GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
-	    GL30.glUseProgram(0);
+	/**
+	 * Records an object that is not {@link #isBatchable() batchable} for the
+	 * render thread, see {@link com.iragui.Window#setThreadedRendering(boolean)}.
+	 * The default replays {@link #render(long, int, int)}, which reads this
+	 * object's live state from the render thread; subclasses drawing with their
+	 * own shader should return a command holding a copy of what they draw from.
+	 *
+	 * @param windowWidth  framebuffer width in pixels
+	 * @param windowHeight framebuffer height in pixels
+	 * @return the command drawing this object
+	 */
+	public DrawList.Command createDrawCommand(int windowWidth, int windowHeight) {
+		return (batch,w,h)->render(gui.getWindow().getWindow(),w,h);
 	}
 	
 	/**
@@ -669,53 +980,148 @@ public abstract class GUIObject {
 	public void destroyObject() {
 		if(!this.isDestroyed()) {
 			gui.removeObject(this);
-			if(!preserveTextureIDOverride) {
-				GL30.glDeleteTextures(getTextureID());
+			if(cachedImage!=null) {
+				releaseCachedImage();
+			} else if(atlasRegion!=null) {
+				releaseAtlasRegion();
+			} else if(!preserveTextureIDOverride && textureID!=0) {
+				GL30.glDeleteTextures(textureID);
 			}
-			GL30.glDeleteBuffers(vbo);
-			GL30.glDeleteVertexArrays(vao);
+			freePixelBuffer();
+			pixelBuffer=null;
 			this.destroyed=true;
 		}
 	}
 	
 	/** Sets a single pixel in the buffer. */
 	public void setPixel(int x, int y, byte[] p) {
+		detachCachedImage(true);
 		pixelBuffer.put((x+y*this.sizeX)*BYTES_PER_PIXEL,p,0,BYTES_PER_PIXEL);
-		this.allowReTexture();
+		this.expandDirtyRect(x,y,x+1,y+1);
+	}
+	
+	/**
+	 * Fills a rectangle with one pixel value. Only the rectangle is uploaded
+	 * again. Parts outside the object are ignored.
+	 *
+	 * @param x      left edge in pixels
+	 * @param y      first row
+	 * @param width  width in pixels
+	 * @param height height in rows
+	 * @param p      one pixel, {@link #BYTES_PER_PIXEL} bytes
+	 */
+	public void fillRect(int x, int y, int width, int height, byte[] p) {
+		int x0 = Math.max(x,0), y0 = Math.max(y,0);
+		int x1 = Math.min(x+width,this.sizeX), y1 = Math.min(y+height,this.sizeY);
+		if(x1<=x0 || y1<=y0) {
+			return;
+		}
+		detachCachedImage(true);
+		
+		int rowStart = (x0+y0*this.sizeX)*BYTES_PER_PIXEL;
+		int rowBytes = (x1-x0)*BYTES_PER_PIXEL;
+		for(int i=0;i<rowBytes;i+=BYTES_PER_PIXEL) {
+			pixelBuffer.put(rowStart+i,p,0,BYTES_PER_PIXEL);
+		}
+		// the first row is the pattern for the others
+		for(int row=y0+1;row<y1;row++) {
+			pixelBuffer.put((x0+row*this.sizeX)*BYTES_PER_PIXEL,pixelBuffer,rowStart,rowBytes);
+		}
+		this.expandDirtyRect(x0,y0,x1,y1);
+	}
+	
+	/**
+	 * Copies a block of tightly packed pixels into the pixel buffer. Only the
+	 * block is uploaded again. Parts outside the object are ignored.
+	 *
+	 * @param x      left edge in pixels
+	 * @param y      first row
+	 * @param width  block width in pixels
+	 * @param height block height in rows
+	 * @param pixels {@code width*height} pixels in this object's format, read from index 0
+	 */
+	public void blit(int x, int y, int width, int height, ByteBuffer pixels) {
+		int x0 = Math.max(x,0), y0 = Math.max(y,0);
+		int x1 = Math.min(x+width,this.sizeX), y1 = Math.min(y+height,this.sizeY);
+		if(x1<=x0 || y1<=y0) {
+			return;
+		}
+		detachCachedImage(true);
+		
+		int rowBytes = (x1-x0)*BYTES_PER_PIXEL;
+		for(int row=y0;row<y1;row++) {
+			int src = ((x0-x)+(row-y)*width)*BYTES_PER_PIXEL;
+			pixelBuffer.put((x0+row*this.sizeX)*BYTES_PER_PIXEL,pixels,src,rowBytes);
+		}
+		this.expandDirtyRect(x0,y0,x1,y1);
 	}
 	
 	/** Replaces the entire pixel buffer with the given byte array. */
 	public void setAll(int x, int y, byte[] p) {
+		detachCachedImage(true);
 		pixelBuffer.put(0,p,0,p.length);
 		this.allowReTexture();
 	}
 	
-	/** Replaces the entire pixel buffer with the given {@link ByteBuffer}. */
+	/** Replaces the entire pixel buffer with the given {@link ByteBuffer}.
+	 * <p>The caller keeps ownership of {@code p}; the previous buffer is freed
+	 * if it was allocated by this object.</p> */
 	public void setAll(ByteBuffer p) {
+		detachCachedImage(false);
+		freePixelBuffer();
 		pixelBuffer = p;
 		this.allowReTexture();
 	}
 	
-	/** @return OpenGL texture ID for this object */
+	/** @return OpenGL texture ID for this object, the atlas page if it lives in the {@link TextureAtlas} */
 	public int getTextureID() {
+		placeInAtlasOnDraw();
+		if(cachedImage!=null) {
+			gui.getWindow().getImageCache().upload(cachedImage);
+			return cachedImage.getTextureID();
+		}
+		if(atlasRegion!=null) {
+			return atlasRegion.getTextureID();
+		}
+		if(textureID==0) {
+			textureID = createRandomTexture(this.sizeX,this.sizeY);
+			clearDirtyRect();
+		}
 		return textureID;
 	}
 
-	/** Sets the OpenGL texture ID manually. */
+	/** Sets the OpenGL texture ID manually. Removes this object from the atlas if it was placed there. */
 	public void setTextureID(int textureID) {
+		releaseCachedImage();
+		releaseAtlasRegion();
 		this.textureID = textureID;
+		markDamaged();
 	}
 	
 	/** Regenerates a new texture ID and re-uploads pixel data. 
 	 * <p>If {@code preserveTextureIDOverride} is true,
 	 * the OpenGL texture ID will not be reset.
-	 * See {@link #setPreserveTextureIDOverride(boolean)}.</p>*/
+	 * See {@link #setPreserveTextureIDOverride(boolean)}.</p>
+	 * <p>An object in the {@link TextureAtlas} whose size changed gets a
+	 * region of the new size, or its own texture if it no longer fits.</p>*/
 	
 	public void resetTextureID() {
 		if(!preserveTextureIDOverride) {
-			GL30.glDeleteTextures(getTextureID());
+			detachCachedImage(false);
+			if(atlasRegion==null && textureID!=0) {
+				GL30.glDeleteTextures(textureID);
+				textureID=0;
+			}
+			boolean resized = atlasRegion!=null && (atlasRegion.getWidth()!=this.sizeX || atlasRegion.getHeight()!=this.sizeY);
+			if(resized) {
+				releaseAtlasRegion();
+			}
 			this.generateTexture();
-			this.updatePixelInfo(this.getTextureID());
+			if(resized) {
+				this.placeInAtlas();
+			}
+			this.allowReTexture();
+			this.updatePixelInfo();
 		}
 	}
 
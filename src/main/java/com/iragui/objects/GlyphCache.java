@@ -0,0 +1,238 @@
+package com.iragui.objects;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import com.iragui.util.BufferPool;
+import com.iragui.util.PixelConverter;
+
+/**
+ * Rasterizes glyphs once per font and stores them in a {@link TextureAtlas}.
+ * <p>
+ * Every glyph is drawn white on a transparent cell that is as wide as the
+ * pixels it covers and as tall as a {@link TextObject} line
+ * ({@code font size * 1.5}), with the baseline at {@code font size}. The cell
+ * starts {@link Glyph#left} pixels right of the pen, so glyphs with a negative
+ * left bearing or an overhang past their advance keep all their pixels. Text is
+ * then built from one quad per glyph tinted with the text color, so changing a
+ * string only rewrites vertices instead of rasterizing and uploading a new
+ * texture.
+ * </p>
+ *
+ * <p>A glyph cache belongs to the OpenGL context of its window, see
+ * {@link com.iragui.Window#getGlyphCache()}. Glyph cells taller or wider than
+ * {@link TextureAtlas#MAX_REGION_SIZE} do not fit in the atlas and are skipped.</p>
+ */
+public class GlyphCache {
+
+	/**
+	 * A rasterized glyph, its offset from the pen and its horizontal advance.
+	 */
+	public static class Glyph {
+		/** Atlas region of the glyph cell, or null if the glyph draws nothing. */
+		public final TextureAtlas.Region region;
+
+		/** Pixels from the pen to the left edge of the cell, negative for glyphs reaching back. */
+		public final int left;
+
+		/** Distance to the next glyph in pixels. */
+		public final int advance;
+
+		private Glyph(TextureAtlas.Region region, int left, int advance) {
+			this.region=region;
+			this.left=left;
+			this.advance=advance;
+		}
+	}
+
+	/**
+	 * Glyphs of one font, anti-aliasing and filter combination. Look a face up
+	 * once with {@link #getFace} and read its glyphs with
+	 * {@link #getGlyph(Face, int)}.
+	 */
+	public static class Face {
+		private final Font font;
+		private final boolean antiAliasing;
+		private final boolean nearestFilter;
+		private final int cellHeight;
+		private final FontMetrics metrics;
+		private final FontRenderContext renderContext;
+		private final HashMap<Integer,Glyph> glyphs = new HashMap<>();
+
+		private Face(Font font, boolean antiAliasing, boolean nearestFilter) {
+			this.font=font;
+			this.antiAliasing=antiAliasing;
+			this.nearestFilter=nearestFilter;
+			this.cellHeight=(int) (font.getSize()*1.5f);
+			this.renderContext=new FontRenderContext(null,antiAliasing,false);
+
+			BufferedImage image = new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2d = image.createGraphics();
+			g2d.setFont(font);
+			this.metrics=g2d.getFontMetrics();
+			g2d.dispose();
+		}
+
+		/** @return whether this face's glyphs are sampled with nearest-neighbor filtering */
+		public boolean isNearestFilter() {
+			return this.nearestFilter;
+		}
+	}
+
+	private record FaceKey(Font font, boolean antiAliasing, boolean nearestFilter) {}
+
+	private final TextureAtlas atlas;
+	private final HashMap<FaceKey,Face> faces = new HashMap<>();
+
+	// one white texel per filter, so backgrounds share a page with their glyphs
+	private TextureAtlas.Region whiteNearest;
+	private TextureAtlas.Region whiteLinear;
+
+	/**
+	 * @param atlas the atlas glyph cells are stored in
+	 */
+	public GlyphCache(TextureAtlas atlas) {
+		this.atlas=atlas;
+	}
+
+	/**
+	 * Returns a glyph, rasterizing and uploading it the first time it is requested.
+	 *
+	 * @param font          the font
+	 * @param antiAliasing  whether the glyph is drawn with anti-aliasing
+	 * @param nearestFilter whether the glyph is sampled with nearest-neighbor filtering
+	 * @param codePoint     the Unicode code point
+	 * @return the glyph
+	 */
+	public Glyph getGlyph(Font font, boolean antiAliasing, boolean nearestFilter, int codePoint) {
+		return getGlyph(getFace(font,antiAliasing,nearestFilter),codePoint);
+	}
+
+	/**
+	 * Returns a glyph of a face, rasterizing and uploading it the first time it is requested.
+	 *
+	 * @param face      a face from {@link #getFace}
+	 * @param codePoint the Unicode code point
+	 * @return the glyph
+	 */
+	public Glyph getGlyph(Face face, int codePoint) {
+		Glyph glyph = face.glyphs.get(codePoint);
+		if(glyph==null) {
+			glyph = rasterize(face,codePoint);
+			face.glyphs.put(codePoint,glyph);
+		}
+		return glyph;
+	}
+
+	/**
+	 * Returns the glyphs of a font, anti-aliasing and filter combination,
+	 * creating the face the first time it is requested.
+	 *
+	 * @param font          the font
+	 * @param antiAliasing  whether glyphs are drawn with anti-aliasing
+	 * @param nearestFilter whether glyphs are sampled with nearest-neighbor filtering
+	 * @return the face
+	 */
+	public Face getFace(Font font, boolean antiAliasing, boolean nearestFilter) {
+		FaceKey key = new FaceKey(font,antiAliasing,nearestFilter);
+		Face face = faces.get(key);
+		if(face==null) {
+			face = new Face(font,antiAliasing,nearestFilter);
+			faces.put(key,face);
+		}
+		return face;
+	}
+
+	private Glyph rasterize(Face face, int codePoint) {
+		int advance = Math.max(face.metrics.charWidth(codePoint),0);
+		if(Character.isWhitespace(codePoint)) {
+			return new Glyph(null,0,advance);
+		}
+
+		int baseline = face.font.getSize();
+		GlyphVector vector = face.font.createGlyphVector(face.renderContext,Character.toChars(codePoint));
+		Rectangle bounds = vector.getGlyphPixelBounds(0,face.renderContext,0,baseline);
+		if(bounds.isEmpty()) {
+			return new Glyph(null,0,advance);
+		}
+
+		BufferedImage image = new BufferedImage(bounds.width,face.cellHeight,BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = image.createGraphics();
+		if(face.antiAliasing) {
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		}
+		g2d.setColor(Color.WHITE);
+		g2d.drawGlyphVector(vector,-bounds.x,baseline);
+		g2d.dispose();
+
+		TextureAtlas.Region region = atlas.allocate(bounds.width,face.cellHeight,face.nearestFilter);
+		if(region!=null) {
+			ByteBuffer pixels = BufferPool.acquire(bounds.width*face.cellHeight*GUIObject.RGBA);
+			PixelConverter.convert(image,pixels,true);
+			atlas.upload(region,pixels);
+			BufferPool.release(pixels);
+		}
+		return new Glyph(region,bounds.x,advance);
+	}
+
+	/**
+	 * Returns the atlas texture holding a solid white texel, used to draw
+	 * untextured rectangles such as text backgrounds with the sprite batch.
+	 * Each filter has its own texel, so a background drawn before glyphs of the
+	 * same filter needs no texture switch.
+	 *
+	 * @param nearestFilter the filter of the glyphs drawn with it
+	 * @return the texture ID of the white texel's page
+	 */
+	public int getWhiteTextureID(boolean nearestFilter) {
+		return getWhite(nearestFilter).getTextureID();
+	}
+
+	/**
+	 * @param nearestFilter the filter of the glyphs drawn with it
+	 * @return the U coordinate of the center of the white texel
+	 */
+	public float getWhiteU(boolean nearestFilter) {
+		TextureAtlas.Region white = getWhite(nearestFilter);
+		return (white.u0+white.u1)*0.5f;
+	}
+
+	/**
+	 * @param nearestFilter the filter of the glyphs drawn with it
+	 * @return the V coordinate of the center of the white texel
+	 */
+	public float getWhiteV(boolean nearestFilter) {
+		TextureAtlas.Region white = getWhite(nearestFilter);
+		return (white.v0+white.v1)*0.5f;
+	}
+
+	private TextureAtlas.Region getWhite(boolean nearestFilter) {
+		TextureAtlas.Region white = nearestFilter?whiteNearest:whiteLinear;
+		if(white!=null) {
+			return white;
+		}
+		// 3x3 so linear filtering at the center never reaches the transparent padding
+		white = atlas.allocate(3,3,nearestFilter);
+		ByteBuffer pixels = BufferPool.acquire(3*3*GUIObject.RGBA);
+		for(int i=0;i<pixels.limit();i++) {
+			pixels.put(i,(byte) 0xFF);
+		}
+		atlas.upload(white,pixels);
+		BufferPool.release(pixels);
+		if(nearestFilter) {
+			whiteNearest=white;
+		} else {
+			whiteLinear=white;
+		}
+		return white;
+	}
+}
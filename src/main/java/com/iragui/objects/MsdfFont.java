@@ -0,0 +1,281 @@
+package com.iragui.objects;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.freetype.FT_Face;
+import org.lwjgl.util.freetype.FreeType;
+import org.lwjgl.util.msdfgen.MSDFGen;
+import org.lwjgl.util.msdfgen.MSDFGenBitmap;
+import org.lwjgl.util.msdfgen.MSDFGenBounds;
+import org.lwjgl.util.msdfgen.MSDFGenExt;
+import org.lwjgl.util.msdfgen.MSDFGenTransform;
+
+import com.iragui.FileSystem;
+import com.iragui.util.BufferPool;
+
+/**
+ * A font face rendered from multi-channel signed distance fields.
+ * <p>
+ * The face is loaded with FreeType and each glyph outline is turned into an
+ * MSDF bitmap by msdfgen the first time it is drawn. Glyphs are generated
+ * once at {@link #EM_SIZE} pixels per em into the face's own
+ * {@link TextureAtlas}, and the sprite batch's distance-field shader
+ * reconstructs sharp edges from them at any size or scale. Changing the
+ * text size, the object scale or the display density never generates glyphs
+ * again.
+ * </p>
+ *
+ * <p>Glyph bitmaps are generated on the thread owning the OpenGL context the
+ * font is first drawn in. A font should only be drawn in one window.</p>
+ */
+public class MsdfFont {
+
+	/** Pixels per em at which glyph distance fields are generated. */
+	public static final int EM_SIZE = 48;
+
+	/** Distance field range on each side of an edge, in atlas pixels. */
+	public static final int RANGE = 4;
+
+	/**
+	 * A glyph's distance field and layout metrics, all in em units.
+	 */
+	public static class Glyph {
+		/** Atlas region of the distance field, or null if the glyph draws nothing. */
+		public final TextureAtlas.Region region;
+
+		/** Horizontal advance in em. */
+		public final float advance;
+
+		/** Bounds of the distance field quad relative to the pen, in em. */
+		public final float left,bottom,right,top;
+
+		private Glyph(TextureAtlas.Region region, float advance, float left, float bottom, float right, float top) {
+			this.region=region;
+			this.advance=advance;
+			this.left=left;
+			this.bottom=bottom;
+			this.right=right;
+			this.top=top;
+		}
+	}
+
+	private static long library=MemoryUtil.NULL;
+
+	private final ByteBuffer data;
+	private final FT_Face face;
+	private final long msdfFont;
+	private final float unitsPerEm;
+	private final float ascender,descender;
+
+	private final HashMap<Integer,Glyph> glyphs = new HashMap<>();
+	private TextureAtlas atlas;
+
+	private MsdfFont(ByteBuffer data) {
+		this.data=data;
+
+		try(MemoryStack stack = MemoryStack.stackPush()) {
+			if(library==MemoryUtil.NULL) {
+				PointerBuffer lib = stack.mallocPointer(1);
+				if(FreeType.FT_Init_FreeType(lib)!=FreeType.FT_Err_Ok) {
+					throw new IllegalStateException("could not initialize FreeType");
+				}
+				library=lib.get(0);
+			}
+
+			PointerBuffer facePointer = stack.mallocPointer(1);
+			if(FreeType.FT_New_Memory_Face(library, this.data, 0, facePointer)!=FreeType.FT_Err_Ok) {
+				throw new IllegalArgumentException("could not load font face");
+			}
+			this.face = FT_Face.create(facePointer.get(0));
+
+			PointerBuffer fontPointer = stack.mallocPointer(1);
+			if(MSDFGenExt.msdf_ft_adopt_font(face.address(), fontPointer)!=MSDFGen.MSDF_SUCCESS) {
+				FreeType.FT_Done_Face(face);
+				throw new IllegalArgumentException("could not adopt font face");
+			}
+			this.msdfFont = fontPointer.get(0);
+		}
+
+		this.unitsPerEm = face.units_per_EM()&0xFFFF;
+		this.ascender = face.ascender()/unitsPerEm;
+		this.descender = face.descender()/unitsPerEm;
+	}
+
+	/**
+	 * Loads a TrueType or OpenType font from a classpath resource.
+	 *
+	 * @param path classpath resource path
+	 * @return the font, or null if the resource could not be read
+	 */
+	public static MsdfFont load(String path) {
+		try(InputStream in = FileSystem.getInputStream(path)) {
+			if(in==null) {
+				return null;
+			}
+			byte[] bytes = in.readAllBytes();
+			ByteBuffer data = BufferUtils.createByteBuffer(bytes.length);
+			data.put(bytes).flip();
+			return new MsdfFont(data);
+		} catch(IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/** @return the ascender in em */
+	public float getAscender() {
+		return this.ascender;
+	}
+
+	/** @return the descender in em, negative below the baseline */
+	public float getDescender() {
+		return this.descender;
+	}
+
+	/**
+	 * Measures a string without generating any glyphs.
+	 *
+	 * @param text the string to measure
+	 * @param size font size in pixels per em
+	 * @return the width of the string in pixels
+	 */
+	public float getTextWidth(String text, float size) {
+		float width=0;
+		for(int offset=0;offset<text.length();) {
+			int codePoint = text.codePointAt(offset);
+			width+=getAdvance(codePoint);
+			offset+=Character.charCount(codePoint);
+		}
+		return width*size;
+	}
+
+	private float getAdvance(int codePoint) {
+		Glyph glyph = glyphs.get(codePoint);
+		if(glyph!=null) {
+			return glyph.advance;
+		}
+		if(FreeType.FT_Load_Char(face, codePoint, FreeType.FT_LOAD_NO_SCALE)!=FreeType.FT_Err_Ok) {
+			return 0;
+		}
+		return face.glyph().advance().x()/unitsPerEm;
+	}
+
+	/**
+	 * Returns a glyph, generating and uploading its distance field the first
+	 * time it is requested. Must be called on the OpenGL thread.
+	 *
+	 * @param codePoint the Unicode code point
+	 * @return the glyph
+	 */
+	public Glyph getGlyph(int codePoint) {
+		Glyph glyph = glyphs.get(codePoint);
+		if(glyph==null) {
+			glyph = generate(codePoint);
+			glyphs.put(codePoint,glyph);
+		}
+		return glyph;
+	}
+
+	/**
+	 * @return the atlas holding this font's distance fields, or null before
+	 * the first glyph is generated
+	 */
+	public TextureAtlas getAtlas() {
+		return this.atlas;
+	}
+
+	private Glyph generate(int codePoint) {
+		float advance = getAdvance(codePoint);
+
+		try(MemoryStack stack = MemoryStack.stackPush()) {
+			PointerBuffer shapePointer = stack.mallocPointer(1);
+			if(MSDFGenExt.msdf_ft_font_load_glyph(msdfFont, codePoint, MSDFGenExt.MSDF_FONT_SCALING_EM_NORMALIZED, shapePointer)!=MSDFGen.MSDF_SUCCESS) {
+				return new Glyph(null,advance,0,0,0,0);
+			}
+			long shape = shapePointer.get(0);
+
+			try {
+				MSDFGenBounds bounds = MSDFGenBounds.calloc(stack);
+				MSDFGen.msdf_shape_normalize(shape);
+				MSDFGen.msdf_shape_get_bounds(shape, bounds);
+
+				if(bounds.r()<=bounds.l() || bounds.t()<=bounds.b()) {
+					return new Glyph(null,advance,0,0,0,0);
+				}
+
+				MSDFGen.msdf_shape_edge_colors_simple(shape, 3.0);
+
+				double range = (double) RANGE/EM_SIZE;
+				int width = (int) Math.ceil((bounds.r()-bounds.l())*EM_SIZE)+RANGE*2;
+				int height = (int) Math.ceil((bounds.t()-bounds.b())*EM_SIZE)+RANGE*2;
+
+				if(atlas==null) {
+					atlas = new TextureAtlas();
+				}
+				TextureAtlas.Region region = atlas.allocate(width, height, false);
+				if(region==null) {
+					return new Glyph(null,advance,0,0,0,0);
+				}
+
+				MSDFGenTransform transform = MSDFGenTransform.calloc(stack);
+				transform.scale().x(EM_SIZE).y(EM_SIZE);
+				transform.translation().x(range-bounds.l()).y(range-bounds.b());
+				transform.distance_mapping().lower(-range).upper(range);
+
+				MSDFGenBitmap bitmap = MSDFGenBitmap.calloc(stack);
+				MSDFGen.msdf_bitmap_alloc(MSDFGen.MSDF_BITMAP_TYPE_MSDF, width, height, bitmap);
+				try {
+					MSDFGen.msdf_generate_msdf(bitmap, shape, transform);
+
+					PointerBuffer pixelPointer = stack.mallocPointer(1);
+					MSDFGen.msdf_bitmap_get_pixels(bitmap, pixelPointer);
+					FloatBuffer distances = MemoryUtil.memFloatBuffer(pixelPointer.get(0), width*height*3);
+
+					// rows are already bottom-up, matching the atlas upload order
+					ByteBuffer pixels = BufferPool.acquire(width*height*GUIObject.RGBA);
+					for(int i=0;i<width*height;i++) {
+						pixels.put(toByte(distances.get(i*3)));
+						pixels.put(toByte(distances.get(i*3+1)));
+						pixels.put(toByte(distances.get(i*3+2)));
+						pixels.put((byte) 0xFF);
+					}
+					pixels.flip();
+					atlas.upload(region, pixels);
+					BufferPool.release(pixels);
+				} finally {
+					MSDFGen.msdf_bitmap_free(bitmap);
+				}
+
+				float left = (float) (bounds.l()-range);
+				float bottom = (float) (bounds.b()-range);
+				return new Glyph(region,advance,left,bottom,left+(float) width/EM_SIZE,bottom+(float) height/EM_SIZE);
+			} finally {
+				MSDFGen.msdf_shape_free(shape);
+			}
+		}
+	}
+
+	private static byte toByte(float distance) {
+		int v = (int) (distance*255f+0.5f);
+		return (byte) (v<0?0:v>255?255:v);
+	}
+
+	/** Frees the font face and its distance field atlas. */
+	public void destroy() {
+		MSDFGenExt.msdf_ft_font_destroy(msdfFont);
+		FreeType.FT_Done_Face(face);
+		if(atlas!=null) {
+			atlas.destroy();
+			atlas=null;
+		}
+		glyphs.clear();
+	}
+}
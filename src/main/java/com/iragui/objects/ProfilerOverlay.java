@@ -0,0 +1,125 @@
+package com.iragui.objects;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.Arrays;
+
+import com.iragui.FrameProfiler;
+import com.iragui.GUI;
+
+/**
+ * One line of text in the top left corner summarizing the window's
+ * {@link FrameProfiler}: average frame and phase times, the latest GPU time
+ * and the counters per frame since the last refresh.
+ * <p>The text is rebuilt only every {@link #REFRESH_NANOS} and redrawn only
+ * when it changed. Text is drawn from cached glyphs, so a refresh rewrites a
+ * few vertices and the overlay is cheap enough to leave on.</p>
+ */
+public class ProfilerOverlay extends TextObject {
+
+	/** Layer the overlay is drawn on, above regular objects and subwindows. */
+	public static final int LAYER = 1<<20;
+
+	/** Time between refreshes of the text. */
+	public static final long REFRESH_NANOS = 500_000_000L;
+
+	private final FrameProfiler profiler;
+	private final FrameProfiler.Frame frame = new FrameProfiler.Frame();
+	private final long[] phases = new long[FrameProfiler.PHASES];
+	private final long[] counts = new long[FrameProfiler.COUNTERS];
+	private final StringBuilder line = new StringBuilder();
+	private long lastRefresh=0;
+	private long lastFrameCount=0;
+
+	private ProfilerOverlay(String name, GUI gui) {
+		super(name, LAYER, gui, 0, 0, true, true, "profiling",
+				new Font("Monospaced", Font.PLAIN, 12), Color.WHITE, new Color(0,0,0,160), true);
+		this.profiler=gui.getWindow().getProfiler();
+	}
+
+	/**
+	 * Creates a visible overlay in the top left corner.
+	 *
+	 * @param name the object name
+	 * @param gui  the GUI whose window is profiled
+	 * @return the overlay
+	 */
+	public static ProfilerOverlay create(String name, GUI gui) {
+		ProfilerOverlay overlay = new ProfilerOverlay(name, gui);
+		overlay.setVisible();
+		overlay.placeTopLeft();
+		return overlay;
+	}
+
+	private void placeTopLeft() {
+		this.setX(0);
+		this.setY(gui.getWindow().getSizeY()-this.sizeY);
+	}
+
+	@Override
+	public void update(boolean showFrame) {
+		long now = System.nanoTime();
+		if(now-lastRefresh<REFRESH_NANOS) {
+			return;
+		}
+		lastRefresh=now;
+
+		long frameCount = profiler.getFrameCount();
+		int frames = (int) Math.min(frameCount-lastFrameCount, FrameProfiler.HISTORY-2);
+		lastFrameCount=frameCount;
+		if(frames<=0) {
+			return;
+		}
+
+		long duration=0, gpu=-1;
+		Arrays.fill(phases, 0);
+		Arrays.fill(counts, 0);
+		int read=0;
+		for(int age=0;age<frames;age++) {
+			if(!profiler.getFrame(age, frame)) {
+				continue;
+			}
+			read++;
+			duration+=frame.getDurationNanos();
+			for(int i=0;i<FrameProfiler.PHASES;i++) {
+				phases[i]+=frame.getPhaseNanos(i);
+			}
+			for(int i=0;i<FrameProfiler.COUNTERS;i++) {
+				counts[i]+=frame.getCount(i);
+			}
+			if(gpu<0) {
+				gpu=frame.getGpuNanos();
+			}
+		}
+		if(read==0) {
+			return;
+		}
+
+		line.setLength(0);
+		appendMillis("frame ", duration/read);
+		appendMillis("  update ", phases[FrameProfiler.UPDATE]/read);
+		appendMillis("  render ", phases[FrameProfiler.RENDER]/read);
+		appendMillis("  upload ", phases[FrameProfiler.UPLOAD]/read);
+		appendMillis("  swap ", phases[FrameProfiler.SWAP]/read);
+		if(gpu>=0) {
+			appendMillis("  gpu ", gpu);
+		}
+		line.append("  draws ").append(counts[FrameProfiler.DRAW_CALLS]/read);
+		line.append("  binds ").append(counts[FrameProfiler.SHADER_BINDS]/read);
+		line.append("  uploaded ").append(counts[FrameProfiler.UPLOAD_BYTES]/read/1024).append(" KB");
+		line.append("  culled ").append(counts[FrameProfiler.CULLED]/read);
+
+		String text = line.toString();
+		if(!text.contentEquals(getText()) || this.getY()+this.sizeY!=gui.getWindow().getSizeY()) {
+			setText(text);
+			placeTopLeft();
+			gui.showNextFrame();
+		}
+	}
+
+	/** Appends a label and a duration in milliseconds with one decimal. */
+	private void appendMillis(String label, long nanos) {
+		long tenths = (nanos+50_000)/100_000;
+		line.append(label).append(tenths/10).append('.').append(tenths%10);
+	}
+}
@@ -0,0 +1,50 @@
+package com.iragui.objects;
+
+/**
+ * Draws the objects of a frame. A window hands every visible object to its
+ * renderer in layer order between {@link #begin(int, int)} and {@link #end()}.
+ * <p>
+ * {@link GLRenderer} draws through OpenGL with a {@link SpriteBatch};
+ * {@link SoftwareRenderer} composites the objects' pixel buffers on the CPU,
+ * see {@link com.iragui.Window#setSoftwareRendering(boolean)}. Presenting the
+ * frame and clearing the framebuffer are left to the window, since both
+ * depend on where the frame ends up.
+ * </p>
+ */
+public interface Renderer {
+
+	/**
+	 * Starts a frame.
+	 *
+	 * @param windowWidth  framebuffer width in pixels
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	void begin(int windowWidth, int windowHeight);
+
+	/**
+	 * Draws an object, restricted to its scissor rectangle and the clip.
+	 *
+	 * @param o the object to draw
+	 */
+	void draw(GUIObject o);
+
+	/**
+	 * Restricts all following drawing to a rectangle, on top of each object's
+	 * own scissor rectangle. Used to redraw only the damaged part of a window.
+	 *
+	 * @param x      left edge in framebuffer pixels
+	 * @param y      bottom edge in framebuffer pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 */
+	void setClip(int x, int y, int width, int height);
+
+	/** Removes the rectangle set by {@link #setClip(int, int, int, int)}. */
+	void clearClip();
+
+	/** Finishes the frame; everything drawn since {@link #begin(int, int)} is in the framebuffer afterwards. */
+	void end();
+
+	/** Releases the resources owned by this renderer. */
+	void destroy();
+}
@@ -1,5 +1,7 @@
 package com.iragui.objects;
 
+import java.nio.ByteBuffer;
+
 import com.iragui.GUI;
 
 /**
@@ -13,9 +15,59 @@ public class ScreenObject extends GUIObject{
 		this.setPreserveTextureIDOverride(preserveTextureIDOverride);
 	}
 	
+	/** Whether the frame begun last was handed out from the texture uploader. */
+	private boolean streaming=false;
+	
+	/**
+	 * Returns memory for the next full frame, {@code sizeX*sizeY} pixels laid
+	 * out like the pixel buffer. It lives in the window's {@link TextureUploader}
+	 * ring, so the frame reaches the texture without a copy and without waiting
+	 * for the previous one. Finish it with {@link #submitFrame()}.
+	 * <p>
+	 * Streamed frames bypass the pixel buffer, so anything that uploads the
+	 * pixel buffer again, such as {@link #setPixel}, {@link #setAll(ByteBuffer)},
+	 * {@link #allowReTexture()} or {@link #resetTextureID()}, replaces the
+	 * streamed image with the pixel buffer's until the next frame is submitted.
+	 * With software rendering, or before the window has created its uploader,
+	 * the pixel buffer itself is returned and none of this applies.
+	 * </p>
+	 *
+	 * @return memory to write the frame into
+	 */
+	public ByteBuffer beginFrame() {
+		TextureUploader uploader = gui.getWindow().getTextureUploader();
+		if(gui.getWindow().isSoftwareRendering() || uploader==null) {
+			streaming=false;
+			return pixelBuffer;
+		}
+		// pending pixel buffer changes go first so they cannot overwrite the frame
+		prepareTexture();
+		streaming=true;
+		return uploader.reserve(sizeX*sizeY*BYTES_PER_PIXEL);
+	}
+	
+	/** Uploads the frame written since {@link #beginFrame()} and shows it on the next frame. */
+	public void submitFrame() {
+		if(streaming) {
+			streaming=false;
+			gui.getWindow().getTextureUploader().submit(getTextureID(), 0, 0, sizeX, sizeY, getGlPixelInt());
+		} else if(!gui.getWindow().isSoftwareRendering()) {
+			// written into the pixel buffer, which is uploaded when next drawn
+			this.allowReTexture();
+		}
+		markDamaged();
+		gui.showNextFrame();
+	}
+	
 	@Override
 	public void update(boolean showFrame) {}
 
+	/** Screens are not interactive. */
+	@Override
+	public int getInputEvents() {
+		return 0;
+	}
+	
 	@Override
 	public void sendKey(int key, int action) {}
 
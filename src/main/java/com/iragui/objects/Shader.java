@@ -1,13 +1,28 @@
 package com.iragui.objects;
 
+import com.iragui.FrameProfiler;
+
 import org.joml.*;
 import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBGetProgramBinary;
+import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
 
 /**
  * Represents an OpenGL shader program composed of a vertex shader and a fragment shader.
@@ -16,11 +31,45 @@ import java.nio.file.Paths;
  * compiling shaders, linking them into a shader program, and providing utility methods
  * to bind the shader and upload uniform variables.
  * </p>
+ *
+ * <p>All active uniforms are resolved once after linking. Hot paths should
+ * look a uniform up with {@link #getUniformLocation(String)} once and pass the
+ * returned handle to the {@code int} overloads of the upload methods, which
+ * neither query OpenGL nor allocate. Program binding goes through
+ * {@link #useProgram(int)}, which skips {@code glUseProgram} when the program
+ * is already bound.</p>
+ *
+ * <p>When the driver supports {@code ARB_get_program_binary}, linked programs
+ * are saved to {@link #CACHE_DIRECTORY} and loaded from there on the next start
+ * instead of being compiled. Cache files are named after a SHA-256 of the
+ * sources and the GL vendor, renderer and version strings, so a driver update
+ * simply misses the cache. A binary the driver rejects is deleted and the
+ * program is compiled from source.</p>
  */
 public class Shader {
 
+    /**
+     * Directory holding cached program binaries, set with {@code -Diragui.shaderCache}.
+     * An empty value disables the cache.
+     */
+    public static final String CACHE_DIRECTORY = System.getProperty("iragui.shaderCache",
+            Paths.get(System.getProperty("user.home"), ".iragui", "shadercache").toString());
+
+    /** Size of a cache file header, which holds the driver's binary format. */
+    private static final int CACHE_HEADER_SIZE = Integer.BYTES;
+
+    /**
+     * Program currently bound in the context current on each thread, as far as
+     * this class knows. A context is only current on one thread at a time, so
+     * tracking per thread tracks per context.
+     */
+    private static final ThreadLocal<int[]> currentProgram = ThreadLocal.withInitial(() -> new int[1]);
+
     private int shaderProgramID;
-    private boolean beingUsed = false;
+
+    private final HashMap<String, Integer> uniforms = new HashMap<>();
+    private final FloatBuffer mat3Buffer = BufferUtils.createFloatBuffer(9);
+    private final FloatBuffer mat4Buffer = BufferUtils.createFloatBuffer(16);
 
     private String vertexSource;
     private String fragmentSource;
@@ -103,6 +152,12 @@ public class Shader {
      * @throws AssertionError if shader compilation or linking fails.
      */
     public void compile() {
+        String cacheKey = getCacheKey();
+        if (cacheKey != null && loadBinary(cacheKey)) {
+            cacheUniforms();
+            return;
+        }
+
         int vertexID = GL30.glCreateShader(GL30.GL_VERTEX_SHADER);
         GL30.glShaderSource(vertexID, vertexSource);
         GL30.glCompileShader(vertexID);
@@ -128,6 +183,10 @@ public class Shader {
         shaderProgramID = GL30.glCreateProgram();
         GL30.glAttachShader(shaderProgramID, vertexID);
         GL30.glAttachShader(shaderProgramID, fragmentID);
+        if (cacheKey != null) {
+            ARBGetProgramBinary.glProgramParameteri(shaderProgramID,
+                    ARBGetProgramBinary.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL30.GL_TRUE);
+        }
         GL30.glLinkProgram(shaderProgramID);
 
         if (GL30.glGetProgrami(shaderProgramID, GL30.GL_LINK_STATUS) == GL30.GL_FALSE) {
@@ -142,27 +201,228 @@ public class Shader {
         GL30.glDetachShader(shaderProgramID, fragmentID);
         GL30.glDeleteShader(vertexID);
         GL30.glDeleteShader(fragmentID);
+
+        if (cacheKey != null && GL30.glGetProgrami(shaderProgramID, GL30.GL_LINK_STATUS) == GL30.GL_TRUE) {
+            saveBinary(cacheKey);
+        }
+
+        cacheUniforms();
+    }
+
+    /**
+     * Builds the cache file name for this program in the current context.
+     *
+     * @return the key, or null if the cache is disabled or program binaries are unsupported.
+     */
+    private String getCacheKey() {
+        if (CACHE_DIRECTORY.isEmpty()) {
+            return null;
+        }
+        GLCapabilities caps = GL.getCapabilities();
+        if (!caps.GL_ARB_get_program_binary && !caps.OpenGL41) {
+            return null;
+        }
+        if (GL30.glGetInteger(ARBGetProgramBinary.GL_NUM_PROGRAM_BINARY_FORMATS) <= 0) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String[] parts = {vertexSource, fragmentSource,
+                    GL30.glGetString(GL30.GL_VENDOR), GL30.glGetString(GL30.GL_RENDERER), GL30.glGetString(GL30.GL_VERSION)};
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the program from a cached binary.
+     *
+     * @return true if the binary was found and accepted by the driver.
+     */
+    private boolean loadBinary(String cacheKey) {
+        Path file = Paths.get(CACHE_DIRECTORY, cacheKey + ".bin");
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            return false;
+        }
+        if (bytes.length <= CACHE_HEADER_SIZE) {
+            deleteBinary(file);
+            return false;
+        }
+
+        int format = ByteBuffer.wrap(bytes).getInt(0);
+        ByteBuffer binary = MemoryUtil.memAlloc(bytes.length - CACHE_HEADER_SIZE);
+        try {
+            binary.put(bytes, CACHE_HEADER_SIZE, binary.remaining()).flip();
+
+            shaderProgramID = GL30.glCreateProgram();
+            ARBGetProgramBinary.glProgramBinary(shaderProgramID, format, binary);
+        } finally {
+            MemoryUtil.memFree(binary);
+        }
+
+        if (GL30.glGetProgrami(shaderProgramID, GL30.GL_LINK_STATUS) == GL30.GL_FALSE) {
+            // the driver changed in a way the key does not capture, rebuild from source
+            GL30.glDeleteProgram(shaderProgramID);
+            shaderProgramID = 0;
+            deleteBinary(file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the linked program's binary to the cache. Failures only cost the
+     * next start a compile, so they are ignored.
+     */
+    private void saveBinary(String cacheKey) {
+        int length = GL30.glGetProgrami(shaderProgramID, ARBGetProgramBinary.GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) {
+            return;
+        }
+
+        byte[] bytes;
+        ByteBuffer binary = MemoryUtil.memAlloc(length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+            ARBGetProgramBinary.glGetProgramBinary(shaderProgramID, written, format, binary);
+            if (written.get(0) <= 0) {
+                return;
+            }
+            bytes = new byte[CACHE_HEADER_SIZE + written.get(0)];
+            ByteBuffer.wrap(bytes).putInt(format.get(0));
+            binary.get(bytes, CACHE_HEADER_SIZE, written.get(0));
+        } finally {
+            MemoryUtil.memFree(binary);
+        }
+
+        try {
+            Path directory = Paths.get(CACHE_DIRECTORY);
+            Files.createDirectories(directory);
+            // write then rename, so a concurrent start never reads a partial file
+            Path temp = Files.createTempFile(directory, cacheKey, ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(cacheKey + ".bin"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // cache directory not writable, keep compiling from source
+        }
+    }
+
+    private static void deleteBinary(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // a stale file is rejected again next time
+        }
+    }
+
+    /**
+     * Resolves the location of every active uniform of the linked program.
+     * Array uniforms are stored under both {@code name} and {@code name[0]}.
+     */
+    private void cacheUniforms() {
+        uniforms.clear();
+        int count = GL30.glGetProgrami(shaderProgramID, GL30.GL_ACTIVE_UNIFORMS);
+        int maxLength = GL30.glGetProgrami(shaderProgramID, GL30.GL_ACTIVE_UNIFORM_MAX_LENGTH);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) {
+                String name = GL30.glGetActiveUniform(shaderProgramID, i, maxLength, size, type);
+                int location = GL30.glGetUniformLocation(shaderProgramID, name);
+                if (location < 0) {
+                    continue; // uniform block members have no location
+                }
+                uniforms.put(name, location);
+                if (name.endsWith("[0]")) {
+                    uniforms.put(name.substring(0, name.length() - 3), location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached location of an active uniform. The result is the
+     * handle expected by the {@code int} overloads of the upload methods.
+     *
+     * @param varName the name of the uniform variable in the shader.
+     * @return the uniform location, or -1 if the program has no such active uniform.
+     */
+    public int getUniformLocation(String varName) {
+        Integer location = uniforms.get(varName);
+        return location == null ? -1 : location;
     }
 
     /**
      * Activates (binds) this shader program for use.
      * <p>
-     * If the shader is already in use, this call does nothing.
+     * If the program is already bound, this call does nothing.
      * </p>
      */
     public void use() {
-        if (!beingUsed) {
-            GL30.glUseProgram(shaderProgramID);
-            beingUsed = true;
-        }
+        useProgram(shaderProgramID);
     }
 
     /**
      * Deactivates (unbinds) any currently active shader program.
      */
     public void detach() {
-        GL30.glUseProgram(0);
-        beingUsed = false;
+        useProgram(0);
+    }
+
+    /**
+     * Binds a program unless it is already bound. Every {@code glUseProgram}
+     * in the library goes through here so the tracked binding stays accurate.
+     *
+     * @param programID the program to bind, or 0 to unbind.
+     */
+    public static void useProgram(int programID) {
+        int[] current = currentProgram.get();
+        if (current[0] != programID) {
+            GL30.glUseProgram(programID);
+            current[0] = programID;
+            if (programID != 0) {
+                FrameProfiler.count(FrameProfiler.SHADER_BINDS, 1);
+            }
+        }
+    }
+
+    /**
+     * Forgets the tracked program binding, forcing the next {@link #useProgram(int)}
+     * to call {@code glUseProgram}. Call this after making a different context current.
+     */
+    public static void resetCurrentProgram() {
+        currentProgram.get()[0] = -1;
+    }
+
+    /**
+     * Deletes the program. The shader must not be used afterwards.
+     */
+    public void delete() {
+        if (currentProgram.get()[0] == shaderProgramID) {
+            useProgram(0);
+        }
+        GL30.glDeleteProgram(shaderProgramID);
+        uniforms.clear();
     }
 
     /**
@@ -172,11 +432,19 @@ public class Shader {
      * @param mat3    the {@link Matrix3f} to upload.
      */
     public void uploadMat3f(String varName, Matrix3f mat3) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadMat3f(getUniformLocation(varName), mat3);
+    }
+
+    /**
+     * Uploads a 3x3 matrix to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param mat3     the {@link Matrix3f} to upload.
+     */
+    public void uploadMat3f(int location, Matrix3f mat3) {
         use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(9);
-        mat3.get(matBuffer);
-        GL30.glUniformMatrix3fv(varLocation, false, matBuffer);
+        mat3.get(mat3Buffer);
+        GL30.glUniformMatrix3fv(location, false, mat3Buffer);
     }
 
     /**
@@ -186,11 +454,19 @@ public class Shader {
      * @param mat4    the {@link Matrix4f} to upload.
      */
     public void uploadMat4f(String varName, Matrix4f mat4) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadMat4f(getUniformLocation(varName), mat4);
+    }
+
+    /**
+     * Uploads a 4x4 matrix to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param mat4     the {@link Matrix4f} to upload.
+     */
+    public void uploadMat4f(int location, Matrix4f mat4) {
         use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(16);
-        mat4.get(matBuffer);
-        GL30.glUniformMatrix4fv(varLocation, false, matBuffer);
+        mat4.get(mat4Buffer);
+        GL30.glUniformMatrix4fv(location, false, mat4Buffer);
     }
 
     /**
@@ -200,9 +476,19 @@ public class Shader {
      * @param vec     the {@link Vector2f} to upload.
      */
     public void uploadVec2f(String varName, Vector2f vec) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadVec2f(getUniformLocation(varName), vec.x, vec.y);
+    }
+
+    /**
+     * Uploads a 2D vector to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param x        the first component.
+     * @param y        the second component.
+     */
+    public void uploadVec2f(int location, float x, float y) {
         use();
-        GL30.glUniform2f(varLocation, vec.x, vec.y);
+        GL30.glUniform2f(location, x, y);
     }
 
     /**
@@ -212,9 +498,20 @@ public class Shader {
      * @param vec     the {@link Vector3f} to upload.
      */
     public void uploadVec3f(String varName, Vector3f vec) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadVec3f(getUniformLocation(varName), vec.x, vec.y, vec.z);
+    }
+
+    /**
+     * Uploads a 3D vector to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param x        the first component.
+     * @param y        the second component.
+     * @param z        the third component.
+     */
+    public void uploadVec3f(int location, float x, float y, float z) {
         use();
-        GL30.glUniform3f(varLocation, vec.x, vec.y, vec.z);
+        GL30.glUniform3f(location, x, y, z);
     }
 
     /**
@@ -224,9 +521,21 @@ public class Shader {
      * @param vec     the {@link Vector4f} to upload.
      */
     public void uploadVec4f(String varName, Vector4f vec) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadVec4f(getUniformLocation(varName), vec.x, vec.y, vec.z, vec.w);
+    }
+
+    /**
+     * Uploads a 4D vector to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param x        the first component.
+     * @param y        the second component.
+     * @param z        the third component.
+     * @param w        the fourth component.
+     */
+    public void uploadVec4f(int location, float x, float y, float z, float w) {
         use();
-        GL30.glUniform4f(varLocation, vec.x, vec.y, vec.z, vec.w);
+        GL30.glUniform4f(location, x, y, z, w);
     }
 
     /**
@@ -236,9 +545,18 @@ public class Shader {
      * @param val     the float value to upload.
      */
     public void uploadFloat(String varName, float val) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadFloat(getUniformLocation(varName), val);
+    }
+
+    /**
+     * Uploads a float value to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param val      the float value to upload.
+     */
+    public void uploadFloat(int location, float val) {
         use();
-        GL30.glUniform1f(varLocation, val);
+        GL30.glUniform1f(location, val);
     }
 
     /**
@@ -248,9 +566,18 @@ public class Shader {
      * @param val     the integer value to upload.
      */
     public void uploadInt(String varName, int val) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadInt(getUniformLocation(varName), val);
+    }
+
+    /**
+     * Uploads an integer value to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param val      the integer value to upload.
+     */
+    public void uploadInt(int location, int val) {
         use();
-        GL30.glUniform1i(varLocation, val);
+        GL30.glUniform1i(location, val);
     }
 
     /**
@@ -260,9 +587,7 @@ public class Shader {
      * @param slot    the texture slot (e.g., 0 for GL_TEXTURE0).
      */
     public void uploadTexture(String varName, int slot) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
-        use();
-        GL30.glUniform1i(varLocation, slot);
+        uploadInt(getUniformLocation(varName), slot);
     }
 
     /**
@@ -272,9 +597,18 @@ public class Shader {
      * @param array   the array of integers to upload.
      */
     public void uploadIntArray(String varName, int[] array) {
-        int varLocation = GL30.glGetUniformLocation(shaderProgramID, varName);
+        uploadIntArray(getUniformLocation(varName), array);
+    }
+
+    /**
+     * Uploads an array of integers to a shader uniform.
+     *
+     * @param location the uniform handle from {@link #getUniformLocation(String)}.
+     * @param array    the array of integers to upload.
+     */
+    public void uploadIntArray(int location, int[] array) {
         use();
-        GL30.glUniform1iv(varLocation, array);
+        GL30.glUniform1iv(location, array);
     }
 
     /**
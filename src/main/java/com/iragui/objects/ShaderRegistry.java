@@ -0,0 +1,124 @@
+package com.iragui.objects;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.lwjgl.glfw.GLFW;
+
+import com.iragui.HeadlessContext;
+
+/**
+ * Shares compiled shader programs between objects of the same OpenGL context.
+ * <p>
+ * Programs are keyed by their full source text, so every object built from the
+ * same source string gets the same {@link Shader} and it is compiled and linked
+ * only once per context. Each {@link #acquire(String)} must be balanced by a
+ * {@link #release(Shader)}; the program is deleted when its last user releases it
+ * or when the context's window closes.
+ * </p>
+ *
+ * <p>Must be called on the thread owning the current OpenGL context. The
+ * registry itself may be used from several threads, each with its own context.</p>
+ */
+public class ShaderRegistry {
+
+	/**
+	 * A shared program and the number of objects holding it.
+	 */
+	private static class Entry {
+		private final Shader shader;
+		private int references=0;
+
+		private Entry(Shader shader) {
+			this.shader=shader;
+		}
+	}
+
+	/** Programs per GLFW window or headless EGL context handle, each keyed by shader source. */
+	private static final HashMap<Long,HashMap<String,Entry>> contexts = new HashMap<>();
+
+	private ShaderRegistry() {}
+
+	/**
+	 * Returns the program built from the given source in the current context,
+	 * compiling and linking it the first time it is requested.
+	 *
+	 * @param source shader source with {@code #type vertex} and {@code #type fragment} sections
+	 * @return the shared, compiled shader
+	 */
+	public static synchronized Shader acquire(String source) {
+		long context = currentContext();
+		HashMap<String,Entry> programs = contexts.get(context);
+		if(programs==null) {
+			programs = new HashMap<>();
+			contexts.put(context,programs);
+		}
+
+		Entry e = programs.get(source);
+		if(e==null) {
+			Shader shader = new Shader(source,true);
+			shader.compile();
+			e = new Entry(shader);
+			programs.put(source,e);
+		}
+		e.references++;
+		return e.shader;
+	}
+
+	/**
+	 * Drops one reference to a program obtained from {@link #acquire(String)}
+	 * and deletes it once nobody holds it anymore.
+	 *
+	 * @param shader the shader to release
+	 */
+	public static synchronized void release(Shader shader) {
+		HashMap<String,Entry> programs = contexts.get(currentContext());
+		if(programs==null) {
+			return;
+		}
+		Iterator<Entry> it = programs.values().iterator();
+		while(it.hasNext()) {
+			Entry e = it.next();
+			if(e.shader==shader) {
+				if(--e.references<=0) {
+					it.remove();
+					shader.delete();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of distinct programs compiled in the current context
+	 */
+	public static synchronized int size() {
+		HashMap<String,Entry> programs = contexts.get(currentContext());
+		return programs==null?0:programs.size();
+	}
+
+	/**
+	 * @return the handle identifying the current context: its GLFW window, or
+	 *         the EGL context of a headless window
+	 */
+	private static long currentContext() {
+		long context = GLFW.glfwGetCurrentContext();
+		return context!=0?context:HeadlessContext.getCurrentContext();
+	}
+
+	/**
+	 * Deletes every program of a context. Called when its window closes, while
+	 * the context is still current.
+	 *
+	 * @param context the GLFW window handle owning the context, or the headless EGL context
+	 */
+	public static synchronized void destroyContext(long context) {
+		HashMap<String,Entry> programs = contexts.remove(context);
+		if(programs==null) {
+			return;
+		}
+		for(Entry e : programs.values()) {
+			e.shader.delete();
+		}
+	}
+}
@@ -0,0 +1,458 @@
+package com.iragui.objects;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.iragui.FrameProfiler;
+
+/**
+ * Composites objects into an {@code int[]} framebuffer without a GPU.
+ * <p>
+ * Objects emit their pixel buffers, or solid rectangles, through
+ * {@link GUIObject#emitPixels(SoftwareRenderer)} while the frame is built.
+ * Each becomes an operation holding its screen rectangle, already cut to the
+ * object's scissor rectangle and the clip, and {@link #end()} rasterizes all
+ * of them tile by tile. Tiles of {@link #TILE_SIZE} pixels are handed out to
+ * the worker threads, so every tile is written by one thread only and keeps
+ * the operations' order.
+ * </p>
+ *
+ * <p>The result follows the OpenGL path: position, scale, quarter-turn
+ * rotations and flips are applied as in {@link SpriteBatch#putQuad}, colors
+ * blend with {@code GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA} and alpha is
+ * replaced by the source alpha. Textures are sampled nearest, so objects
+ * using linear filtering only match the OpenGL output where they are not scaled.</p>
+ *
+ * <p>Pixels are stored as ARGB, bottom row first like an OpenGL framebuffer.</p>
+ */
+public class SoftwareRenderer implements Renderer {
+
+	/** Width and height of the tiles rasterized by one worker at a time. */
+	public static final int TILE_SIZE = 64;
+
+	private static final int FILL=0,IMAGE=1,ARGB_IMAGE=2;
+
+	/**
+	 * A rectangle of the frame and how to fill it.
+	 */
+	private static class Op {
+		private int kind;
+		/** Covered pixels in framebuffer coordinates, end exclusive. */
+		private int x0,y0,x1,y1;
+		private int color;
+
+		/** Maps a framebuffer point relative to the center to the quad's [-1,1] corner space. */
+		private float centerX,centerY,inverseXX,inverseXY,inverseYX,inverseYY;
+		private ByteBuffer bytes;
+		private int[] argb;
+		private int bytesPerPixel,sourceWidth,sourceHeight;
+	}
+
+	private final int threads;
+	private final ExecutorService workers;
+
+	private int width=0,height=0;
+	private int[] pixels = new int[0];
+
+	private final ArrayList<Op> ops = new ArrayList<>();
+	private int opCount=0;
+
+	private boolean clipping=false;
+	private int clipX0,clipY0,clipX1,clipY1;
+	private int scissorX0,scissorY0,scissorX1,scissorY1;
+
+	/** Creates a renderer using one thread per available processor. */
+	public SoftwareRenderer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads number of threads rasterizing tiles, including the one
+	 *                calling {@link #end()}
+	 */
+	public SoftwareRenderer(int threads) {
+		this.threads=Math.max(threads,1);
+		if(this.threads>1) {
+			workers = Executors.newFixedThreadPool(this.threads-1, r->{
+				Thread t = new Thread(r,"IraGUI raster");
+				t.setDaemon(true);
+				return t;
+			});
+		} else {
+			workers = null;
+		}
+	}
+
+	/**
+	 * Resizes the framebuffer. Its contents are lost when the size changes.
+	 *
+	 * @param width  framebuffer width in pixels
+	 * @param height framebuffer height in pixels
+	 * @return true if the framebuffer was reallocated
+	 */
+	public boolean resize(int width, int height) {
+		if(this.width==width && this.height==height) {
+			return false;
+		}
+		this.width=width;
+		this.height=height;
+		this.pixels = new int[width*height];
+		return true;
+	}
+
+	/**
+	 * Fills the framebuffer, or only the clip rectangle, with a color. Must be
+	 * called outside {@link #begin(int, int)} and {@link #end()}.
+	 *
+	 * @param r red component (0–1)
+	 * @param g green component (0–1)
+	 * @param b blue component (0–1)
+	 * @param a alpha component (0–1)
+	 */
+	public void clear(float r, float g, float b, float a) {
+		int x0=0,y0=0,x1=width,y1=height;
+		if(clipping) {
+			x0=Math.max(x0,clipX0);
+			y0=Math.max(y0,clipY0);
+			x1=Math.min(x1,clipX1);
+			y1=Math.min(y1,clipY1);
+		}
+		int color = toByte(a)<<24 | toByte(r)<<16 | toByte(g)<<8 | toByte(b);
+		for(int y=y0;y<y1;y++) {
+			Arrays.fill(pixels, y*width+x0, y*width+Math.max(x1,x0), color);
+		}
+	}
+
+	@Override
+	public void begin(int windowWidth, int windowHeight) {
+		resize(windowWidth, windowHeight);
+		opCount=0;
+	}
+
+	/**
+	 * Applies the object's scissor rectangle, cut to the clip, and lets the
+	 * object emit its pixels. Invisible objects and objects outside the clip
+	 * are skipped.
+	 */
+	@Override
+	public void draw(GUIObject o) {
+		if(!o.visible) {
+			return;
+		}
+		scissorX0 = Math.max(Math.max(o.minX, o.winMinX), 0);
+		scissorY0 = Math.max(Math.max(o.minY, o.winMinY), 0);
+		scissorX1 = Math.min(Math.min(o.limitX, o.winLimitX), width);
+		scissorY1 = Math.min(Math.min(o.limitY, o.winLimitY), height);
+		if(clipping) {
+			scissorX0=Math.max(scissorX0,clipX0);
+			scissorY0=Math.max(scissorY0,clipY0);
+			scissorX1=Math.min(scissorX1,clipX1);
+			scissorY1=Math.min(scissorY1,clipY1);
+		}
+		if(scissorX1<=scissorX0 || scissorY1<=scissorY0) {
+			FrameProfiler.count(FrameProfiler.CULLED, 1);
+			return;
+		}
+		o.emitPixels(this);
+	}
+
+	/**
+	 * Draws an object's pixels over its whole quad, transformed with its
+	 * position, scale, flips and rotation.
+	 *
+	 * @param o             the object the pixels belong to
+	 * @param pixels        rows of {@code width} pixels, top row first
+	 * @param bytesPerPixel {@link GUIObject#RGBA} or {@link GUIObject#RGB}
+	 * @param width         source width in pixels
+	 * @param height        source height in pixels
+	 */
+	public void putImage(GUIObject o, ByteBuffer pixels, int bytesPerPixel, int width, int height) {
+		Op op = putQuad(o, IMAGE);
+		if(op!=null) {
+			op.bytes=pixels;
+			op.bytesPerPixel=bytesPerPixel;
+			op.sourceWidth=width;
+			op.sourceHeight=height;
+		}
+	}
+
+	/**
+	 * Draws ARGB pixels, such as those of a {@code TYPE_INT_ARGB} image, over
+	 * an object's whole quad.
+	 *
+	 * @param o      the object the pixels belong to
+	 * @param pixels rows of {@code width} ARGB pixels, top row first
+	 * @param width  source width in pixels
+	 * @param height source height in pixels
+	 */
+	public void putImage(GUIObject o, int[] pixels, int width, int height) {
+		Op op = putQuad(o, ARGB_IMAGE);
+		if(op!=null) {
+			op.argb=pixels;
+			op.sourceWidth=width;
+			op.sourceHeight=height;
+		}
+	}
+
+	/**
+	 * Fills an object's whole quad with a color.
+	 *
+	 * @param o    the object
+	 * @param argb the color, blended by its alpha
+	 */
+	public void putColor(GUIObject o, int argb) {
+		Op op = putQuad(o, FILL);
+		if(op!=null) {
+			op.color=argb;
+		}
+	}
+
+	/**
+	 * Fills a rectangle of the framebuffer with a color, within the current
+	 * object's scissor rectangle.
+	 *
+	 * @param x0   left edge in framebuffer pixels
+	 * @param y0   bottom edge in framebuffer pixels
+	 * @param x1   right edge, exclusive
+	 * @param y1   top edge, exclusive
+	 * @param argb the color, blended by its alpha
+	 */
+	public void fillRect(int x0, int y0, int x1, int y1, int argb) {
+		Op op = add(FILL, x0, y0, x1, y1);
+		if(op!=null) {
+			op.color=argb;
+		}
+	}
+
+	/**
+	 * Adds an operation covering an object's quad. Quarter-turn rotations keep
+	 * the quad axis aligned, so its bounds are exactly the covered pixels.
+	 */
+	private Op putQuad(GUIObject o, int kind) {
+		o.updateQuadTransform(height);
+		float extentX = Math.abs(o.quadXX)+Math.abs(o.quadXY);
+		float extentY = Math.abs(o.quadYX)+Math.abs(o.quadYY);
+		// pixels whose centers lie inside the quad, as OpenGL rasterizes them
+		int x0 = (int) Math.ceil(o.quadCenterX-extentX-0.5f);
+		int x1 = (int) Math.ceil(o.quadCenterX+extentX-0.5f);
+		int y0 = (int) Math.ceil(o.quadCenterY-extentY-0.5f);
+		int y1 = (int) Math.ceil(o.quadCenterY+extentY-0.5f);
+
+		float determinant = o.quadXX*o.quadYY-o.quadXY*o.quadYX;
+		if(determinant==0) {
+			return null;
+		}
+		Op op = add(kind, x0, y0, x1, y1);
+		if(op==null) {
+			return null;
+		}
+		op.centerX=o.quadCenterX;
+		op.centerY=o.quadCenterY;
+		op.inverseXX=o.quadYY/determinant;
+		op.inverseXY=-o.quadXY/determinant;
+		op.inverseYX=-o.quadYX/determinant;
+		op.inverseYY=o.quadXX/determinant;
+		return op;
+	}
+
+	private Op add(int kind, int x0, int y0, int x1, int y1) {
+		x0=Math.max(x0,scissorX0);
+		y0=Math.max(y0,scissorY0);
+		x1=Math.min(x1,scissorX1);
+		y1=Math.min(y1,scissorY1);
+		if(x1<=x0 || y1<=y0) {
+			return null;
+		}
+		if(opCount==ops.size()) {
+			ops.add(new Op());
+		}
+		Op op = ops.get(opCount++);
+		op.kind=kind;
+		op.x0=x0;
+		op.y0=y0;
+		op.x1=x1;
+		op.y1=y1;
+		op.bytes=null;
+		op.argb=null;
+		return op;
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		clipping=true;
+		clipX0=x;
+		clipY0=y;
+		clipX1=x+width;
+		clipY1=y+height;
+	}
+
+	@Override
+	public void clearClip() {
+		clipping=false;
+	}
+
+	/** Rasterizes the frame's operations, spreading the tiles over the worker threads. */
+	@Override
+	public void end() {
+		if(opCount==0) {
+			return;
+		}
+		int tilesX = (width+TILE_SIZE-1)/TILE_SIZE;
+		int tileCount = tilesX*((height+TILE_SIZE-1)/TILE_SIZE);
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = ()->{
+			int tile;
+			while((tile=next.getAndIncrement())<tileCount) {
+				int x = (tile%tilesX)*TILE_SIZE;
+				int y = (tile/tilesX)*TILE_SIZE;
+				rasterize(x, y, Math.min(x+TILE_SIZE,width), Math.min(y+TILE_SIZE,height));
+			}
+		};
+
+		int helpers = Math.min(threads, tileCount)-1;
+		ArrayList<Future<?>> pending = new ArrayList<>(helpers);
+		for(int i=0;i<helpers;i++) {
+			pending.add(workers.submit(worker));
+		}
+		worker.run();
+		try {
+			for(Future<?> f : pending) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("rasterizing a tile failed", e.getCause());
+		}
+		// drop references to the frame's pixel buffers
+		for(int i=0;i<opCount;i++) {
+			ops.get(i).bytes=null;
+			ops.get(i).argb=null;
+		}
+		opCount=0;
+	}
+
+	private void rasterize(int tileX0, int tileY0, int tileX1, int tileY1) {
+		for(int i=0;i<opCount;i++) {
+			Op op = ops.get(i);
+			int x0 = Math.max(op.x0,tileX0);
+			int y0 = Math.max(op.y0,tileY0);
+			int x1 = Math.min(op.x1,tileX1);
+			int y1 = Math.min(op.y1,tileY1);
+			if(x1<=x0 || y1<=y0) {
+				continue;
+			}
+			if(op.kind==FILL) {
+				fill(op.color, x0, y0, x1, y1);
+			} else {
+				sample(op, x0, y0, x1, y1);
+			}
+		}
+	}
+
+	private void fill(int color, int x0, int y0, int x1, int y1) {
+		int a = color>>>24;
+		for(int y=y0;y<y1;y++) {
+			int row = y*width;
+			for(int x=x0;x<x1;x++) {
+				pixels[row+x] = blend(pixels[row+x], color, a);
+			}
+		}
+	}
+
+	private void sample(Op op, int x0, int y0, int x1, int y1) {
+		int w = op.sourceWidth;
+		int h = op.sourceHeight;
+		for(int y=y0;y<y1;y++) {
+			int row = y*width;
+			float dy = y+0.5f-op.centerY;
+			for(int x=x0;x<x1;x++) {
+				float dx = x+0.5f-op.centerX;
+				float lx = op.inverseXX*dx+op.inverseXY*dy;
+				float ly = op.inverseYX*dx+op.inverseYY*dy;
+
+				// corner space to texels, the first row of the source is at ly=1
+				int sx = (int) ((lx+1)*0.5f*w);
+				int sy = (int) ((1-ly)*0.5f*h);
+				sx = sx<0?0:(sx>=w?w-1:sx);
+				sy = sy<0?0:(sy>=h?h-1:sy);
+
+				int color;
+				if(op.kind==ARGB_IMAGE) {
+					color = op.argb[sy*w+sx];
+				} else {
+					int index = (sy*w+sx)*op.bytesPerPixel;
+					ByteBuffer b = op.bytes;
+					int alpha = op.bytesPerPixel==GUIObject.RGBA?b.get(index+3)&255:255;
+					color = alpha<<24 | (b.get(index)&255)<<16 | (b.get(index+1)&255)<<8 | (b.get(index+2)&255);
+				}
+				pixels[row+x] = blend(pixels[row+x], color, color>>>24);
+			}
+		}
+	}
+
+	/** Blends like {@code GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA} with the source alpha written unchanged. */
+	private static int blend(int dst, int src, int a) {
+		if(a==255) {
+			return src;
+		}
+		int ia = 255-a;
+		int r = ((src>>16&255)*a+(dst>>16&255)*ia+127)/255;
+		int g = ((src>>8&255)*a+(dst>>8&255)*ia+127)/255;
+		int b = ((src&255)*a+(dst&255)*ia+127)/255;
+		return a<<24 | r<<16 | g<<8 | b;
+	}
+
+	private static int toByte(float c) {
+		return Math.round(Math.max(0,Math.min(1,c))*255);
+	}
+
+	/** @return the framebuffer, ARGB, bottom row first */
+	public int[] getPixels() {
+		return this.pixels;
+	}
+
+	/** @return the framebuffer width in pixels */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/** @return the framebuffer height in pixels */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Copies the framebuffer into client memory as RGBA, top row first, like
+	 * {@link CompositeBuffer#read(ByteBuffer)}.
+	 *
+	 * @param target receives {@code width*height*4} bytes from its position
+	 */
+	public void read(ByteBuffer target) {
+		int index = target.position();
+		for(int y=height-1;y>=0;y--) {
+			int row = y*width;
+			for(int x=0;x<width;x++) {
+				int c = pixels[row+x];
+				target.put(index++, (byte) (c>>16));
+				target.put(index++, (byte) (c>>8));
+				target.put(index++, (byte) c);
+				target.put(index++, (byte) (c>>>24));
+			}
+		}
+	}
+
+	/** Stops the worker threads. */
+	@Override
+	public void destroy() {
+		if(workers!=null) {
+			workers.shutdown();
+		}
+	}
+}
@@ -0,0 +1,617 @@
+package com.iragui.objects;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL30;
+
+import com.iragui.FrameProfiler;
+
+/**
+ * Collects textured {@link GUIObject} quads into one streaming vertex buffer
+ * and draws them with as few draw calls as possible.
+ * <p>
+ * Quads are appended in the order they are submitted. A draw call is only
+ * issued when the bound texture or the scissor rectangle changes, when the
+ * buffer is full, or when the batch is ended. The per-frame cost therefore
+ * grows with the number of state changes instead of the number of objects.
+ * Switching between regular and distance field ({@link MsdfFont}) textures
+ * also flushes, since each uses its own shader.
+ * Objects stored in a {@link TextureAtlas} share the page texture and are
+ * drawn with their region's UV sub-rectangle.
+ * </p>
+ *
+ * <p>A batch belongs to the OpenGL context that was current when it was
+ * created, see {@link com.iragui.Window#getSpriteBatch()}. Between
+ * {@link #beginRecording(DrawList, int, int)} and {@link #end()} it makes no
+ * OpenGL calls and records its runs into a {@link DrawList} instead, which a
+ * batch of another context sharing the textures draws with {@link #replay(DrawList)}.</p>
+ */
+public class SpriteBatch {
+
+	/** Maximum number of quads held before the batch flushes itself. */
+	public static final int MAX_QUADS = 2048;
+
+	/** x, y, u, v, r, g, b, a */
+	private static final int FLOATS_PER_VERTEX = 8;
+	private static final int VERTICES_PER_QUAD = 4;
+	private static final int INDICES_PER_QUAD = 6;
+	static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX*VERTICES_PER_QUAD;
+
+	private static final String shader =
+		    "#type vertex\n" +
+		    "#version 330 core\n" +
+		    "\n" +
+		    "layout(location = 0) in vec2 inPosition;\n" +
+		    "layout(location = 1) in vec2 inTexCoord;\n" +
+		    "layout(location = 2) in vec4 inColor;\n" +
+		    "\n" +
+		    "uniform mat4 projection;\n" +
+		    "out vec2 texCoord;\n" +
+		    "out vec4 color;\n" +
+		    "\n" +
+		    "void main() {\n" +
+		    "    gl_Position = projection * vec4(inPosition, 0.0, 1.0);\n" +
+		    "    texCoord = inTexCoord;\n" +
+		    "    color = inColor;\n" +
+		    "}\n" +
+		    "\n" +
+		    "#type fragment\n" +
+		    "#version 330 core\n" +
+		    "\n" +
+		    "in vec2 texCoord;\n" +
+		    "in vec4 color;\n" +
+		    "out vec4 fragColor;\n" +
+		    "uniform sampler2D textureSampler;\n" +
+		    "\n" +
+		    "void main() {\n" +
+		    "    fragColor = texture(textureSampler, texCoord) * color;\n" +
+		    "}";
+
+	/** Same vertex stage, with a fragment stage that reconstructs edges from a multi-channel distance field. */
+	private static final String distanceFieldShader =
+		    "#type vertex\n" +
+		    "#version 330 core\n" +
+		    "\n" +
+		    "layout(location = 0) in vec2 inPosition;\n" +
+		    "layout(location = 1) in vec2 inTexCoord;\n" +
+		    "layout(location = 2) in vec4 inColor;\n" +
+		    "\n" +
+		    "uniform mat4 projection;\n" +
+		    "out vec2 texCoord;\n" +
+		    "out vec4 color;\n" +
+		    "\n" +
+		    "void main() {\n" +
+		    "    gl_Position = projection * vec4(inPosition, 0.0, 1.0);\n" +
+		    "    texCoord = inTexCoord;\n" +
+		    "    color = inColor;\n" +
+		    "}\n" +
+		    "\n" +
+		    "#type fragment\n" +
+		    "#version 330 core\n" +
+		    "\n" +
+		    "in vec2 texCoord;\n" +
+		    "in vec4 color;\n" +
+		    "out vec4 fragColor;\n" +
+		    "uniform sampler2D textureSampler;\n" +
+		    "uniform float pxRange;\n" +
+		    "\n" +
+		    "float median(float r, float g, float b) {\n" +
+		    "    return max(min(r, g), min(max(r, g), b));\n" +
+		    "}\n" +
+		    "\n" +
+		    "void main() {\n" +
+		    "    vec2 unitRange = vec2(pxRange) / vec2(textureSize(textureSampler, 0));\n" +
+		    "    vec2 screenTexSize = vec2(1.0) / fwidth(texCoord);\n" +
+		    "    float screenPxRange = max(0.5 * dot(unitRange, screenTexSize), 1.0);\n" +
+		    "    vec3 msd = texture(textureSampler, texCoord).rgb;\n" +
+		    "    float sd = median(msd.r, msd.g, msd.b);\n" +
+		    "    float opacity = clamp(screenPxRange * (sd - 0.5) + 0.5, 0.0, 1.0);\n" +
+		    "    fragColor = vec4(color.rgb, color.a * opacity);\n" +
+		    "}";
+
+	/** Quad corners in corner space, where +y is the bottom edge of the image. */
+	private static final float[] CORNER_X = {-1, 1, 1,-1};
+	private static final float[] CORNER_Y = { 1, 1,-1,-1};
+
+	private final Shader s;
+	private final int projectionLocation;
+
+	private final Shader distanceField;
+	private final int distanceFieldProjectionLocation;
+	private boolean distanceFieldProjectionSet=false;
+	private boolean distanceFieldMode=false;
+
+	private final int vao;
+	private final int vbo;
+	private final int ebo;
+	private final int emptyVao;
+
+	private final FloatBuffer vertices;
+	private final Matrix4f projection = new Matrix4f();
+
+	private int quadCount=0;
+	private boolean drawing=false;
+
+	private int currentTexture=-1;
+	private int scissorX,scissorY,scissorWidth,scissorHeight;
+
+	private boolean clipping=false;
+	private int clipX0,clipY0,clipX1,clipY1;
+
+	private DrawList recording;
+
+	/**
+	 * Creates the batch shader, vertex array and buffers.
+	 * <p>Must be called while the target OpenGL context is current.</p>
+	 */
+	public SpriteBatch() {
+
+		s = ShaderRegistry.acquire(shader);
+
+		projectionLocation = s.getUniformLocation("projection");
+		s.uploadTexture("textureSampler",0);
+
+		distanceField = ShaderRegistry.acquire(distanceFieldShader);
+
+		distanceFieldProjectionLocation = distanceField.getUniformLocation("projection");
+		distanceField.uploadTexture("textureSampler",0);
+		distanceField.uploadFloat("pxRange",MsdfFont.RANGE*2);
+		Shader.useProgram(0);
+
+		vertices = BufferUtils.createFloatBuffer(MAX_QUADS*VERTICES_PER_QUAD*FLOATS_PER_VERTEX);
+
+		ShortBuffer indices = BufferUtils.createShortBuffer(MAX_QUADS*INDICES_PER_QUAD);
+		for(int i=0;i<MAX_QUADS;i++) {
+			int v = i*VERTICES_PER_QUAD;
+			indices.put((short) v);
+			indices.put((short) (v+1));
+			indices.put((short) (v+2));
+			indices.put((short) (v+2));
+			indices.put((short) (v+3));
+			indices.put((short) v);
+		}
+		indices.flip();
+
+		vao = GL30.glGenVertexArrays();
+		GL30.glBindVertexArray(vao);
+
+		vbo = GL30.glGenBuffers();
+		GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+		GL30.glBufferData(GL30.GL_ARRAY_BUFFER, (long) vertices.capacity()*Float.BYTES, GL30.GL_STREAM_DRAW);
+
+		int stride = FLOATS_PER_VERTEX*Float.BYTES;
+		GL30.glVertexAttribPointer(0, 2, GL30.GL_FLOAT, false, stride, 0);
+		GL30.glEnableVertexAttribArray(0);
+		GL30.glVertexAttribPointer(1, 2, GL30.GL_FLOAT, false, stride, 2*Float.BYTES);
+		GL30.glEnableVertexAttribArray(1);
+		GL30.glVertexAttribPointer(2, 4, GL30.GL_FLOAT, false, stride, 4*Float.BYTES);
+		GL30.glEnableVertexAttribArray(2);
+
+		ebo = GL30.glGenBuffers();
+		GL30.glBindBuffer(GL30.GL_ELEMENT_ARRAY_BUFFER, ebo);
+		GL30.glBufferData(GL30.GL_ELEMENT_ARRAY_BUFFER, indices, GL30.GL_STATIC_DRAW);
+
+		GL30.glBindVertexArray(0);
+		GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+
+		emptyVao = GL30.glGenVertexArrays();
+	}
+
+	/**
+	 * Starts a batch. Binds the batch shader and uploads the pixel-space
+	 * projection for the given framebuffer size.
+	 *
+	 * @param windowWidth  framebuffer width in pixels
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	public void begin(int windowWidth, int windowHeight) {
+		if(drawing) {
+			return;
+		}
+		drawing=true;
+		quadCount=0;
+		currentTexture=-1;
+		distanceFieldMode=false;
+		distanceFieldProjectionSet=false;
+		vertices.clear();
+
+		projection.setOrtho(0, windowWidth, windowHeight, 0, -1, 1);
+
+		s.uploadMat4f(projectionLocation, projection);
+
+		GL30.glActiveTexture(GL30.GL_TEXTURE0);
+		GL30.glBindVertexArray(vao);
+		GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+		GL30.glEnable(GL30.GL_SCISSOR_TEST);
+	}
+
+	/**
+	 * Starts a batch that records into a draw list instead of drawing. No
+	 * OpenGL calls are made until {@link #end()}; textures objects upload
+	 * while emitting their quads are still uploaded on this batch's context.
+	 *
+	 * @param list         the list to append to
+	 * @param windowWidth  framebuffer width in pixels
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	public void beginRecording(DrawList list, int windowWidth, int windowHeight) {
+		if(drawing) {
+			return;
+		}
+		drawing=true;
+		recording=list;
+		quadCount=0;
+		currentTexture=-1;
+		distanceFieldMode=false;
+		vertices.clear();
+		projection.setOrtho(0, windowWidth, windowHeight, 0, -1, 1);
+	}
+
+	/**
+	 * Records drawing done outside the batch. While recording the command is
+	 * appended to the draw list, otherwise it is executed right away.
+	 *
+	 * @param command      the command
+	 * @param windowWidth  framebuffer width in pixels
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	public void addCommand(DrawList.Command command, int windowWidth, int windowHeight) {
+		flush();
+		if(recording!=null) {
+			recording.addCommand(command);
+		} else {
+			command.execute(this, windowWidth, windowHeight);
+			if(drawing) {
+				restoreState();
+			}
+		}
+	}
+
+	/**
+	 * Draws a recorded frame's batch runs and commands on this batch's
+	 * context. The damaged area of a composited frame becomes the clip, so
+	 * commands are scissored to it like when drawing directly.
+	 *
+	 * @param list the recorded frame
+	 */
+	public void replay(DrawList list) {
+		int width = list.getWidth();
+		int height = list.getHeight();
+		begin(width, height);
+		if(list.isComposited()) {
+			setClip(list.getClipX(), list.getClipY(), list.getClipWidth(), list.getClipHeight());
+		}
+
+		int[] ops = list.ops;
+		int vertexOffset=0;
+		for(int i=0;i<list.opCount;) {
+			if(ops[i]==DrawList.BATCH) {
+				setMode(ops[i+2]!=0);
+				currentTexture=ops[i+1];
+				scissorX=ops[i+3];
+				scissorY=ops[i+4];
+				scissorWidth=ops[i+5];
+				scissorHeight=ops[i+6];
+				int quads = ops[i+7];
+				vertices.put(list.vertices, vertexOffset, quads*FLOATS_PER_QUAD);
+				vertexOffset+=quads*FLOATS_PER_QUAD;
+				quadCount=quads;
+				flush();
+				i+=DrawList.BATCH_INTS;
+			} else {
+				list.commands.get(ops[i+1]).execute(this, width, height);
+				restoreState();
+				i+=2;
+			}
+		}
+
+		clearClip();
+		end();
+	}
+
+	/** Rebinds the batch's program, vertex array and scissor test after a command. */
+	private void restoreState() {
+		if(distanceFieldMode) {
+			distanceField.use();
+		} else {
+			s.use();
+		}
+		GL30.glActiveTexture(GL30.GL_TEXTURE0);
+		GL30.glBindVertexArray(vao);
+		GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, vbo);
+		GL30.glEnable(GL30.GL_SCISSOR_TEST);
+	}
+
+	/**
+	 * Binds a vertex array without attributes, for draws that generate their
+	 * vertices from {@code gl_VertexID}, such as full-window quads.
+	 */
+	public void bindEmptyVertexArray() {
+		GL30.glBindVertexArray(emptyVao);
+	}
+
+	/**
+	 * Appends a visible object to the batch. The object's scissor rectangle is
+	 * applied, flushing first if it differs from the current run, and the object
+	 * then emits its quads through {@link GUIObject#emitQuads(SpriteBatch, int)}.
+	 *
+	 * @param o            the object to draw
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	public void draw(GUIObject o, int windowHeight) {
+		if(!o.visible) {
+			return;
+		}
+
+		int startX = (o.minX>o.winMinX?o.minX:o.winMinX);
+		int startY = (o.minY>o.winMinY?o.minY:o.winMinY);
+		int endX  = o.limitX<o.winLimitX?o.limitX:o.winLimitX;
+		int endY = o.limitY<o.winLimitY?o.limitY:o.winLimitY;
+
+		if(clipping) {
+			startX=startX>clipX0?startX:clipX0;
+			startY=startY>clipY0?startY:clipY0;
+			endX=endX<clipX1?endX:clipX1;
+			endY=endY<clipY1?endY:clipY1;
+			if(endX<=startX || endY<=startY) {
+				FrameProfiler.count(FrameProfiler.CULLED, 1);
+				return;
+			}
+		}
+
+		int width = endX-startX;
+		int height = endY-startY;
+
+		width=width<0?0:width;
+		height=height<0?0:height;
+
+		if(startX!=scissorX || startY!=scissorY ||
+		   width!=scissorWidth || height!=scissorHeight) {
+			flush();
+			scissorX=startX;
+			scissorY=startY;
+			scissorWidth=width;
+			scissorHeight=height;
+		}
+
+		o.emitQuads(this,windowHeight);
+	}
+
+	/**
+	 * Restricts all following drawing to a rectangle, on top of each object's
+	 * own scissor rectangle. Objects entirely outside it are skipped. Used to
+	 * redraw only the damaged part of a window.
+	 *
+	 * @param x      left edge in framebuffer pixels
+	 * @param y      bottom edge in framebuffer pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 */
+	public void setClip(int x, int y, int width, int height) {
+		flush();
+		clipping=true;
+		clipX0=x;
+		clipY0=y;
+		clipX1=x+width;
+		clipY1=y+height;
+	}
+
+	/** Removes the rectangle set by {@link #setClip(int, int, int, int)}. */
+	public void clearClip() {
+		flush();
+		clipping=false;
+	}
+
+	/**
+	 * Applies a scissor rectangle for drawing done outside the batch, such as a
+	 * {@link SubWindowObject} background, intersected with the current clip.
+	 *
+	 * @param x      left edge in framebuffer pixels
+	 * @param y      bottom edge in framebuffer pixels
+	 * @param width  width in pixels
+	 * @param height height in pixels
+	 */
+	public void scissor(int x, int y, int width, int height) {
+		int x1 = x+width;
+		int y1 = y+height;
+		if(clipping) {
+			x=x>clipX0?x:clipX0;
+			y=y>clipY0?y:clipY0;
+			x1=x1<clipX1?x1:clipX1;
+			y1=y1<clipY1?y1:clipY1;
+		}
+		GL30.glScissor(x, y, x1>x?x1-x:0, y1>y?y1-y:0);
+	}
+
+	/**
+	 * Selects the texture for the following quads, flushing first if it
+	 * differs from the current run.
+	 *
+	 * @param texture OpenGL texture ID
+	 */
+	public void setTexture(int texture) {
+		setMode(false);
+		if(texture!=currentTexture) {
+			flush();
+			currentTexture=texture;
+		}
+	}
+
+	/**
+	 * Selects a multi-channel distance field texture, such as an
+	 * {@link MsdfFont} atlas page, for the following quads. Switching between
+	 * distance field and regular textures flushes the batch.
+	 *
+	 * @param texture OpenGL texture ID
+	 */
+	public void setDistanceFieldTexture(int texture) {
+		setMode(true);
+		if(texture!=currentTexture) {
+			flush();
+			currentTexture=texture;
+		}
+	}
+
+	private void setMode(boolean distanceFieldMode) {
+		if(this.distanceFieldMode==distanceFieldMode) {
+			return;
+		}
+		flush();
+		this.distanceFieldMode=distanceFieldMode;
+
+		if(recording!=null) {
+			return;
+		}
+		if(distanceFieldMode) {
+			distanceField.use();
+			if(!distanceFieldProjectionSet) {
+				distanceField.uploadMat4f(distanceFieldProjectionLocation, projection);
+				distanceFieldProjectionSet=true;
+			}
+		} else {
+			s.use();
+		}
+	}
+
+	/**
+	 * Appends an object's full quad, sampling its own texture or atlas region.
+	 *
+	 * @param o            the object
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	public void putQuad(GUIObject o, int windowHeight) {
+		float u0=0,v0=0,u1=1,v1=1;
+		TextureAtlas.Region region = o.getAtlasRegion();
+		if(region!=null) {
+			u0=region.u0;
+			v0=region.v0;
+			u1=region.u1;
+			v1=region.v1;
+		}
+		putQuad(o,0,0,o.sizeX,o.sizeY,u0,v0,u1,v1,1,1,1,1,windowHeight);
+	}
+
+	/**
+	 * Appends a quad covering part of an object, transformed with the object's
+	 * position, scale, flips and rotation. Coordinates are in the object's
+	 * unscaled pixel space with the origin at its bottom-left corner. The
+	 * current texture is sampled from {@code (u0,v0)} at the bottom-left to
+	 * {@code (u1,v1)} at the top-right and multiplied by the given color.
+	 *
+	 * @param o            the object the quad belongs to
+	 * @param x0           left edge in object pixels
+	 * @param y0           bottom edge in object pixels
+	 * @param x1           right edge in object pixels
+	 * @param y1           top edge in object pixels
+	 * @param u0           left texture coordinate
+	 * @param v0           bottom texture coordinate
+	 * @param u1           right texture coordinate
+	 * @param v1           top texture coordinate
+	 * @param r            red tint, 0 to 1
+	 * @param g            green tint, 0 to 1
+	 * @param b            blue tint, 0 to 1
+	 * @param a            alpha tint, 0 to 1
+	 * @param windowHeight framebuffer height in pixels
+	 */
+	public void putQuad(GUIObject o, float x0, float y0, float x1, float y1,
+			float u0, float v0, float u1, float v1,
+			float r, float g, float b, float a, int windowHeight) {
+
+		if(quadCount==MAX_QUADS) {
+			flush();
+		}
+
+		o.updateQuadTransform(windowHeight);
+
+		// object pixels to the [-1,1] corner space, where +y points down the screen
+		float left = o.sizeX==0?-1:x0/o.sizeX*2-1;
+		float right = o.sizeX==0?1:x1/o.sizeX*2-1;
+		float bottom = o.sizeY==0?1:1-y0/o.sizeY*2;
+		float top = o.sizeY==0?-1:1-y1/o.sizeY*2;
+
+		for(int i=0;i<VERTICES_PER_QUAD;i++) {
+			boolean isLeft = CORNER_X[i]<0;
+			boolean isBottom = CORNER_Y[i]>0;
+
+			float lx = isLeft?left:right;
+			float ly = isBottom?bottom:top;
+
+			vertices.put(o.quadCenterX+o.quadXX*lx+o.quadXY*ly);
+			vertices.put(o.quadCenterY+o.quadYX*lx+o.quadYY*ly);
+			vertices.put(isLeft?u0:u1);
+			vertices.put(isBottom?v0:v1);
+			vertices.put(r);
+			vertices.put(g);
+			vertices.put(b);
+			vertices.put(a);
+		}
+		quadCount++;
+	}
+
+	/**
+	 * Issues one draw call for all quads collected in the current run.
+	 */
+	public void flush() {
+		if(quadCount==0) {
+			return;
+		}
+
+		vertices.flip();
+		if(recording!=null) {
+			recording.addBatch(currentTexture, distanceFieldMode, scissorX, scissorY, scissorWidth, scissorHeight, vertices, quadCount);
+			vertices.clear();
+			quadCount=0;
+			return;
+		}
+		// orphan the previous storage so the driver never waits on the last draw
+		GL30.glBufferData(GL30.GL_ARRAY_BUFFER, (long) vertices.capacity()*Float.BYTES, GL30.GL_STREAM_DRAW);
+		GL30.glBufferSubData(GL30.GL_ARRAY_BUFFER, 0, vertices);
+
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, currentTexture);
+		GL30.glScissor(scissorX, scissorY, scissorWidth, scissorHeight);
+		GL30.glDrawElements(GL30.GL_TRIANGLES, quadCount*INDICES_PER_QUAD, GL30.GL_UNSIGNED_SHORT, 0);
+		FrameProfiler.count(FrameProfiler.DRAW_CALLS, 1);
+
+		vertices.clear();
+		quadCount=0;
+	}
+
+	/**
+	 * Flushes any remaining quads and restores the default OpenGL state.
+	 */
+	public void end() {
+		if(!drawing) {
+			return;
+		}
+		flush();
+		drawing=false;
+		if(recording!=null) {
+			recording=null;
+			return;
+		}
+
+		GL30.glDisable(GL30.GL_SCISSOR_TEST);
+		GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, 0);
+		GL30.glBindVertexArray(0);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+		Shader.useProgram(0);
+	}
+
+	/** @return true between {@link #begin(int, int)} or {@link #beginRecording(DrawList, int, int)} and {@link #end()} */
+	public boolean isDrawing() {
+		return this.drawing;
+	}
+
+	/** Releases the buffers owned by this batch and its shader programs. */
+	public void destroy() {
+		GL30.glDeleteBuffers(vbo);
+		GL30.glDeleteBuffers(ebo);
+		GL30.glDeleteVertexArrays(vao);
+		GL30.glDeleteVertexArrays(emptyVao);
+		ShaderRegistry.release(s);
+		ShaderRegistry.release(distanceField);
+	}
+}
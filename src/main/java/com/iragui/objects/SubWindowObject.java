@@ -9,7 +9,10 @@ import java.util.TreeMap;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL30;
 
+import com.iragui.FrameProfiler;
 import com.iragui.GUI;
+import com.iragui.Trace;
+import com.iragui.listeners.ListenerRegistry;
 import com.iragui.util.ObjectUtils;
 
 /**
@@ -290,7 +293,6 @@ public class SubWindowObject extends GUIObject{
 		this.topSize=(decorated?34:0);
 		this.borderSize=(decorated?1:0);
 		
-		initFullscreenQuad();
 		loadBackgroundShader();
 		
 		if(decorated) {
@@ -389,12 +391,17 @@ public class SubWindowObject extends GUIObject{
 		this.forceFocus();
 	}
 	
+	private static final Trace.Scope UPDATE_SCOPE = Trace.scope("SubWindowObject.update");
+	private static final Trace.Scope FOCUS_SCOPE = Trace.scope("SubWindowObject.requestFocus");
+	private static final Trace.Scope CONSTRAIN_SCOPE = Trace.scope("SubWindowObject.constrainObject");
+	
 	 /** Shader source code used for rendering the subwindow’s background and border. */
-	private String shader = "#type vertex\n"
+	private static final String shader = "#type vertex\n"
 			+ "#version 330 core\n"
-			+ "layout(location = 0) in vec2 position;\n"
+			+ "const vec2 corners[6] = vec2[6](vec2(-1.0, -1.0), vec2(1.0, -1.0), vec2(1.0, 1.0),\n"
+			+ "                                vec2(-1.0, -1.0), vec2(1.0, 1.0), vec2(-1.0, 1.0));\n"
 			+ "void main() {\n"
-			+ "gl_Position = vec4(position, 0.0, 1.0);\n"
+			+ "gl_Position = vec4(corners[gl_VertexID], 0.0, 1.0);\n"
 			+ "}\n"
 			+ "\n"
 			+ "#type fragment\n"
@@ -440,39 +447,86 @@ public class SubWindowObject extends GUIObject{
 			+ "    }\n"
 			+ "}";
 	
-	private int windowVao, windowVbo;
+	private Shader backgroundShader;
+	private int backgroundColorLocation,borderColorLocation,borderSizeLocation,decoratedLocation;
+	private int subwindowPosLocation,subwindowSizeLocation,screenSizeLocation,topSizeLocation;
 
-	private void initFullscreenQuad() {
-		float[] vertices = {
-			    -1f, -1f,  // bottom left
-			     1f, -1f,  // bottom right
-			     1f,  1f,  // top right
+	private void loadBackgroundShader() {
+	   backgroundShader = ShaderRegistry.acquire(shader);
 
-			    -1f, -1f,  // bottom left
-			     1f,  1f,  // top right
-			    -1f,  1f   // top left
-			};
+	   backgroundColorLocation = backgroundShader.getUniformLocation("backgroundColor");
+	   borderColorLocation = backgroundShader.getUniformLocation("borderColor");
+	   borderSizeLocation = backgroundShader.getUniformLocation("borderSize");
+	   decoratedLocation = backgroundShader.getUniformLocation("decorated");
+	   subwindowPosLocation = backgroundShader.getUniformLocation("subwindowPos");
+	   subwindowSizeLocation = backgroundShader.getUniformLocation("subwindowSize");
+	   screenSizeLocation = backgroundShader.getUniformLocation("screenSize");
+	   topSizeLocation = backgroundShader.getUniformLocation("topSize");
+	}
+	
+	/**
+	 * Copy of the state the background is drawn from, so it can be replayed
+	 * on the render thread while this subwindow keeps changing.
+	 */
+	private class Background implements DrawList.Command {
+		private Color bkgColor,topColor;
+		private int x,y,sizeX,sizeY;
+		private int scissorX,scissorY,scissorWidth,scissorHeight;
 
-	    windowVao = GL30.glGenVertexArrays();
-	    windowVbo = GL30.glGenBuffers();
+		private Background capture() {
+			SubWindowObject w = SubWindowObject.this;
+			this.bkgColor=w.bkgColor;
+			this.topColor=w.topColor;
+			this.x=w.x;
+			this.y=w.y;
+			this.sizeX=w.sizeX;
+			this.sizeY=w.sizeY;
 
-	    GL30.glBindVertexArray(windowVao);
-	    GL30.glBindBuffer(GL30.GL_ARRAY_BUFFER, windowVbo);
-	    GL30.glBufferData(GL30.GL_ARRAY_BUFFER, vertices, GL30.GL_STATIC_DRAW);
+			int startX = Math.max(w.minX, w.winMinX);
+			int startY = Math.max(w.minY, w.winMinY);
+			int endX   = Math.min(w.limitX, w.winLimitX);
+			int endY   = Math.min(w.limitY, w.winLimitY);
 
-	    GL30.glEnableVertexAttribArray(0);
-	    GL30.glVertexAttribPointer(0, 2, GL30.GL_FLOAT, false, 0, 0);
+			this.scissorX=startX;
+			this.scissorY=startY;
+			this.scissorWidth=Math.max(endX - startX, 0);
+			this.scissorHeight=Math.max(endY - startY, 0);
+			return this;
+		}
 
-	    GL30.glBindVertexArray(0);
-	}
-	
-	private int shaderProgram;
-	private void loadBackgroundShader() {
-	   Shader shaderObj =  new Shader(this.shader,true);
-	   shaderObj.compile();
-	   shaderProgram = shaderObj.getId();
+		@Override
+		public void execute(SpriteBatch batch, int windowWidth, int windowHeight) {
+			Shader s = backgroundShader;
+
+			// Uniforms
+			s.uploadVec4f(backgroundColorLocation,
+				bkgColor.getRed() / 255f, bkgColor.getGreen() / 255f, bkgColor.getBlue() / 255f, bkgColor.getAlpha() / 255f);
+			s.uploadVec4f(borderColorLocation,
+				topColor.getRed() / 255f, topColor.getGreen() / 255f, topColor.getBlue() / 255f, topColor.getAlpha() / 255f);
+			s.uploadInt(borderSizeLocation, borderSize);
+			s.uploadInt(decoratedLocation, decorated ? 1 : 0);
+			s.uploadVec2f(subwindowPosLocation, x, y);
+			s.uploadVec2f(subwindowSizeLocation, sizeX, sizeY);
+			s.uploadVec2f(screenSizeLocation, windowWidth, windowHeight);
+			s.uploadInt(topSizeLocation, topSize - 1);
+
+			// the shader builds the quad from gl_VertexID
+			batch.bindEmptyVertexArray();
+
+			GL30.glEnable(GL30.GL_SCISSOR_TEST);
+			batch.scissor(scissorX, scissorY, scissorWidth, scissorHeight);
+
+			GL30.glDrawArrays(GL30.GL_TRIANGLES, 0, 6);
+			FrameProfiler.count(FrameProfiler.DRAW_CALLS, 1);
+
+			GL30.glDisable(GL30.GL_SCISSOR_TEST);
+			GL30.glBindVertexArray(0);
+			Shader.useProgram(0);
+		}
 	}
-	
+
+	private final Background background = new Background();
+
 	/**
      * Renders the subwindow’s background and borders using its shader.
      *
@@ -481,41 +535,62 @@ public class SubWindowObject extends GUIObject{
      * @param windowHeight full framebuffer height
      */
 	public void render(long window, int windowWidth, int windowHeight) {
-	    GL30.glUseProgram(shaderProgram);
-
-	    // Uniforms
-	    GL30.glUniform4f(GL30.glGetUniformLocation(shaderProgram, "backgroundColor"),
-	        bkgColor.getRed() / 255f, bkgColor.getGreen() / 255f, bkgColor.getBlue() / 255f, bkgColor.getAlpha() / 255f);
-	    GL30.glUniform4f(GL30.glGetUniformLocation(shaderProgram, "borderColor"),
-	        topColor.getRed() / 255f, topColor.getGreen() / 255f, topColor.getBlue() / 255f, topColor.getAlpha() / 255f);
-	    GL30.glUniform1i(GL30.glGetUniformLocation(shaderProgram, "borderSize"), this.borderSize);
-	    GL30.glUniform1i(GL30.glGetUniformLocation(shaderProgram, "decorated"), decorated ? 1 : 0);
-	    GL30.glUniform2f(GL30.glGetUniformLocation(shaderProgram, "subwindowPos"), x, y);
-	    GL30.glUniform2f(GL30.glGetUniformLocation(shaderProgram, "subwindowSize"), sizeX, sizeY);
-	    GL30.glUniform2f(GL30.glGetUniformLocation(shaderProgram, "screenSize"), windowWidth, windowHeight);
-	    GL30.glUniform1i(GL30.glGetUniformLocation(shaderProgram, "topSize"), topSize - 1);
-
-	    
-	    GL30.glBindVertexArray(windowVao);
-
-	    GL30.glEnable(GL30.GL_SCISSOR_TEST);
-
-	    int startX = Math.max(this.minX, this.winMinX);
-	    int startY = Math.max(this.minY, this.winMinY);
-	    int endX   = Math.min(this.limitX, this.winLimitX);
-	    int endY   = Math.min(this.limitY, this.winLimitY);
-
-	    int width  = Math.max(endX - startX, 0);
-	    int height = Math.max(endY - startY, 0);
-
-	    GL30.glScissor(startX, startY, width, height);
+		background.capture().execute(gui.getWindow().getSpriteBatch(), windowWidth, windowHeight);
+	}
 
-	    GL30.glDrawArrays(GL30.GL_TRIANGLES, 0, 6);
+	/**
+	 * @return a copy of the background state for the render thread
+	 */
+	@Override
+	public DrawList.Command createDrawCommand(int windowWidth, int windowHeight) {
+		return new Background().capture();
+	}
 
+	/**
+	 * Fills the background and border like the background shader, as
+	 * rectangles that do not overlap so translucent colors blend once.
+	 */
+	@Override
+	protected void emitPixels(SoftwareRenderer renderer) {
+		int background = bkgColor.getAlpha()<<24 | (bkgColor.getRGB()&0xFFFFFF);
+		int x1 = x+sizeX;
+		int y1 = y+sizeY;
+		if(!decorated) {
+			renderer.fillRect(x, y, x1, y1, background);
+			return;
+		}
+		int border = topColor.getAlpha()<<24 | (topColor.getRGB()&0xFFFFFF);
+		int bottomEnd = Math.min(y+borderSize, y1);
+		int topStart = Math.max(y1-(topSize-1), bottomEnd);
+		int leftEnd = Math.min(x+borderSize, x1);
+		int rightStart = Math.max(x1-borderSize, leftEnd);
+		
+		renderer.fillRect(x, y, x1, bottomEnd, border);
+		renderer.fillRect(x, topStart, x1, y1, border);
+		renderer.fillRect(x, bottomEnd, leftEnd, topStart, border);
+		renderer.fillRect(rightStart, bottomEnd, x1, topStart, border);
+		renderer.fillRect(leftEnd, bottomEnd, rightStart, topStart, background);
+	}
 
-	    GL30.glDisable(GL30.GL_SCISSOR_TEST);
-	    GL30.glBindVertexArray(0);
-	    GL30.glUseProgram(0);
+	/**
+	 * Whether the background and border completely hide what is drawn below
+	 * them, so {@link VisibilityCuller} may skip it.
+	 *
+	 * @return true if every color the subwindow fills with is fully opaque
+	 */
+	boolean isOpaque() {
+		return bkgColor.getAlpha()==255 && (!decorated || topColor.getAlpha()==255);
+	}
+	
+	/**
+	 * Subwindows draw their background with their own shader, so they are
+	 * never collected into a {@link SpriteBatch}.
+	 *
+	 * @return false
+	 */
+	@Override
+	public boolean isBatchable() {
+		return false;
 	}
 
 	 /**
@@ -568,7 +643,7 @@ public class SubWindowObject extends GUIObject{
      */
 	public void add(GUIObject o, int constraint) {
 		
-		gui.println("[SUBWINDOWOBJECT] Added "+o.name+" to "+this.name);
+		gui.getLogger().debug("[SUBWINDOWOBJECT] Added {} to {}", o.name, this.name);
 		
 		o.constraint=constraint;
 		
@@ -777,6 +852,15 @@ public class SubWindowObject extends GUIObject{
      * @param constraint one of the constraint constants defined on {@code SubWindowObject}
      */
 	private void constrainObject(GUIObject o, int constraint) {
+		Trace.begin(CONSTRAIN_SCOPE);
+		try {
+			applyConstraint(o, constraint);
+		} finally {
+			Trace.end();
+		}
+	}
+	
+	private void applyConstraint(GUIObject o, int constraint) {
 		
 		int offsetX = 0;
 		int offsetY = 0;
@@ -932,7 +1016,7 @@ public class SubWindowObject extends GUIObject{
 	public void changeConstraint(GUIObject o, int constraint) {
 		o.constraint=constraint;
 		
-		gui.println("[SUBWINDOWOBJECT] changing constraint of "+o.name+" in "+this.name+" to "+constraint);
+		gui.getLogger().debug("[SUBWINDOWOBJECT] changing constraint of {} in {} to {}", o.name, this.name, constraint);
 		
 		boolean shouldBreak=false;
 		for(Integer l : objects.keySet()) {
@@ -1033,6 +1117,8 @@ public class SubWindowObject extends GUIObject{
 		objects.clear();
 		objectsByName.clear();
 		
+		ShaderRegistry.release(backgroundShader);
+		
 		// self destruction
 		super.destroyObject();
 	}
@@ -1055,6 +1141,15 @@ public class SubWindowObject extends GUIObject{
      */
 	@Override
 	public void update(boolean showFrame) {
+		Trace.begin(UPDATE_SCOPE);
+		try {
+			updateWindow(showFrame);
+		} finally {
+			Trace.end();
+		}
+	}
+	
+	private void updateWindow(boolean showFrame) {
 		
 		if(!showFrame) {
 			return;
@@ -1171,6 +1266,7 @@ public class SubWindowObject extends GUIObject{
 				
 				this.x=0;
 				this.y=0;
+				boundsChanged();
 				
 				this.remove("max:"+name);
 				this.maxButton.destroyObject();
@@ -1205,6 +1301,7 @@ public class SubWindowObject extends GUIObject{
 				
 				this.x=this.splitX;
 				this.y=this.splitY;
+				boundsChanged();
 				
 				this.remove("split:"+name);
 				this.splitButton.destroyObject();
@@ -1268,6 +1365,7 @@ public class SubWindowObject extends GUIObject{
 		
 		this.sizeX=x;
 		this.sizeY=y;
+		boundsChanged();
 	}
 	
 
@@ -1393,32 +1491,34 @@ public class SubWindowObject extends GUIObject{
 		}
 	}
 	
+	/**
+	 * Groups every subwindow of this GUI by layer. Reads the window registry
+	 * rather than scanning all of the GUI's objects.
+	 *
+	 * @return the windows by layer
+	 */
+	private TreeMap<Integer,ArrayList<SubWindowObject>> getWindowsByLayer() {
+		TreeMap<Integer,ArrayList<SubWindowObject>> otherWindows = new TreeMap<>();
+		for(SubWindowObject w : windows.values()) {
+			if(w.gui!=this.gui || w.getClass()!=SubWindowObject.class || gui.getObjectsByName().get(w.name)!=w) {
+				continue;
+			}
+			ArrayList<SubWindowObject> sWL = otherWindows.get(w.getLayer());
+			if(sWL==null) {
+				sWL = new ArrayList<>();
+				otherWindows.put(w.getLayer(),sWL);
+			}
+			sWL.add(w);
+		}
+		return otherWindows;
+	}
+	
 	 /**
      * Brings this window to focus, forcing it to the top of the rendering
      * hierarchy.
      */
 	public void forceFocus() {
-		TreeMap<Integer,ArrayList<GUIObject>> otherObjects = gui.getObjectsByLayer();
-		TreeMap<Integer,ArrayList<SubWindowObject>> otherWindows = new TreeMap<>();
-		
-		// Finds every existing window and places it in the otherWindows list
-		
-		for(Integer l : otherObjects.keySet()) {
-			ArrayList<GUIObject> list = otherObjects.get(l);
-			if(!list.isEmpty()) {
-				for(int i = 0; i < list.size();i++) {
-					if(list.get(i).getClass()==SubWindowObject.class) {
-						if(otherWindows.containsKey(l)) {
-							otherWindows.get(l).add((SubWindowObject)list.get(i));
-						} else {
-							ArrayList<SubWindowObject> sWL = new ArrayList<>();
-							sWL.add((SubWindowObject)list.get(i));
-							otherWindows.put(l,sWL);
-						}
-					}
-				}
-			}
-		}
+		TreeMap<Integer,ArrayList<SubWindowObject>> otherWindows = getWindowsByLayer();
 		layerThisWindow(otherWindows);
 	}
 	
@@ -1430,6 +1530,15 @@ public class SubWindowObject extends GUIObject{
      * @param mY mouse Y coordinate
      */
 	private void requestFocus(double mX, double mY) {
+		Trace.begin(FOCUS_SCOPE);
+		try {
+			focusIfUnobstructed(mX, mY);
+		} finally {
+			Trace.end();
+		}
+	}
+	
+	private void focusIfUnobstructed(double mX, double mY) {
 		
 		if(this.isFocused()) {
 			return;
@@ -1477,7 +1586,7 @@ public class SubWindowObject extends GUIObject{
 				}
 				
 				layerThisWindowInParent();
-				gui.println("Focused "+this.name+" inside window "+parentWindow.name);
+				gui.getLogger().debug("Focused {} inside window {}", this.name, parentWindow.name);
 				return;
 			}
 			
@@ -1490,27 +1599,7 @@ public class SubWindowObject extends GUIObject{
 			return;
 		}
 		
-		TreeMap<Integer,ArrayList<GUIObject>> otherObjects = gui.getObjectsByLayer();
-		TreeMap<Integer,ArrayList<SubWindowObject>> otherWindows = new TreeMap<>();
-		
-		// Finds every existing window and places it in the otherWindows list
-		
-		for(Integer l : otherObjects.keySet()) {
-			ArrayList<GUIObject> list = otherObjects.get(l);
-			if(!list.isEmpty()) {
-				for(int i = 0; i < list.size();i++) {
-					if(list.get(i).getClass()==SubWindowObject.class) {
-						if(otherWindows.containsKey(l)) {
-							otherWindows.get(l).add((SubWindowObject)list.get(i));
-						} else {
-							ArrayList<SubWindowObject> sWL = new ArrayList<>();
-							sWL.add((SubWindowObject)list.get(i));
-							otherWindows.put(l,sWL);
-						}
-					}
-				}
-			}
-		}
+		TreeMap<Integer,ArrayList<SubWindowObject>> otherWindows = getWindowsByLayer();
 		
 		if(areWeInBounds) {
 			for(Integer l : otherWindows.keySet()) {
@@ -1552,6 +1641,12 @@ public class SubWindowObject extends GUIObject{
 		}
 	}
 
+	/** Sub-windows handle mouse input only. */
+	@Override
+	public int getInputEvents() {
+		return ListenerRegistry.MOUSE;
+	}
+	
 	/**
      * Sends a key input event to this window.
      *
@@ -1784,6 +1879,7 @@ public class SubWindowObject extends GUIObject{
 			x=gui.getWindow().getSizeX()-this.sizeX;
 		}
 		this.x=x;
+		boundsChanged();
 		
 		if(this.parentWindow!=null) {
 			if(!avoidReConstrainX) {
@@ -1808,6 +1904,7 @@ public class SubWindowObject extends GUIObject{
 			y=gui.getWindow().getSizeY()-this.sizeY;
 		}
 		this.y=y;
+		boundsChanged();
 		
 		if(this.parentWindow!=null) {
 			if(!avoidReConstrainY) {
@@ -1963,7 +2060,9 @@ public class SubWindowObject extends GUIObject{
 
 	 /**
      * Sends a mouse button event to this window, handling dragging, resizing,
-     * and scroll-drag interactions.
+     * and scroll-drag interactions. Only presses at or near this window arrive
+     * here, while releases arrive for every press this window received, see
+     * {@link com.iragui.listeners.MouseListener}.
      */
 	@Override
 	public void sendMouseButton(long window, int button, int action, int mods) {
@@ -82,6 +82,39 @@ public class TextBoxObject extends GUIObject {
 		lines.put(line,tO);
 	}
 	
+	/**
+     * Appends a new line of text drawn from a signed distance field font.
+     *
+     * @param text     the string content
+     * @param font     the distance field font
+     * @param fontSize the font size in pixels per em
+     * @param color    the text color
+     * @param bkgColor the background color
+     * @param rgba     whether the text uses RGBA
+     */
+	public void appendLine(String text, 
+						   MsdfFont font, 
+						   float fontSize,
+						   Color color, 
+						   Color bkgColor, 
+						   boolean rgba) {
+		
+		int line = lines.size();
+		TextObject tO = new TextObject(name+":textObject:"+line,
+				this.getLayer(),
+				this.gui,
+				0, 
+				0, 
+				rgba, 
+				text, 
+				font, 
+				fontSize,
+				color, 
+				bkgColor);
+		tO.setVisible();
+		lines.put(line,tO);
+	}
+	
 	/** @return the vertical spacing between lines. */
 	public int getLineSpacing() {
 		return this.lineSpacing;
@@ -119,8 +152,9 @@ public class TextBoxObject extends GUIObject {
 	public void setX(int x) {
 		this.x=x+2;
 		for(Integer line : lines.keySet()) {
-			lines.get(line).x=x+2;
+			lines.get(line).setX(x+2);
 		}
+		boundsChanged();
 	}
 	
 	/** {@inheritDoc} */
@@ -129,9 +163,10 @@ public class TextBoxObject extends GUIObject {
 		this.y=y;
 		int nextLength=0;
 		for(Integer line : lines.keySet()) {
-			lines.get(line).y=((y+this.sizeY)-lines.get(line).sizeY)-nextLength;
+			lines.get(line).setY(((y+this.sizeY)-lines.get(line).sizeY)-nextLength);
 			nextLength+=(lines.get(line).sizeY-(lines.get(line).sizeY*0.5))+lineSpacing;
 		}
+		boundsChanged();
 	}
 	
 	@Override
@@ -200,6 +235,11 @@ public class TextBoxObject extends GUIObject {
 
 	@Override
 	public void update(boolean showFrame) {	}
+	/** Text boxes are not interactive. */
+	@Override
+	public int getInputEvents() {
+		return 0;
+	}
 	@Override
 	public void sendKey(int key, int action) {}
 	@Override
@@ -6,19 +6,18 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-
-import org.lwjgl.BufferUtils;
-import org.lwjgl.opengl.GL30;
+import java.awt.image.DataBufferInt;
 
 import com.iragui.GUI;
+import com.iragui.Trace;
 
 /**
- * A GUI object that renders text as a texture and displays it in OpenGL.
+ * A GUI object that renders text from cached glyphs and displays it in OpenGL.
  * <p>
- * This class creates a {@link BufferedImage}, rasterizes the text with a given
- * {@link Font}, {@link Color}, and background, and uploads it as an OpenGL
- * texture. The text can be updated dynamically, and it will automatically
- * regenerate the texture when changed.
+ * Each glyph is rasterized once per {@link Font} by the window's
+ * {@link GlyphCache} and stored in the shared texture atlas. The text is drawn
+ * as a background quad in the background {@link Color} followed by one quad per
+ * glyph tinted with the text color, so changing the text only rewrites vertices.
  * </p>
  *
  * <p>Features include:</p>
@@ -31,16 +30,30 @@ import com.iragui.GUI;
  */
 public class TextObject extends GUIObject {
 	
+	private static final Trace.Scope CREATE_SCOPE = Trace.scope("TextObject.createTexture");
+	private static final Trace.Scope LAYOUT_SCOPE = Trace.scope("TextObject.layout");
+	
 	private String text = "";
 	private Font font = new Font("Consolas",Font.PLAIN,18);
 	private Color color = Color.WHITE;
 	private Color bkgColor = Color.BLACK;
 	private boolean antiAliasing=true;
 	
-	private Graphics2D g2d;
-	private BufferedImage image;
 	private FontMetrics fontMetrics;
 	
+	/** Glyphs of the current text, resolved when this object is next drawn. */
+	private GlyphCache.Glyph[] glyphs = new GlyphCache.Glyph[0];
+	private boolean layoutDirty=true;
+	
+	/** Distance field font, or null when drawing with {@link #font}. */
+	private MsdfFont msdfFont;
+	private float fontSize;
+	private MsdfFont.Glyph[] msdfGlyphs = new MsdfFont.Glyph[0];
+	
+	/** Text drawn by AWT for the {@link SoftwareRenderer}, created when first needed. */
+	private BufferedImage textImage;
+	private boolean textImageDirty=true;
+	
 	 /**
      * Constructs a new {@code TextObject}.
      *
@@ -84,14 +97,57 @@ public class TextObject extends GUIObject {
 		createTexture();
 	}
 	
+	/**
+     * Constructs a new {@code TextObject} drawn from a signed distance field font.
+     * The text stays sharp at any font size or scale and changing either never
+     * rasterizes glyphs again.
+     *
+     * @param name          the name of this object
+     * @param layer         the rendering layer
+     * @param gui           the parent GUI
+     * @param x             the X position
+     * @param y             the Y position
+     * @param rgba          whether to render as RGBA (true) or RGB (false)
+     * @param text          the text string to display
+     * @param font          the distance field font
+     * @param fontSize      the font size in pixels per em
+     * @param color         the foreground color of the text
+     * @param bkgColor      the background color
+     */
+	public TextObject(String name, 
+			int layer, 
+			GUI gui, 
+			int x, 
+			int y,
+			boolean rgba,
+			String text, 
+			MsdfFont font,
+			float fontSize,
+			Color color, 
+			Color bkgColor) {
+		
+		super(name,layer,gui,x,y,0,(int) (fontSize*1.5f),false,rgba);
+		this.text=text;
+		this.msdfFont=font;
+		this.fontSize=fontSize;
+		this.color=color;
+		this.bkgColor=bkgColor;
+		this.originalText=text;
+		
+		initializeFontMetrics();
+		this.sizeX=getTextWidth();
+		createTexture();
+	}
+	
 	/**
      * Initializes the {@link FontMetrics} for measuring text dimensions.
      */
 	private void initializeFontMetrics() {
-		image = new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB);
-		g2d = image.createGraphics();
+		BufferedImage image = new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = image.createGraphics();
 		g2d.setFont(font);
 		fontMetrics = g2d.getFontMetrics();
+		g2d.dispose();
 	}
 	
 	/**
@@ -114,7 +170,7 @@ public class TextObject extends GUIObject {
      * @return the width of the current text in pixels
      */
 	public int getTextWidth() {
-		return fontMetrics.stringWidth(text);
+		return getTextWidth(text);
 	}
 	
 
@@ -125,6 +181,9 @@ public class TextObject extends GUIObject {
      * @return the pixel width of the given string
      */
 	public int getTextWidth(String text) {
+		if(msdfFont!=null) {
+			return (int) Math.ceil(msdfFont.getTextWidth(text,fontSize));
+		}
 		return fontMetrics.stringWidth(text);
 	}
 	
@@ -135,79 +194,186 @@ public class TextObject extends GUIObject {
      */
 	public void setFont(Font font) {
 		this.font=font;
+		this.msdfFont=null;
 		this.sizeY=(int) (font.getSize()*(1.5f));
+		initializeFontMetrics();
+		createTexture();
+	}
+	
+	/**
+     * Switches to a signed distance field font. Only the layout is updated;
+     * no glyphs are rasterized for the new size.
+     *
+     * @param font     the distance field font
+     * @param fontSize the font size in pixels per em
+     */
+	public void setFont(MsdfFont font, float fontSize) {
+		this.msdfFont=font;
+		this.fontSize=fontSize;
+		this.sizeY=(int) (fontSize*1.5f);
+		this.sizeX=getTextWidth();
 		createTexture();
 	}
 	
+	/** @return the distance field font, or null if drawing with an AWT font */
+	public MsdfFont getMsdfFont() {
+		return this.msdfFont;
+	}
+	
 	/**
-     * Creates or updates the texture with the current text, font, and colors.
-     * Handles both RGB and RGBA modes.
+     * Updates the object with the current text, font, and colors.
+     * Glyphs are looked up again the next time this object is drawn.
      */
 	public void createTexture() {
-		
-		if(sizeX<=0) {
-			sizeX=1;
+		Trace.begin(CREATE_SCOPE);
+		try {
+			if(sizeX<=0) {
+				sizeX=1;
+			}
+			if(sizeY<=0) {
+				sizeY=1;
+			}
+			
+			this.layoutDirty=true;
+			this.textImageDirty=true;
+			markDamaged();
+			boundsChanged();
+		} finally {
+			Trace.end();
+		}
+	}
+	
+	private void layout(GlyphCache cache) {
+		Trace.begin(LAYOUT_SCOPE);
+		try {
+			int count = text.codePointCount(0,text.length());
+			if(msdfFont!=null) {
+				if(msdfGlyphs.length!=count) {
+					msdfGlyphs = new MsdfFont.Glyph[count];
+				}
+			} else if(glyphs.length!=count) {
+				glyphs = new GlyphCache.Glyph[count];
+			}
+			
+			GlyphCache.Face face = msdfFont!=null?null:cache.getFace(font,antiAliasing,isNearestFilter());
+			int i=0;
+			for(int offset=0;offset<text.length();) {
+				int codePoint = text.codePointAt(offset);
+				if(msdfFont!=null) {
+					msdfGlyphs[i++] = msdfFont.getGlyph(codePoint);
+				} else {
+					glyphs[i++] = cache.getGlyph(face,codePoint);
+				}
+				offset+=Character.charCount(codePoint);
+			}
+			this.layoutDirty=false;
+		} finally {
+			Trace.end();
 		}
-		if(sizeY<=0) {
-			sizeY=1;
+	}
+	
+	/**
+	 * Emits the background quad and one quad per visible glyph. Glyph pixels
+	 * outside the object's width are clipped, as they were when the text was
+	 * drawn into a texture of that width.
+	 */
+	@Override
+	protected void emitQuads(SpriteBatch batch, int windowHeight) {
+		GlyphCache cache = gui.getWindow().getGlyphCache();
+		if(layoutDirty) {
+			layout(cache);
 		}
 		
-		image = new BufferedImage(this.sizeX, this.sizeY, BufferedImage.TYPE_INT_ARGB);
-		for(int ix=0;ix<image.getWidth();ix++) {
-        	 for(int iy=0;iy<image.getHeight();iy++) {
-             	image.setRGB(ix,iy,bkgColor.getRGB());
-             }
-        }
-		this.g2d = image.createGraphics();
-		if(antiAliasing) {
-			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON); // Enable text anti-aliasing
-	    }
-		g2d.setFont(font);
-	    g2d.setColor(color);
-	    g2d.drawString(text,0,font.getSize());
-		g2d.dispose();
+		boolean nearestFilter = isNearestFilter();
+		float whiteU = cache.getWhiteU(nearestFilter);
+		float whiteV = cache.getWhiteV(nearestFilter);
+		batch.setTexture(cache.getWhiteTextureID(nearestFilter));
+		batch.putQuad(this, 0, 0, sizeX, sizeY, whiteU, whiteV, whiteU, whiteV,
+				bkgColor.getRed()/255f, bkgColor.getGreen()/255f, bkgColor.getBlue()/255f,
+				this.rgba?bkgColor.getAlpha()/255f:1f, windowHeight);
 		
-		if(this.rgba) {
-			// update pixels if RGBA
-		    this.pixelBuffer = BufferUtils.createByteBuffer(image.getWidth()*image.getHeight()*this.BYTES_PER_PIXEL);
-	      	
-	      	int p;
-	      	for(int y=this.sizeY-1;y>-1;y--) {
-	      	for(int x=0;x<this.sizeX;x++) {
-					p = image.getRGB(x,y);
-					pixelBuffer.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBuffer.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBuffer.put(((byte) ((p & 0xFF)))); // B
-					pixelBuffer.put(((byte) ((p >> 24) & 0xFF))); // A
+		float r = color.getRed()/255f;
+		float g = color.getGreen()/255f;
+		float b = color.getBlue()/255f;
+		float a = color.getAlpha()/255f;
+		
+		if(msdfFont!=null) {
+			emitDistanceFieldGlyphs(batch, r, g, b, a, windowHeight);
+			return;
+		}
+		
+		int pen=0;
+		for(int i=0;i<glyphs.length && pen<sizeX;i++) {
+			GlyphCache.Glyph glyph = glyphs[i];
+			TextureAtlas.Region region = glyph.region;
+			if(region!=null) {
+				int width = region.getWidth();
+				int x0 = pen+glyph.left;
+				int x1 = x0+width;
+				float u0 = region.u0;
+				float u1 = region.u1;
+				if(x0<0) {
+					u0 = region.u0+(region.u1-region.u0)*(-x0)/width;
+					x0 = 0;
 				}
-	      	}
-	      	pixelBuffer.flip();
-	      	
-	      	 GL30.glBindTexture(GL30.GL_TEXTURE_2D, this.getTextureID());
-		     GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, getGlPixelInt(), this.sizeX, this.sizeY, 0, getGlPixelInt(), GL30.GL_UNSIGNED_BYTE, pixelBuffer);
-		     GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
-			
-		} else {
-			// update pixels if RGB
-			
-			 this.pixelBuffer = BufferUtils.createByteBuffer(image.getWidth()*image.getHeight()*this.BYTES_PER_PIXEL);
-		      	
-		      	int p;
-		      	for(int y=this.sizeY-1;y>-1;y--) {
-		      	for(int x=0;x<this.sizeX;x++) {
-						p = image.getRGB(x,y);
-						pixelBuffer.put(((byte) ((p >> 16) & 0xFF))); // R
-						pixelBuffer.put(((byte) ((p >> 8) & 0xFF))); // G
-						pixelBuffer.put(((byte) ((p & 0xFF)))); // B
-					}
-		      	}
-		      	pixelBuffer.flip();
-		      	
-		      	GL30.glBindTexture(GL30.GL_TEXTURE_2D, this.getTextureID());
-			    GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, getGlPixelInt(), this.sizeX, this.sizeY, 0, getGlPixelInt(), GL30.GL_UNSIGNED_BYTE, pixelBuffer);
-			    GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+				if(x1>sizeX) {
+					u1 = region.u1-(region.u1-region.u0)*(x1-sizeX)/width;
+					x1 = sizeX;
+				}
+				if(x0<x1) {
+					// baseline sits font size below the top, as with drawString(text,0,size)
+					int y0 = sizeY-region.getHeight();
+					batch.setTexture(region.getTextureID());
+					batch.putQuad(this, x0, y0, x1, sizeY, u0, region.v0, u1, region.v1, r, g, b, a, windowHeight);
+				}
+			}
+			pen+=glyph.advance;
 		}
-		fontMetrics = g2d.getFontMetrics();
+	}
+
+	private void emitDistanceFieldGlyphs(SpriteBatch batch, float r, float g, float b, float a, int windowHeight) {
+		float baseline = sizeY-fontSize;
+		float pen=0;
+		for(int i=0;i<msdfGlyphs.length;i++) {
+			MsdfFont.Glyph glyph = msdfGlyphs[i];
+			TextureAtlas.Region region = glyph.region;
+			if(region!=null) {
+				batch.setDistanceFieldTexture(region.getTextureID());
+				batch.putQuad(this,
+						pen+glyph.left*fontSize, baseline+glyph.bottom*fontSize,
+						pen+glyph.right*fontSize, baseline+glyph.top*fontSize,
+						region.u0, region.v0, region.u1, region.v1, r, g, b, a, windowHeight);
+			}
+			pen+=glyph.advance*fontSize;
+		}
+	}
+
+	/**
+	 * Emits the background and the text drawn by AWT into an image of this
+	 * object's size, redrawn only when the text, font or colors change.
+	 * Distance field fonts have no AWT font, so only their background is drawn.
+	 */
+	@Override
+	protected void emitPixels(SoftwareRenderer renderer) {
+		renderer.putColor(this, (this.rgba?bkgColor.getAlpha():255)<<24 | (bkgColor.getRGB()&0xFFFFFF));
+		if(msdfFont!=null) {
+			return;
+		}
+		
+		if(textImageDirty || textImage==null || textImage.getWidth()!=sizeX || textImage.getHeight()!=sizeY) {
+			textImage = new BufferedImage(sizeX,sizeY,BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2d = textImage.createGraphics();
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, antiAliasing?
+					RenderingHints.VALUE_TEXT_ANTIALIAS_ON:RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+			g2d.setFont(font);
+			g2d.setColor(color);
+			// baseline sits font size below the top, like the glyph quads
+			g2d.drawString(text, 0, font.getSize());
+			g2d.dispose();
+			textImageDirty=false;
+		}
+		int[] pixels = ((DataBufferInt) textImage.getRaster().getDataBuffer()).getData();
+		renderer.putImage(this, pixels, sizeX, sizeY);
 	}
 
 	@Override
@@ -216,6 +382,12 @@ public class TextObject extends GUIObject {
 		
 	}
 
+	/** Text is not interactive. */
+	@Override
+	public int getInputEvents() {
+		return 0;
+	}
+	
 	@Override
 	public void sendKey(int key, int action) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,276 @@
+package com.iragui.objects;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
+
+import com.iragui.FrameProfiler;
+import com.iragui.util.BufferPool;
+
+/**
+ * Packs many small RGBA images into a few large OpenGL textures.
+ * <p>
+ * Each page is a {@link #PAGE_SIZE} x {@link #PAGE_SIZE} texture that is split
+ * into horizontal shelves. Images are placed on the first shelf that is tall
+ * enough and has room left, and a new shelf or page is opened when none does.
+ * Released regions are kept per page and handed out again to images that fit,
+ * and a page with no live regions is reset. Slots that held an image before
+ * are cleared to transparent, padding included, when they are handed out again.
+ * </p>
+ *
+ * <p>Objects placed in the atlas are drawn with their region's UV
+ * sub-rectangle, so a {@link SpriteBatch} can draw all of them without
+ * switching textures. Pages are kept separate for nearest and linear filtering.</p>
+ */
+public class TextureAtlas {
+
+	/** Width and height of every page in pixels. */
+	public static final int PAGE_SIZE = 1024;
+
+	/** Images wider or taller than this keep their own texture. */
+	public static final int MAX_REGION_SIZE = 256;
+
+	/** Transparent border kept around each region to avoid filtering bleed. */
+	private static final int PADDING = 1;
+
+	/**
+	 * A rectangle of a page that holds one image.
+	 */
+	public static class Region {
+		private final Page page;
+		private final int x,y,width,height;
+		private final int slotWidth,slotHeight;
+
+		/** UV sub-rectangle of this region inside its page. */
+		public final float u0,v0,u1,v1;
+
+		private Region(Page page, int x, int y, int width, int height, int slotWidth, int slotHeight) {
+			this.page=page;
+			this.x=x;
+			this.y=y;
+			this.width=width;
+			this.height=height;
+			this.slotWidth=slotWidth;
+			this.slotHeight=slotHeight;
+
+			this.u0=(float) x/PAGE_SIZE;
+			this.v0=(float) y/PAGE_SIZE;
+			this.u1=(float) (x+width)/PAGE_SIZE;
+			this.v1=(float) (y+height)/PAGE_SIZE;
+		}
+
+		/** @return the OpenGL texture of the page holding this region */
+		public int getTextureID() {
+			return page.textureID;
+		}
+
+		/** @return x offset inside the page in pixels */
+		public int getX() {
+			return this.x;
+		}
+
+		/** @return y offset inside the page in pixels */
+		public int getY() {
+			return this.y;
+		}
+
+		/** @return region width in pixels */
+		public int getWidth() {
+			return this.width;
+		}
+
+		/** @return region height in pixels */
+		public int getHeight() {
+			return this.height;
+		}
+	}
+
+	private static class Shelf {
+		private final int y,height;
+		private int x=0;
+
+		private Shelf(int y, int height) {
+			this.y=y;
+			this.height=height;
+		}
+	}
+
+	private static class Page {
+		private final int textureID;
+		private final boolean nearestFilter;
+		private final ArrayList<Shelf> shelves = new ArrayList<>();
+		private final ArrayList<Region> free = new ArrayList<>();
+		private int nextShelfY=0;
+		private int live=0;
+		// set once the page was reset, after which new shelves may cover old pixels
+		private boolean reset=false;
+
+		private Page(int textureID, boolean nearestFilter) {
+			this.textureID=textureID;
+			this.nearestFilter=nearestFilter;
+		}
+	}
+
+	private final ArrayList<Page> pages = new ArrayList<>();
+
+	/**
+	 * Reserves a region for an image of the given size.
+	 *
+	 * @param width         image width in pixels
+	 * @param height        image height in pixels
+	 * @param nearestFilter whether the page should use nearest-neighbor filtering
+	 * @return the region, or {@code null} if the image is too large for the atlas
+	 */
+	public Region allocate(int width, int height, boolean nearestFilter) {
+		if(width<=0 || height<=0 || width>MAX_REGION_SIZE || height>MAX_REGION_SIZE) {
+			return null;
+		}
+
+		int slotWidth = width+PADDING*2;
+		int slotHeight = height+PADDING*2;
+
+		for(int i=0;i<pages.size();i++) {
+			Page page = pages.get(i);
+			if(page.nearestFilter!=nearestFilter) {
+				continue;
+			}
+			Region r = allocate(page,width,height,slotWidth,slotHeight);
+			if(r!=null) {
+				return r;
+			}
+		}
+
+		Page page = createPage(nearestFilter);
+		return allocate(page,width,height,slotWidth,slotHeight);
+	}
+
+	private Region allocate(Page page, int width, int height, int slotWidth, int slotHeight) {
+
+		// reuse the tightest released slot that fits
+		Region best = null;
+		for(int i=0;i<page.free.size();i++) {
+			Region f = page.free.get(i);
+			if(f.slotWidth>=slotWidth && f.slotHeight>=slotHeight) {
+				if(best==null || f.slotWidth*f.slotHeight<best.slotWidth*best.slotHeight) {
+					best=f;
+				}
+			}
+		}
+		if(best!=null) {
+			page.free.remove(best);
+			page.live++;
+			clearSlot(page,best.x-PADDING,best.y-PADDING,best.slotWidth,best.slotHeight);
+			return new Region(page,best.x,best.y,width,height,best.slotWidth,best.slotHeight);
+		}
+
+		// first shelf that is tall enough without wasting more than half of it
+		for(int i=0;i<page.shelves.size();i++) {
+			Shelf shelf = page.shelves.get(i);
+			if(shelf.height>=slotHeight && shelf.height<=slotHeight*2 && shelf.x+slotWidth<=PAGE_SIZE) {
+				return place(page,shelf,width,height,slotWidth);
+			}
+		}
+
+		if(page.nextShelfY+slotHeight<=PAGE_SIZE) {
+			Shelf shelf = new Shelf(page.nextShelfY,slotHeight);
+			page.nextShelfY+=slotHeight;
+			page.shelves.add(shelf);
+			return place(page,shelf,width,height,slotWidth);
+		}
+
+		return null;
+	}
+
+	private Region place(Page page, Shelf shelf, int width, int height, int slotWidth) {
+		Region r = new Region(page,shelf.x+PADDING,shelf.y+PADDING,width,height,slotWidth,shelf.height);
+		if(page.reset) {
+			clearSlot(page,shelf.x,shelf.y,slotWidth,shelf.height);
+		}
+		shelf.x+=slotWidth;
+		page.live++;
+		return r;
+	}
+
+	/** Makes a slot transparent, so a smaller image and its padding never show what was there before. */
+	private void clearSlot(Page page, int x, int y, int width, int height) {
+		ByteBuffer clear = BufferPool.acquire(width*height*GUIObject.RGBA);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, page.textureID);
+		GL30.glPixelStorei(GL30.GL_UNPACK_ALIGNMENT, 1);
+		GL30.glTexSubImage2D(GL30.GL_TEXTURE_2D, 0, x, y, width, height, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, clear);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+		BufferPool.release(clear);
+		FrameProfiler.countUpload((long) width*height*GUIObject.RGBA);
+	}
+
+	private Page createPage(boolean nearestFilter) {
+		int textureID = GL30.glGenTextures();
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, textureID);
+
+		int filter = nearestFilter?GL30.GL_NEAREST:GL30.GL_LINEAR;
+		GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MIN_FILTER, filter);
+		GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MAG_FILTER, filter);
+		GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_WRAP_S, GL30.GL_CLAMP_TO_EDGE);
+		GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_WRAP_T, GL30.GL_CLAMP_TO_EDGE);
+
+		// start fully transparent so region padding never shows garbage
+		ByteBuffer clear = MemoryUtil.memCalloc(PAGE_SIZE*PAGE_SIZE*GUIObject.RGBA);
+		GL30.glPixelStorei(GL30.GL_UNPACK_ALIGNMENT, 1);
+		GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, GL30.GL_RGBA, PAGE_SIZE, PAGE_SIZE, 0, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, clear);
+		MemoryUtil.memFree(clear);
+
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+
+		Page page = new Page(textureID,nearestFilter);
+		pages.add(page);
+		return page;
+	}
+
+	/**
+	 * Uploads RGBA pixels into a region. The buffer must hold
+	 * {@code width * height * 4} bytes from its current position.
+	 *
+	 * @param r      the target region
+	 * @param pixels tightly packed RGBA pixels
+	 */
+	public void upload(Region r, ByteBuffer pixels) {
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, r.page.textureID);
+		GL30.glPixelStorei(GL30.GL_UNPACK_ALIGNMENT, 1);
+		GL30.glTexSubImage2D(GL30.GL_TEXTURE_2D, 0, r.x, r.y, r.width, r.height, GL30.GL_RGBA, GL30.GL_UNSIGNED_BYTE, pixels);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+		FrameProfiler.countUpload((long) r.width*r.height*4);
+	}
+
+	/**
+	 * Returns a region to its page so the space can be reused.
+	 *
+	 * @param r the region to release
+	 */
+	public void release(Region r) {
+		Page page = r.page;
+		page.live--;
+		if(page.live<=0) {
+			page.live=0;
+			page.free.clear();
+			page.shelves.clear();
+			page.nextShelfY=0;
+			page.reset=true;
+		} else {
+			page.free.add(r);
+		}
+	}
+
+	/** @return the number of pages (OpenGL textures) currently allocated */
+	public int getPageCount() {
+		return pages.size();
+	}
+
+	/** Deletes every page texture. */
+	public void destroy() {
+		for(int i=0;i<pages.size();i++) {
+			GL30.glDeleteTextures(pages.get(i).textureID);
+		}
+		pages.clear();
+	}
+}
@@ -0,0 +1,281 @@
+package com.iragui.objects;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.system.MemoryUtil;
+
+import com.iragui.FrameProfiler;
+
+/**
+ * Streams texture data to the GPU through a ring of pixel buffer object memory.
+ * <p>
+ * Pixels are written into the ring, either copied by {@link #upload} or
+ * written in place between {@link #reserve(int)} and {@link #submit}, and the
+ * {@code glTexSubImage2D} that follows reads from the buffer instead of client
+ * memory, so the driver returns immediately and the GPU pulls the data
+ * asynchronously. Every submitted range is guarded by a fence and only
+ * written again once the GPU is done with it. The ring holds
+ * {@link #FRAMES_IN_FLIGHT} copies of the largest upload seen, so an object
+ * streaming a full frame every vsync never waits for its previous frame.
+ * </p>
+ *
+ * <p>When {@code ARB_buffer_storage} is available the ring is mapped once,
+ * persistently and coherently. Otherwise each reserved range is mapped
+ * unsynchronized, which is safe because the fences already keep it out of use.</p>
+ *
+ * <p>Buffers are shared between contexts of a share group, so one uploader
+ * serves the thread uploading textures, whichever of them is current there.
+ * It is not thread-safe.</p>
+ */
+public class TextureUploader {
+
+	/** Number of full-size uploads the ring holds before it has to wait. */
+	public static final int FRAMES_IN_FLIGHT = 3;
+
+	/** Initial ring size in bytes. */
+	public static final int DEFAULT_CAPACITY = 4<<20;
+
+	private static final int ALIGNMENT = 64;
+	private static final long WAIT_NANOS = 1_000_000L;
+
+	/**
+	 * A submitted range of the ring and the fence guarding it.
+	 */
+	private static class Pending {
+		private final long fence;
+		private final long start,end,lap;
+
+		private Pending(long fence, long start, long end, long lap) {
+			this.fence=fence;
+			this.start=start;
+			this.end=end;
+			this.lap=lap;
+		}
+	}
+
+	private final boolean persistent;
+	private int buffer=0;
+	private long capacity=0;
+	private ByteBuffer mapped;
+
+	private long head=0;
+	private long lap=0;
+	private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+	private long reservedOffset=-1;
+	private int reservedSize;
+	private ByteBuffer reservedMemory;
+
+	private long stalls=0;
+
+	/**
+	 * Creates the ring buffer. Must be called while an OpenGL context is current.
+	 */
+	public TextureUploader() {
+		this.persistent=GL.getCapabilities().GL_ARB_buffer_storage;
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Uploads pixels from client memory into part of a texture. The pixels are
+	 * copied into the ring and the texture reads them asynchronously.
+	 *
+	 * @param texture OpenGL texture ID
+	 * @param x       left edge of the updated area in texels
+	 * @param y       first row of the updated area
+	 * @param width   width in texels
+	 * @param height  height in rows
+	 * @param format  pixel format, {@code GL_RGB} or {@code GL_RGBA}
+	 * @param pixels  tightly packed rows, read from the buffer's position
+	 */
+	public void upload(int texture, int x, int y, int width, int height, int format, ByteBuffer pixels) {
+		upload(texture, x, y, width, height, format, pixels, width);
+	}
+
+	/**
+	 * Uploads a rectangle cut out of a larger image in client memory. Only the
+	 * rectangle's rows are copied into the ring, packed tightly.
+	 *
+	 * @param texture   OpenGL texture ID
+	 * @param x         left edge of the updated area in texels
+	 * @param y         first row of the updated area
+	 * @param width     width in texels
+	 * @param height    height in rows
+	 * @param format    pixel format, {@code GL_RGB} or {@code GL_RGBA}
+	 * @param pixels    the image, positioned at the rectangle's first pixel
+	 * @param rowLength width of the whole image in pixels
+	 */
+	public void upload(int texture, int x, int y, int width, int height, int format, ByteBuffer pixels, int rowLength) {
+		int bytesPerPixel = bytesPerPixel(format);
+		int rowBytes = width*bytesPerPixel;
+		ByteBuffer target = reserve(rowBytes*height);
+
+		long src = MemoryUtil.memAddress(pixels);
+		long dst = MemoryUtil.memAddress(target);
+		if(rowLength==width) {
+			MemoryUtil.memCopy(src, dst, (long) rowBytes*height);
+		} else {
+			long srcStride = (long) rowLength*bytesPerPixel;
+			for(int row=0;row<height;row++) {
+				MemoryUtil.memCopy(src+row*srcStride, dst+(long) row*rowBytes, rowBytes);
+			}
+		}
+		submit(texture, x, y, width, height, format);
+	}
+
+	/**
+	 * Reserves ring memory for the next upload, waiting only if the GPU still
+	 * reads every older range it would overlap. The caller writes the pixels
+	 * and then calls {@link #submit}.
+	 *
+	 * @param size number of bytes to write
+	 * @return memory to write exactly {@code size} bytes into
+	 */
+	public ByteBuffer reserve(int size) {
+		if(reservedOffset>=0) {
+			throw new IllegalStateException("previous reservation was not submitted");
+		}
+		long aligned = (size+ALIGNMENT-1)&-ALIGNMENT;
+		if(aligned*FRAMES_IN_FLIGHT>capacity) {
+			grow(aligned*FRAMES_IN_FLIGHT);
+		}
+
+		if(head+aligned>capacity) {
+			// ranges of the previous lap are all older than this lap's, wait for the rest of them
+			while(!pending.isEmpty() && pending.peek().lap<lap) {
+				retire(pending.poll());
+			}
+			head=0;
+			lap++;
+		}
+		while(!pending.isEmpty() && pending.peek().lap<lap && pending.peek().start<head+aligned) {
+			retire(pending.poll());
+		}
+
+		reservedOffset=head;
+		reservedSize=size;
+		head+=aligned;
+
+		if(persistent) {
+			reservedMemory = mapped.slice((int) reservedOffset, size);
+		} else {
+			GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, buffer);
+			reservedMemory = GL30.glMapBufferRange(GL30.GL_PIXEL_UNPACK_BUFFER, reservedOffset, size,
+					GL30.GL_MAP_WRITE_BIT|GL30.GL_MAP_INVALIDATE_RANGE_BIT|GL30.GL_MAP_UNSYNCHRONIZED_BIT);
+			GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
+		}
+		return reservedMemory;
+	}
+
+	/**
+	 * Starts the transfer of the memory from the last {@link #reserve(int)}
+	 * into part of a texture.
+	 *
+	 * @param texture OpenGL texture ID
+	 * @param x       left edge of the updated area in texels
+	 * @param y       first row of the updated area
+	 * @param width   width in texels
+	 * @param height  height in rows
+	 * @param format  pixel format, {@code GL_RGB} or {@code GL_RGBA}
+	 */
+	public void submit(int texture, int x, int y, int width, int height, int format) {
+		if(reservedOffset<0) {
+			throw new IllegalStateException("nothing reserved");
+		}
+		GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, buffer);
+		if(!persistent) {
+			GL30.glUnmapBuffer(GL30.GL_PIXEL_UNPACK_BUFFER);
+		}
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, texture);
+		GL30.glTexSubImage2D(GL30.GL_TEXTURE_2D, 0, x, y, width, height, format, GL30.GL_UNSIGNED_BYTE, reservedOffset);
+		GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+		GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
+		FrameProfiler.countUpload((long) width*height*bytesPerPixel(format));
+
+		long fence = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		pending.add(new Pending(fence, reservedOffset, reservedOffset+reservedSize, lap));
+		reservedOffset=-1;
+		reservedMemory=null;
+	}
+
+	/** @return the ring size in bytes */
+	public long getCapacity() {
+		return this.capacity;
+	}
+
+	/** @return how often a reservation had to wait for the GPU to release ring memory */
+	public long getStallCount() {
+		return this.stalls;
+	}
+
+	/** @return true if the ring is mapped persistently */
+	public boolean isPersistent() {
+		return this.persistent;
+	}
+
+	/** Waits for every pending upload and deletes the ring buffer. */
+	public void destroy() {
+		while(!pending.isEmpty()) {
+			retire(pending.poll());
+		}
+		release();
+	}
+
+	private void retire(Pending p) {
+		int status = GL32.glClientWaitSync(p.fence, 0, 0);
+		if(status==GL32.GL_TIMEOUT_EXPIRED) {
+			stalls++;
+			do {
+				status = GL32.glClientWaitSync(p.fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_NANOS);
+			} while(status==GL32.GL_TIMEOUT_EXPIRED);
+		}
+		GL32.glDeleteSync(p.fence);
+	}
+
+	private void grow(long minimum) {
+		while(!pending.isEmpty()) {
+			retire(pending.poll());
+		}
+		release();
+		allocate(Math.max(minimum,capacity*2));
+	}
+
+	private void allocate(long size) {
+		capacity=size;
+		head=0;
+		lap=0;
+		buffer = GL30.glGenBuffers();
+		GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, buffer);
+		if(persistent) {
+			int flags = GL30.GL_MAP_WRITE_BIT|ARBBufferStorage.GL_MAP_PERSISTENT_BIT|ARBBufferStorage.GL_MAP_COHERENT_BIT;
+			ARBBufferStorage.glBufferStorage(GL30.GL_PIXEL_UNPACK_BUFFER, size, flags);
+			mapped = GL30.glMapBufferRange(GL30.GL_PIXEL_UNPACK_BUFFER, 0, size, flags);
+		} else {
+			GL30.glBufferData(GL30.GL_PIXEL_UNPACK_BUFFER, size, GL30.GL_STREAM_DRAW);
+		}
+		GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
+	}
+
+	private void release() {
+		if(buffer==0) {
+			return;
+		}
+		if(persistent) {
+			GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, buffer);
+			GL30.glUnmapBuffer(GL30.GL_PIXEL_UNPACK_BUFFER);
+			GL30.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
+			mapped=null;
+		}
+		GL30.glDeleteBuffers(buffer);
+		buffer=0;
+	}
+
+	private static int bytesPerPixel(int format) {
+		return format==GL30.GL_RGBA?4:3;
+	}
+}
@@ -0,0 +1,116 @@
+package com.iragui.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+
+import com.iragui.FrameProfiler;
+
+/**
+ * Finds the objects of a frame that cannot be seen, so the renderer never
+ * receives them.
+ * <p>
+ * An object is culled when the framebuffer rectangle it covers, its quad cut
+ * to its scissor rectangle and to the window, is empty. That covers objects
+ * outside the window and the children of scrolled or nested
+ * {@link SubWindowObject}s clipped away entirely. An object is also culled
+ * when that rectangle lies within the background of an opaque subwindow on a
+ * higher layer, which is drawn over it anyway. Culled objects count as
+ * {@link FrameProfiler#CULLED}.
+ * </p>
+ *
+ * <p>Layers are visited from the top down, so each object is only compared
+ * with the few subwindows above it.</p>
+ */
+public class VisibilityCuller {
+
+	private final ArrayList<SubWindowObject> layerOccluders = new ArrayList<>();
+	// framebuffer rectangles of the subwindows above the current layer, four ints each
+	private int[] occluderBounds = new int[16];
+	private int occluderCount=0;
+
+	/**
+	 * Decides for every object whether it is visible this frame. Read the
+	 * result with {@link #isCulled(GUIObject)}.
+	 *
+	 * @param objectsByLayer the objects to draw, by layer
+	 * @param windowWidth    framebuffer width in pixels
+	 * @param windowHeight   framebuffer height in pixels
+	 */
+	public void cull(NavigableMap<Integer,? extends List<GUIObject>> objectsByLayer, int windowWidth, int windowHeight) {
+		occluderCount=0;
+		int culled=0;
+
+		for(List<GUIObject> layer : objectsByLayer.descendingMap().values()) {
+			layerOccluders.clear();
+			for(int i=0;i<layer.size();i++) {
+				GUIObject o = layer.get(i);
+				o.culled=false;
+				if(!o.visible) {
+					continue;
+				}
+				o.updateScreenBounds(windowHeight);
+				int x0 = Math.max(o.screenX0,0);
+				int y0 = Math.max(o.screenY0,0);
+				int x1 = Math.min(o.screenX1,windowWidth);
+				int y1 = Math.min(o.screenY1,windowHeight);
+				if(x1<=x0 || y1<=y0 || isOccluded(x0,y0,x1,y1)) {
+					o.culled=true;
+					culled++;
+					continue;
+				}
+				if(o instanceof SubWindowObject w && w.isOpaque()) {
+					layerOccluders.add(w);
+				}
+			}
+			// objects on the same layer may be drawn in either order, so they only hide lower layers
+			for(int i=0;i<layerOccluders.size();i++) {
+				addOccluder(layerOccluders.get(i), windowWidth, windowHeight);
+			}
+		}
+
+		if(culled>0) {
+			FrameProfiler.count(FrameProfiler.CULLED, culled);
+		}
+	}
+
+	/**
+	 * @param o an object passed to the last {@link #cull}
+	 * @return true if the object cannot be seen this frame
+	 */
+	public boolean isCulled(GUIObject o) {
+		return o.culled;
+	}
+
+	private boolean isOccluded(int x0, int y0, int x1, int y1) {
+		for(int i=0;i<occluderCount;i++) {
+			int b = i*4;
+			if(x0>=occluderBounds[b] && y0>=occluderBounds[b+1] &&
+			   x1<=occluderBounds[b+2] && y1<=occluderBounds[b+3]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Records the area a subwindow fills: its rectangle, unscaled like its shader draws it, cut to its scissor. */
+	private void addOccluder(SubWindowObject w, int windowWidth, int windowHeight) {
+		int x0 = Math.max(Math.max(w.x, Math.max(w.minX, w.winMinX)), 0);
+		int y0 = Math.max(Math.max(w.y, Math.max(w.minY, w.winMinY)), 0);
+		int x1 = Math.min(Math.min(w.x+w.sizeX, Math.min(w.limitX, w.winLimitX)), windowWidth);
+		int y1 = Math.min(Math.min(w.y+w.sizeY, Math.min(w.limitY, w.winLimitY)), windowHeight);
+		if(x1<=x0 || y1<=y0) {
+			return;
+		}
+		int b = occluderCount*4;
+		if(b+4>occluderBounds.length) {
+			occluderBounds = Arrays.copyOf(occluderBounds, occluderBounds.length*2);
+		}
+		occluderBounds[b]=x0;
+		occluderBounds[b+1]=y0;
+		occluderBounds[b+2]=x1;
+		occluderBounds[b+3]=y1;
+		occluderCount++;
+	}
+}
@@ -3,9 +3,10 @@ package com.iragui.objects;
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
 
-import org.lwjgl.BufferUtils;
-
 import com.iragui.GUI;
+import com.iragui.util.BufferPool;
+import com.iragui.util.ImageCache;
+import com.iragui.util.PixelConverter;
 
 /**
  * A GUIObject that wraps a {@link BufferedImage} for use with IraGUI.
@@ -38,41 +39,47 @@ public class WrappedBufferedImage extends GUIObject {
 			boolean nearestFilter,
 			boolean rgba,
 			BufferedImage image) {
-		super(name, layer, gui, x, y, image.getWidth(), image.getHeight(), nearestFilter,rgba, false, false, false);
-		
-		if(!rgba) {
-			
-			int p;
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=0;k<image.getWidth();k++) {
-				
-					p=image.getRGB(k,j);
-				
-					pixelBuffer.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBuffer.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBuffer.put(((byte) ((p & 0xFF)))); // B
-				}
-			}
-			pixelBuffer.flip();
-			
-		} else {
+		super(name, layer, gui, x, y, image.getWidth(), image.getHeight(), nearestFilter, rgba, null, true, true);
 		
-			int p;
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=0;k<image.getWidth();k++) {
-				
-					p=image.getRGB(k,j);
-				
-					pixelBuffer.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBuffer.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBuffer.put(((byte) ((p & 0xFF)))); // B
-					pixelBuffer.put(((byte) ((p >> 24) & 0xFF))); // A
-				}
-			}
-			pixelBuffer.flip();
-		
-		}
+		PixelConverter.convert(image, pixelBuffer, rgba);
 	}
+	/**
+     * Creates a new wrapped image from a classpath resource. The image is
+     * decoded, converted and uploaded once per window and shared through the
+     * window's {@link ImageCache}, so wrapping the same resource again costs
+     * no decode and no upload.
+     *
+     * @param name          the name of the object
+     * @param layer         the rendering layer
+     * @param gui           the parent {@link GUI}
+     * @param x             the x position of this object
+     * @param y             the y position of this object
+     * @param nearestFilter whether to use nearest-neighbor filtering
+     * @param rgba          true if the image should be stored with an alpha channel (RGBA)
+     * @param path          the resource path of the image
+     */
+	public WrappedBufferedImage(String name, 
+			int layer, 
+			GUI gui, 
+			int x, 
+			int y,
+			boolean nearestFilter,
+			boolean rgba,
+			String path) {
+		this(name, layer, gui, x, y, nearestFilter, rgba, gui.getWindow().getImageCache().acquire(path, rgba, nearestFilter));
+	}
+	
+	private WrappedBufferedImage(String name, 
+			int layer, 
+			GUI gui, 
+			int x, 
+			int y,
+			boolean nearestFilter,
+			boolean rgba,
+			ImageCache.Entry entry) {
+		super(name, layer, gui, x, y, entry.getWidth(), entry.getHeight(), nearestFilter, rgba, entry, false, false);
+	}
+	
 	 /**
      * Alternate pixel buffers for each direction (used if {@link #directional} is true).
      */
@@ -135,118 +142,39 @@ public class WrappedBufferedImage extends GUIObject {
 			boolean rgba,
 			BufferedImage image,
 			boolean directional) {
-		super(name, layer, gui, x, y, image.getWidth(), image.getHeight(), nearestFilter,rgba, false, false, false);
+		super(name, layer, gui, x, y, image.getWidth(), image.getHeight(), nearestFilter, rgba, null, false, true);
 		
 		this.directional=true;
 		
-		pixelBufferDirection0 = BufferUtils.createByteBuffer(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
-		pixelBufferDirection1 = BufferUtils.createByteBuffer(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
-		pixelBufferDirection2 = BufferUtils.createByteBuffer(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
-		pixelBufferDirection3 = BufferUtils.createByteBuffer(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
-		
-		if(!rgba) {
-			
-			int p;
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=0;k<image.getWidth();k++) {
-				
-					p=image.getRGB(k,j);
-				
-					pixelBuffer.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBuffer.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBuffer.put(((byte) ((p & 0xFF)))); // B
-				}
-			}
-			pixelBuffer.flip();
-			pixelBufferDirection0 = pixelBuffer.duplicate();
-			
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=0;k<image.getWidth();k++) {
-					p=image.getRGB(j,k);
-				
-					pixelBufferDirection3.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBufferDirection3.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBufferDirection3.put(((byte) ((p & 0xFF)))); // B
-				}
-			}
-			pixelBufferDirection3.flip();
-			
-			for(int j=0;j<image.getHeight();j++) {
-				for(int k=0;k<image.getWidth();k++) {
-					p=image.getRGB(j,k);
-				
-					pixelBufferDirection2.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBufferDirection2.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBufferDirection2.put(((byte) ((p & 0xFF)))); // B
-				}
-			}
-			pixelBufferDirection2.flip();
-			
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=image.getWidth()-1;k>=0;k--) {
-				
-					p=image.getRGB(k,j);
-				
-					pixelBufferDirection1.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBufferDirection1.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBufferDirection1.put(((byte) ((p & 0xFF)))); // B
-				}
-			}
-			pixelBufferDirection1.flip();
-			
-		} else {
+		// the directional buffers outlive setAll, so this object frees them itself
+		pixelBufferDirection0 = BufferPool.acquire(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
+		pixelBufferDirection1 = BufferPool.acquire(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
+		pixelBufferDirection2 = BufferPool.acquire(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
+		pixelBufferDirection3 = BufferPool.acquire(image.getWidth() * image.getHeight() * BYTES_PER_PIXEL);
 		
-			int p;
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=0;k<image.getWidth();k++) {
-				
-					p=image.getRGB(k,j);
-				
-					pixelBuffer.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBuffer.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBuffer.put(((byte) ((p & 0xFF)))); // B
-					pixelBuffer.put(((byte) ((p >> 24) & 0xFF))); // A
-				}
-			}
-			pixelBuffer.flip();
-			pixelBufferDirection0 = pixelBuffer.duplicate();
-			
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=0;k<image.getWidth();k++) {
-					p=image.getRGB(j,k);
-				
-					pixelBufferDirection3.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBufferDirection3.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBufferDirection3.put(((byte) ((p & 0xFF)))); // B
-					pixelBufferDirection3.put(((byte) ((p >> 24) & 0xFF))); // A
-				}
-			}
-			pixelBufferDirection3.flip();
-			
-			for(int j=0;j<image.getHeight();j++) {
-				for(int k=0;k<image.getWidth();k++) {
-					p=image.getRGB(j,k);
-				
-					pixelBufferDirection2.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBufferDirection2.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBufferDirection2.put(((byte) ((p & 0xFF)))); // B
-					pixelBufferDirection2.put(((byte) ((p >> 24) & 0xFF))); // A
-				}
-			}
-			pixelBufferDirection2.flip();
-			
-			for(int j=image.getHeight()-1;j>=0;j--) {
-				for(int k=image.getWidth()-1;k>=0;k--) {
-				
-					p=image.getRGB(k,j);
-				
-					pixelBufferDirection1.put(((byte) ((p >> 16) & 0xFF))); // R
-					pixelBufferDirection1.put(((byte) ((p >> 8) & 0xFF))); // G
-					pixelBufferDirection1.put(((byte) ((p & 0xFF)))); // B
-					pixelBufferDirection1.put(((byte) ((p >> 24) & 0xFF))); // A
-				}
-			}
-			pixelBufferDirection1.flip();
+		PixelConverter.convert(image, pixelBufferDirection0, rgba, 0);
+		PixelConverter.convert(image, pixelBufferDirection1, rgba, 1);
+		PixelConverter.convert(image, pixelBufferDirection2, rgba, 2);
+		PixelConverter.convert(image, pixelBufferDirection3, rgba, 3);
+		this.pixelBuffer=pixelBufferDirection0.duplicate();
+	}
+	
+	/**
+	 * Destroys this image and returns its directional buffers to the {@link BufferPool}.
+	 */
+	@Override
+	public void destroyObject() {
+		boolean wasDestroyed = this.isDestroyed();
+		super.destroyObject();
+		if(!wasDestroyed && directional) {
+			BufferPool.release(pixelBufferDirection0);
+			BufferPool.release(pixelBufferDirection1);
+			BufferPool.release(pixelBufferDirection2);
+			BufferPool.release(pixelBufferDirection3);
+			pixelBufferDirection0=null;
+			pixelBufferDirection1=null;
+			pixelBufferDirection2=null;
+			pixelBufferDirection3=null;
 		}
 	}
 	
@@ -264,6 +192,12 @@ public class WrappedBufferedImage extends GUIObject {
 		
 	}
 
+	/** Images are not interactive. */
+	@Override
+	public int getInputEvents() {
+		return 0;
+	}
+	
 	@Override
 	public void sendKey(int key, int action) {
 		// TODO Auto-generated method stub
@@ -44,6 +44,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.lwjgl.glfw.GLFW;
 
 import com.iragui.GUI;
+import com.iragui.listeners.ListenerRegistry;
 import com.iragui.util.ObjectUtils;
 
 /**
@@ -190,7 +191,6 @@ public class WritableTextBoxObject extends TextBoxObject{
 		this.antiAliasing=antiAliasing;
 		
 		gui.getWindow().getKeyListener().add(this);
-		gui.getWindow().getMouseListener().add(this);
 		
 		cursor = new TextObject(name+":cursor",layer, gui, 0, 0, nearestFilter, rgba,"|", 
 				font, 
@@ -229,6 +229,12 @@ public class WritableTextBoxObject extends TextBoxObject{
 		}
 	}
 	
+	/** Typing goes through key events; focus comes from the parent window. */
+	@Override
+	public int getInputEvents() {
+		return ListenerRegistry.KEY;
+	}
+	
 	/**
      * Handles a keyboard key event.
      *
@@ -0,0 +1,218 @@
+package com.iragui.util;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring of log lines written to {@link System#out} by a background thread.
+ * <p>
+ * A logging thread claims a slot with {@link #claim()}, formats its line into
+ * the slot's reused {@link StringBuilder} and hands it over with
+ * {@link #publish(long, int)}. Claiming is a single compare-and-set and never
+ * waits: when the writer falls behind and all {@link #getCapacity()} slots are
+ * taken the line is dropped, and the writer reports how many were lost once it
+ * catches up. The writer prints everything it finds in one write and sleeps
+ * while the ring is empty.
+ * </p>
+ *
+ * <p>Any number of threads may log at once. Lines from one thread are written
+ * in order. Lines still queued when the JVM exits are written by a shutdown
+ * hook.</p>
+ */
+public class AsyncAppender {
+
+	/** Number of slots of the shared appender, overridable with {@code -Diragui.log.capacity}. */
+	public static final int DEFAULT_CAPACITY = Integer.getInteger("iragui.log.capacity", 1024);
+
+	/** Slot buffers that grew past this many characters are replaced after use. */
+	private static final int MAX_RETAINED_CHARS = 4096;
+
+	private static AsyncAppender shared;
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final StringBuilder[] lines;
+	private final int[] levels;
+	private final AtomicLong tail = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+
+	// only touched by the writer thread
+	private long head=0;
+	private StringBuilder batch = new StringBuilder(4096);
+
+	private final Thread writer;
+	private volatile boolean sleeping=false;
+	private volatile boolean closed=false;
+
+	private AsyncAppender(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity)-1)<<1;
+		this.mask=size-1;
+		this.sequences=new AtomicLongArray(size);
+		this.lines=new StringBuilder[size];
+		this.levels=new int[size];
+		for(int i=0;i<size;i++) {
+			sequences.set(i, i);
+			lines[i]=new StringBuilder(128);
+		}
+		this.writer=new Thread(this::run, "IraGUI log");
+		this.writer.setDaemon(true);
+	}
+
+	/**
+	 * Creates an appender and starts its writer thread.
+	 *
+	 * @param capacity number of lines that can wait for the writer, rounded up to a power of two
+	 * @return the running appender
+	 */
+	public static AsyncAppender start(int capacity) {
+		AsyncAppender appender = new AsyncAppender(capacity);
+		appender.writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(appender::close, "IraGUI log shutdown"));
+		return appender;
+	}
+
+	/** @return the appender shared by every {@link Logger}, started on first use */
+	public static synchronized AsyncAppender getShared() {
+		if(shared==null) {
+			shared=start(DEFAULT_CAPACITY);
+		}
+		return shared;
+	}
+
+	/**
+	 * Claims the next free slot.
+	 *
+	 * @return the slot's sequence number, or -1 if the ring is full and the line is dropped
+	 */
+	public long claim() {
+		long position = tail.get();
+		while(true) {
+			long difference = sequences.getAcquire((int) position&mask)-position;
+			if(difference==0) {
+				if(tail.compareAndSet(position, position+1)) {
+					return position;
+				}
+				position=tail.get();
+			} else if(difference<0) {
+				dropped.increment();
+				return -1;
+			} else {
+				position=tail.get();
+			}
+		}
+	}
+
+	/**
+	 * @param sequence a sequence returned by {@link #claim()}
+	 * @return the empty buffer to format the line into
+	 */
+	public StringBuilder getLine(long sequence) {
+		return lines[(int) sequence&mask];
+	}
+
+	/**
+	 * Hands a formatted line to the writer. Every claimed slot must be
+	 * published, or the writer stops at it.
+	 *
+	 * @param sequence a sequence returned by {@link #claim()}
+	 * @param level    the {@link Logger} level of the line
+	 */
+	public void publish(long sequence, int level) {
+		int slot = (int) sequence&mask;
+		levels[slot]=level;
+		sequences.set(slot, sequence+1);
+		if(sleeping) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/** @return the number of lines the ring holds */
+	public int getCapacity() {
+		return mask+1;
+	}
+
+	/** @return the number of lines dropped because the ring was full */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Stops the writer after it has written the lines already published,
+	 * waiting at most a second.
+	 */
+	public void close() {
+		closed=true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		long reportedDrops=0;
+		while(true) {
+			long drops = dropped.sum();
+			if(drops!=reportedDrops) {
+				batch.append("[Warning] ").append(drops-reportedDrops).append(" log lines dropped\n");
+				reportedDrops=drops;
+			}
+			if(drain()) {
+				continue;
+			}
+			if(closed) {
+				return;
+			}
+			sleeping=true;
+			if(!isReady()) {
+				LockSupport.parkNanos(100_000_000L);
+			}
+			sleeping=false;
+		}
+	}
+
+	private boolean isReady() {
+		return sequences.get((int) head&mask)==head+1;
+	}
+
+	/** Writes every published line in one print. @return whether anything was written */
+	private boolean drain() {
+		while(isReady()) {
+			int slot = (int) head&mask;
+			StringBuilder line = lines[slot];
+			appendLevel(levels[slot]);
+			batch.append(line).append('\n');
+			if(line.capacity()>MAX_RETAINED_CHARS) {
+				lines[slot]=new StringBuilder(128);
+			} else {
+				line.setLength(0);
+			}
+			sequences.set(slot, head+mask+1);
+			head++;
+		}
+		if(batch.length()==0) {
+			return false;
+		}
+		PrintStream out = System.out;
+		out.print(batch);
+		out.flush();
+		if(batch.capacity()>MAX_RETAINED_CHARS*16) {
+			batch=new StringBuilder(4096);
+		} else {
+			batch.setLength(0);
+		}
+		return true;
+	}
+
+	private void appendLevel(int level) {
+		if(level==Logger.WARN) {
+			batch.append("[Warning] ");
+		} else if(level==Logger.ERROR) {
+			batch.append("[Error] ");
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.iragui.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Size-classed pool of native pixel buffers.
+ * <p>
+ * Buffers are allocated with {@link MemoryUtil#memAlloc(int)}, so they live
+ * outside the Java heap and are freed deterministically instead of waiting for
+ * the garbage collector. Requests are rounded up to a power of two, and
+ * released buffers are kept per size class so re-texturing reuses memory. At
+ * most {@link #MAX_RETAINED_BYTES} are kept idle; anything beyond that, and
+ * any buffer larger than {@link #MAX_POOLED_SIZE}, is freed immediately.
+ * </p>
+ *
+ * <p>A buffer obtained from {@link #acquire(int)} must be returned exactly once
+ * through {@link #release(ByteBuffer)} and must not be used afterwards.</p>
+ */
+public class BufferPool {
+
+	/** Smallest size class in bytes. */
+	public static final int MIN_SIZE = 64;
+
+	/** Largest size class that is pooled, in bytes. */
+	public static final int MAX_POOLED_SIZE = 16*1024*1024;
+
+	/** Maximum number of idle bytes kept, overridable with {@code -Diragui.bufferPool.maxRetained}. */
+	public static final long MAX_RETAINED_BYTES = Long.getLong("iragui.bufferPool.maxRetained", 64L*1024*1024);
+
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+	private static final int MAX_SHIFT = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE);
+
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static final ArrayDeque<ByteBuffer>[] classes = new ArrayDeque[MAX_SHIFT-MIN_SHIFT+1];
+
+	private static long retained=0;
+
+	static {
+		for(int i=0;i<classes.length;i++) {
+			classes[i] = new ArrayDeque<>();
+		}
+	}
+
+	private BufferPool() {}
+
+	/**
+	 * Returns a zeroed native buffer with room for at least {@code size} bytes.
+	 * Its position is 0 and its limit is {@code size}; the capacity is the size
+	 * class and must not be changed.
+	 *
+	 * @param size requested size in bytes
+	 * @return the buffer
+	 */
+	public static ByteBuffer acquire(int size) {
+		int capacity = classSize(size);
+
+		ByteBuffer buffer = null;
+		if(capacity<=MAX_POOLED_SIZE) {
+			synchronized(classes) {
+				buffer = classes[classIndex(capacity)].poll();
+				if(buffer!=null) {
+					retained-=capacity;
+				}
+			}
+		}
+
+		if(buffer==null) {
+			buffer = MemoryUtil.memAlloc(capacity);
+		}
+
+		MemoryUtil.memSet(MemoryUtil.memAddress0(buffer), 0, size);
+		buffer.clear().limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer obtained from {@link #acquire(int)}. It is kept for reuse
+	 * if the pool has room and freed otherwise.
+	 *
+	 * @param buffer the buffer, or null
+	 */
+	public static void release(ByteBuffer buffer) {
+		if(buffer==null) {
+			return;
+		}
+		int capacity = buffer.capacity();
+		if(capacity<=MAX_POOLED_SIZE && Integer.bitCount(capacity)==1 && capacity>=MIN_SIZE) {
+			synchronized(classes) {
+				if(retained+capacity<=MAX_RETAINED_BYTES) {
+					classes[classIndex(capacity)].push(buffer);
+					retained+=capacity;
+					return;
+				}
+			}
+		}
+		MemoryUtil.memFree(buffer);
+	}
+
+	/** @return the number of idle bytes currently held by the pool */
+	public static long getRetainedBytes() {
+		synchronized(classes) {
+			return retained;
+		}
+	}
+
+	/** Frees every idle buffer. */
+	public static void trim() {
+		synchronized(classes) {
+			for(int i=0;i<classes.length;i++) {
+				ByteBuffer buffer;
+				while((buffer = classes[i].poll())!=null) {
+					MemoryUtil.memFree(buffer);
+				}
+			}
+			retained=0;
+		}
+	}
+
+	private static int classSize(int size) {
+		if(size<=MIN_SIZE) {
+			return MIN_SIZE;
+		}
+		if(size>MAX_POOLED_SIZE) {
+			return size;
+		}
+		return Integer.highestOneBit(size-1)<<1;
+	}
+
+	private static int classIndex(int capacity) {
+		return Integer.numberOfTrailingZeros(capacity)-MIN_SHIFT;
+	}
+}
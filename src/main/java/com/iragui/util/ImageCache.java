@@ -0,0 +1,280 @@
+package com.iragui.util;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lwjgl.opengl.GL30;
+
+import com.iragui.FileSystem;
+import com.iragui.FrameProfiler;
+import com.iragui.Window;
+import com.iragui.objects.GUIObject;
+import com.iragui.objects.TextureAtlas;
+import com.iragui.objects.TextureUploader;
+
+/**
+ * Decode-once cache for image resources.
+ * <p>
+ * Decoded {@link BufferedImage}s are shared process-wide through
+ * {@link #getImage(String)}. Each {@link Window} also owns an instance that
+ * keeps the converted pixel data and the uploaded texture (or atlas region)
+ * for every resource path, format and filter combination. Objects acquire an
+ * {@link Entry} and release it when destroyed; entries nobody holds stay
+ * around until more than {@link #MAX_UNUSED_ENTRIES} of them pile up, after
+ * which the least recently used are evicted.
+ * </p>
+ *
+ * <p>Entries must be acquired, released and uploaded on the thread owning the
+ * window's OpenGL context.</p>
+ */
+public class ImageCache {
+
+	/** Maximum number of decoded images kept by {@link #getImage(String)}. */
+	public static final int MAX_DECODED_IMAGES = 64;
+
+	/** Maximum number of unreferenced entries kept per window before eviction. */
+	public static final int MAX_UNUSED_ENTRIES = 32;
+
+	private static final LinkedHashMap<String,BufferedImage> decoded = new LinkedHashMap<>(16,0.75f,true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,BufferedImage> eldest) {
+			return size()>MAX_DECODED_IMAGES;
+		}
+	};
+
+	/**
+	 * Returns the decoded image for a resource path, decoding it only the first
+	 * time it is requested. The returned image is shared and must not be modified.
+	 *
+	 * @param path classpath resource path
+	 * @return the decoded ARGB image, or null if it could not be loaded
+	 */
+	public static BufferedImage getImage(String path) {
+		synchronized(decoded) {
+			BufferedImage image = decoded.get(path);
+			if(image!=null) {
+				return image;
+			}
+		}
+
+		BufferedImage image = FileSystem.loadImage(FileSystem.getInputStream(path));
+		if(image==null) {
+			return null;
+		}
+
+		synchronized(decoded) {
+			BufferedImage existing = decoded.putIfAbsent(path,image);
+			return existing==null?image:existing;
+		}
+	}
+
+	/**
+	 * Converted pixels and GPU texture for one resource path, format and filter.
+	 */
+	public static class Entry {
+		private final int width,height;
+		private final boolean rgba,nearestFilter;
+		private final ByteBuffer pixels;
+
+		private TextureAtlas.Region region;
+		private int textureID=0;
+		private boolean uploaded=false;
+		private int references=0;
+
+		private Entry(BufferedImage image, boolean rgba, boolean nearestFilter) {
+			this.width=image.getWidth();
+			this.height=image.getHeight();
+			this.rgba=rgba;
+			this.nearestFilter=nearestFilter;
+
+			int bytesPerPixel = rgba?GUIObject.RGBA:GUIObject.RGB;
+			this.pixels = BufferPool.acquire(width*height*bytesPerPixel);
+
+			PixelConverter.convert(image,pixels,rgba);
+		}
+
+		/** @return image width in pixels */
+		public int getWidth() {
+			return this.width;
+		}
+
+		/** @return image height in pixels */
+		public int getHeight() {
+			return this.height;
+		}
+
+		/**
+		 * @return a view of the converted pixel data. The content is shared with
+		 * every holder of this entry and must not be modified.
+		 */
+		public ByteBuffer getPixels() {
+			return this.pixels.duplicate();
+		}
+
+		/** @return the atlas region holding this image, or null if it has its own texture */
+		public TextureAtlas.Region getRegion() {
+			return this.region;
+		}
+
+		/** @return the texture to sample this image from */
+		public int getTextureID() {
+			return region!=null?region.getTextureID():textureID;
+		}
+
+		/** @return true once the pixels have been uploaded to the GPU */
+		public boolean isUploaded() {
+			return this.uploaded;
+		}
+	}
+
+	private final Window window;
+	private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<>(16,0.75f,true);
+	private int unused=0;
+
+	/**
+	 * @param window the window whose OpenGL context and atlas the textures belong to
+	 */
+	public ImageCache(Window window) {
+		this.window=window;
+	}
+
+	/**
+	 * Returns the shared entry for a resource, converting the image on first use.
+	 * Every call must be balanced by {@link #release(Entry)}.
+	 *
+	 * @param path          classpath resource path
+	 * @param rgba          whether to keep the alpha channel
+	 * @param nearestFilter whether the texture uses nearest-neighbor filtering
+	 * @return the entry, or null if the image could not be loaded
+	 */
+	public Entry acquire(String path, boolean rgba, boolean nearestFilter) {
+		String key = path+(rgba?"|RGBA":"|RGB")+(nearestFilter?"|NEAREST":"|LINEAR");
+
+		Entry e = entries.get(key);
+		if(e==null) {
+			BufferedImage image = getImage(path);
+			if(image==null) {
+				return null;
+			}
+			e = new Entry(image,rgba,nearestFilter);
+			entries.put(key,e);
+			unused++;
+		}
+
+		if(e.references==0) {
+			unused--;
+		}
+		e.references++;
+		return e;
+	}
+
+	/**
+	 * Drops one reference to an entry. Unreferenced entries are kept for reuse
+	 * and evicted least recently used first.
+	 *
+	 * @param e the entry to release
+	 */
+	public void release(Entry e) {
+		if(e.references<=0) {
+			return;
+		}
+		e.references--;
+		if(e.references==0) {
+			unused++;
+			evict();
+		}
+	}
+
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while(unused>MAX_UNUSED_ENTRIES && it.hasNext()) {
+			Entry e = it.next();
+			if(e.references==0) {
+				it.remove();
+				unused--;
+				free(e);
+			}
+		}
+	}
+
+	/**
+	 * Uploads an entry's pixels the first time it is drawn, into the window's
+	 * atlas if it fits there and into its own texture otherwise.
+	 *
+	 * @param e the entry to upload
+	 */
+	public void upload(Entry e) {
+		if(e.uploaded) {
+			return;
+		}
+		long start = window.getProfiler().start();
+
+		TextureAtlas atlas = window.getTextureAtlas();
+		if(e.rgba && atlas!=null) {
+			e.region = atlas.allocate(e.width,e.height,e.nearestFilter);
+		}
+
+		if(e.region!=null) {
+			atlas.upload(e.region,e.pixels);
+		} else {
+			int filter = e.nearestFilter?GL30.GL_NEAREST:GL30.GL_LINEAR;
+			int format = e.rgba?GL30.GL_RGBA:GL30.GL_RGB;
+
+			e.textureID = GL30.glGenTextures();
+			GL30.glBindTexture(GL30.GL_TEXTURE_2D, e.textureID);
+			GL30.glPixelStorei(GL30.GL_UNPACK_ALIGNMENT, 1);
+			GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MIN_FILTER, filter);
+			GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_MAG_FILTER, filter);
+			GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_WRAP_S, GL30.GL_REPEAT);
+			GL30.glTexParameteri(GL30.GL_TEXTURE_2D, GL30.GL_TEXTURE_WRAP_T, GL30.GL_REPEAT);
+			TextureUploader uploader = window.getTextureUploader();
+			if(uploader!=null) {
+				// allocate only, the pixels follow through the upload ring
+				GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, format, e.width, e.height, 0, format, GL30.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+				GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+				uploader.upload(e.textureID, 0, 0, e.width, e.height, format, e.pixels);
+			} else {
+				GL30.glTexImage2D(GL30.GL_TEXTURE_2D, 0, format, e.width, e.height, 0, format, GL30.GL_UNSIGNED_BYTE, e.pixels);
+				GL30.glBindTexture(GL30.GL_TEXTURE_2D, 0);
+				FrameProfiler.countUpload((long) e.width*e.height*(e.rgba?4:3));
+			}
+		}
+		e.uploaded=true;
+		window.getProfiler().stop(FrameProfiler.UPLOAD, start);
+	}
+
+	private void free(Entry e) {
+		BufferPool.release(e.pixels);
+		if(e.region!=null) {
+			TextureAtlas atlas = window.getTextureAtlas();
+			if(atlas!=null) {
+				atlas.release(e.region);
+			}
+			e.region=null;
+		}
+		if(e.textureID!=0) {
+			GL30.glDeleteTextures(e.textureID);
+			e.textureID=0;
+		}
+		e.uploaded=false;
+	}
+
+	/** @return the number of entries currently cached, referenced or not */
+	public int size() {
+		return entries.size();
+	}
+
+	/** Frees the textures of every entry. Called when the window closes. */
+	public void destroy() {
+		for(Entry e : entries.values()) {
+			free(e);
+		}
+		entries.clear();
+		unused=0;
+	}
+}
@@ -0,0 +1,235 @@
+package com.iragui.util;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import com.iragui.GUI;
+
+/**
+ * Leveled logger of a {@link GUI}, see {@link GUI#getLogger()}.
+ * <p>
+ * A statement below the level, or any statement while {@link GUI#logOutput}
+ * is false, returns after one check and builds no string. Messages are
+ * templates whose {@code {}} markers are replaced by the arguments, so
+ * callers pass values instead of concatenating them:
+ * </p>
+ * <pre>{@code
+ * gui.getLogger().debug("added object {}", o.name);
+ * }</pre>
+ * An enabled statement formats into a reused buffer of the
+ * {@link AsyncAppender} and returns, while a background thread does the
+ * printing, so logging never waits on the console. Strings and boxed numbers
+ * are appended without allocating; other arguments are converted with
+ * {@link String#valueOf(Object)} on the logging thread. For messages that are
+ * expensive to build use {@link #log(int, Supplier)}.
+ *
+ * <p>The level starts at {@link #INFO}, or at the one named by
+ * {@code -Diragui.logLevel} ({@code debug}, {@code info}, {@code warn},
+ * {@code error} or {@code off}).</p>
+ */
+public class Logger {
+
+	/** Detail useful while debugging the GUI itself. */
+	public static final int DEBUG = 0;
+	/** Notable events such as windows opening and closing. */
+	public static final int INFO = 1;
+	/** Something went wrong and the GUI worked around it. */
+	public static final int WARN = 2;
+	/** Something failed. */
+	public static final int ERROR = 3;
+	/** Level that disables all output. */
+	public static final int OFF = 4;
+
+	private static final int DEFAULT_LEVEL = parseLevel(System.getProperty("iragui.logLevel", "info"));
+
+	private final GUI gui;
+	private final AsyncAppender appender;
+	private volatile int level = DEFAULT_LEVEL;
+
+	/**
+	 * @param gui      the GUI whose {@link GUI#logOutput} switches output
+	 * @param appender where lines go
+	 */
+	public Logger(GUI gui, AsyncAppender appender) {
+		this.gui=gui;
+		this.appender=appender;
+	}
+
+	/** @param level the lowest level printed, {@link #DEBUG} to {@link #OFF} */
+	public void setLevel(int level) {
+		this.level=level;
+	}
+
+	/** @return the lowest level printed */
+	public int getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * @param level a level from {@link #DEBUG} to {@link #ERROR}
+	 * @return whether statements at that level are printed
+	 */
+	public boolean isEnabled(int level) {
+		return level>=this.level && gui.logOutput;
+	}
+
+	/** Logs at {@link #DEBUG}. */
+	public void debug(String message) {
+		if(isEnabled(DEBUG)) {
+			append(DEBUG, message, 0, null, null, null);
+		}
+	}
+
+	/** Logs at {@link #DEBUG}, replacing {@code {}} with {@code a}. */
+	public void debug(String template, Object a) {
+		if(isEnabled(DEBUG)) {
+			append(DEBUG, template, 1, a, null, null);
+		}
+	}
+
+	/** Logs at {@link #DEBUG}, replacing each {@code {}} with the next argument. */
+	public void debug(String template, Object a, Object b) {
+		if(isEnabled(DEBUG)) {
+			append(DEBUG, template, 2, a, b, null);
+		}
+	}
+
+	/** Logs at {@link #DEBUG}, replacing each {@code {}} with the next argument. */
+	public void debug(String template, Object a, Object b, Object c) {
+		if(isEnabled(DEBUG)) {
+			append(DEBUG, template, 3, a, b, c);
+		}
+	}
+
+	/** Logs at {@link #INFO}. */
+	public void info(String message) {
+		if(isEnabled(INFO)) {
+			append(INFO, message, 0, null, null, null);
+		}
+	}
+
+	/** Logs at {@link #INFO}, replacing {@code {}} with {@code a}. */
+	public void info(String template, Object a) {
+		if(isEnabled(INFO)) {
+			append(INFO, template, 1, a, null, null);
+		}
+	}
+
+	/** Logs at {@link #INFO}, replacing each {@code {}} with the next argument. */
+	public void info(String template, Object a, Object b) {
+		if(isEnabled(INFO)) {
+			append(INFO, template, 2, a, b, null);
+		}
+	}
+
+	/** Logs at {@link #INFO}, replacing each {@code {}} with the next argument. */
+	public void info(String template, Object a, Object b, Object c) {
+		if(isEnabled(INFO)) {
+			append(INFO, template, 3, a, b, c);
+		}
+	}
+
+	/** Logs at {@link #WARN}. */
+	public void warn(String message) {
+		if(isEnabled(WARN)) {
+			append(WARN, message, 0, null, null, null);
+		}
+	}
+
+	/** Logs at {@link #WARN}, replacing {@code {}} with {@code a}. */
+	public void warn(String template, Object a) {
+		if(isEnabled(WARN)) {
+			append(WARN, template, 1, a, null, null);
+		}
+	}
+
+	/** Logs at {@link #WARN}, replacing each {@code {}} with the next argument. */
+	public void warn(String template, Object a, Object b) {
+		if(isEnabled(WARN)) {
+			append(WARN, template, 2, a, b, null);
+		}
+	}
+
+	/** Logs at {@link #ERROR}. */
+	public void error(String message) {
+		if(isEnabled(ERROR)) {
+			append(ERROR, message, 0, null, null, null);
+		}
+	}
+
+	/** Logs at {@link #ERROR}, replacing {@code {}} with {@code a}. */
+	public void error(String template, Object a) {
+		if(isEnabled(ERROR)) {
+			append(ERROR, template, 1, a, null, null);
+		}
+	}
+
+	/**
+	 * Logs a message that is only built when the level is enabled.
+	 *
+	 * @param level   the level of the message
+	 * @param message builds the message
+	 */
+	public void log(int level, Supplier<String> message) {
+		if(isEnabled(level)) {
+			append(level, message.get(), 0, null, null, null);
+		}
+	}
+
+	private void append(int level, String template, int args, Object a, Object b, Object c) {
+		long sequence = appender.claim();
+		if(sequence<0) {
+			return;
+		}
+		StringBuilder line = appender.getLine(sequence);
+		try {
+			int from=0;
+			for(int i=0;i<args;i++) {
+				int marker = template.indexOf("{}", from);
+				if(marker<0) {
+					break;
+				}
+				line.append(template, from, marker);
+				appendValue(line, i==0?a:i==1?b:c);
+				from=marker+2;
+			}
+			line.append(template, from, template.length());
+		} catch (RuntimeException e) {
+			// a failing toString still has to publish, or the writer stops at this slot
+			line.append(" <").append(e).append('>');
+		} finally {
+			appender.publish(sequence, level);
+		}
+	}
+
+	private static void appendValue(StringBuilder line, Object value) {
+		if(value instanceof Integer i) {
+			line.append(i.intValue());
+		} else if(value instanceof Long l) {
+			line.append(l.longValue());
+		} else if(value instanceof Float f) {
+			line.append(f.floatValue());
+		} else if(value instanceof Double d) {
+			line.append(d.doubleValue());
+		} else if(value instanceof Boolean bool) {
+			line.append(bool.booleanValue());
+		} else {
+			line.append(value);
+		}
+	}
+
+	private static int parseLevel(String name) {
+		switch(name.toLowerCase(Locale.ROOT)) {
+		case "debug":
+			return DEBUG;
+		case "warn":
+			return WARN;
+		case "error":
+			return ERROR;
+		case "off":
+			return OFF;
+		default:
+			return INFO;
+		}
+	}
+}
@@ -14,8 +14,6 @@ import com.iragui.GUI;
 import com.iragui.objects.ButtonObject;
 import com.iragui.objects.WrappedBufferedImage;
 
-import com.iragui.FileSystem;
-
 public class ObjectUtils {
 	public static ButtonObject createButtonObject(String name, 
 			   int layer, 
@@ -30,7 +28,7 @@ public class ObjectUtils {
 		
 		WrappedBufferedImage[] wBI = new WrappedBufferedImage[images.length];
 		for(int i=0;i<wBI.length;i++) {
-			wBI[i]=new WrappedBufferedImage(name+":WrappedBufferedImage:"+i, layer, gui, x, y, nearestFilter, rgba,FileSystem.getImage(images[i]));
+			wBI[i]=new WrappedBufferedImage(name+":WrappedBufferedImage:"+i, layer, gui, x, y, nearestFilter, rgba,images[i]);
 		}
 		return new ButtonObject(name,layer,gui,x,y,sizeX,sizeY,nearestFilter,rgba,wBI);
 	}
@@ -0,0 +1,229 @@
+package com.iragui.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts {@link BufferedImage} pixels into the bottom-up RGBA or RGB layout
+ * uploaded to OpenGL.
+ * <p>
+ * Integer-packed images are read straight from their backing {@code int[]}.
+ * Any other image is copied out once with a bulk {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+ * Each output row is swizzled in a plain array loop and written to the target buffer
+ * with a single absolute bulk put. Images of at least {@link #PARALLEL_THRESHOLD}
+ * pixels are split into row bands and converted on the common {@link ForkJoinPool}.
+ * </p>
+ *
+ * <p>Directions follow {@link com.iragui.objects.WrappedBufferedImage}:
+ * 0 is the image as is, 1 is mirrored horizontally, and 2 and 3 are transposed
+ * variants that require a square image.</p>
+ */
+public class PixelConverter {
+
+	/** Pixel count from which conversion is split across threads. */
+	public static final int PARALLEL_THRESHOLD = 256*256;
+
+	/** Smallest number of rows converted by one task. */
+	private static final int MIN_BAND_ROWS = 32;
+
+	private PixelConverter() {}
+
+	/**
+	 * Converts an image into the target buffer, flipped vertically.
+	 *
+	 * @param image  the source image
+	 * @param target direct buffer of at least {@code width * height * (rgba?4:3)} bytes
+	 * @param rgba   whether to write RGBA (true) or RGB (false)
+	 * @return the target, with position 0 and limit at the end of the pixel data
+	 */
+	public static ByteBuffer convert(BufferedImage image, ByteBuffer target, boolean rgba) {
+		return convert(image,target,rgba,0);
+	}
+
+	/**
+	 * Converts an image into the target buffer in one of the four directional layouts.
+	 *
+	 * @param image     the source image
+	 * @param target    direct buffer of at least {@code width * height * (rgba?4:3)} bytes
+	 * @param rgba      whether to write RGBA (true) or RGB (false)
+	 * @param direction the direction index (0–3)
+	 * @return the target, with position 0 and limit at the end of the pixel data
+	 */
+	public static ByteBuffer convert(BufferedImage image, ByteBuffer target, boolean rgba, int direction) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		if(direction>1 && width!=height) {
+			throw new IllegalArgumentException("directions 2 and 3 require a square image");
+		}
+
+		Job job = new Job(image,target,rgba,direction);
+
+		if(width*height>=PARALLEL_THRESHOLD && height>=MIN_BAND_ROWS*2) {
+			ForkJoinPool.commonPool().invoke(new Band(job,0,height));
+		} else {
+			job.convertRows(0,height);
+		}
+
+		target.limit(width*height*(rgba?4:3));
+		target.position(0);
+		return target;
+	}
+
+	/**
+	 * Fills an image with a single ARGB color, writing the backing array
+	 * directly when possible.
+	 *
+	 * @param image the image to fill
+	 * @param argb  the color as returned by {@link java.awt.Color#getRGB()}
+	 */
+	public static void fill(BufferedImage image, int argb) {
+		WritableRaster raster = image.getRaster();
+		if(image.getType()==BufferedImage.TYPE_INT_ARGB && raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModelTranslateX()==0 && raster.getSampleModelTranslateY()==0) {
+			int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+			Arrays.fill(data,argb);
+			return;
+		}
+
+		int[] row = new int[image.getWidth()];
+		Arrays.fill(row,argb);
+		for(int y=0;y<image.getHeight();y++) {
+			image.setRGB(0,y,row.length,1,row,0,row.length);
+		}
+	}
+
+	/**
+	 * Source pixels and layout shared by all bands of one conversion.
+	 */
+	private static class Job {
+		private final int width,height;
+		private final int[] data;
+		private final int offset,stride;
+		private final int alphaMask;
+		private final boolean rgba;
+		private final int direction;
+		private final IntBuffer intTarget;
+		private final ByteBuffer byteTarget;
+
+		private Job(BufferedImage image, ByteBuffer target, boolean rgba, int direction) {
+			this.width=image.getWidth();
+			this.height=image.getHeight();
+			this.rgba=rgba;
+			this.direction=direction;
+
+			WritableRaster raster = image.getRaster();
+			int type = image.getType();
+			if((type==BufferedImage.TYPE_INT_ARGB || type==BufferedImage.TYPE_INT_RGB)
+					&& raster.getDataBuffer() instanceof DataBufferInt
+					&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+					&& raster.getSampleModelTranslateX()==0 && raster.getSampleModelTranslateY()==0) {
+				DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+				this.data=buffer.getData();
+				this.offset=buffer.getOffset();
+				this.stride=((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+				// TYPE_INT_RGB leaves the top byte undefined, getRGB reports it opaque
+				this.alphaMask=(type==BufferedImage.TYPE_INT_RGB)?0xFF000000:0;
+			} else {
+				this.data=image.getRGB(0,0,width,height,null,0,width);
+				this.offset=0;
+				this.stride=width;
+				this.alphaMask=0;
+			}
+
+			if(rgba) {
+				// little endian ints put R, G, B, A in memory order
+				this.intTarget=target.duplicate().clear().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				this.byteTarget=null;
+			} else {
+				this.intTarget=null;
+				this.byteTarget=target.duplicate().clear();
+			}
+		}
+
+		/**
+		 * Converts output rows {@code [from, to)}. Rows are counted from the
+		 * bottom of the image, matching OpenGL's texture origin.
+		 */
+		private void convertRows(int from, int to) {
+			int[] ints = rgba?new int[width]:null;
+			byte[] bytes = rgba?null:new byte[width*3];
+
+			for(int r=from;r<to;r++) {
+				int index,step;
+				switch(direction) {
+				case 1:
+					index=offset+(height-1-r)*stride+width-1;
+					step=-1;
+					break;
+				case 2:
+					index=offset+r;
+					step=stride;
+					break;
+				case 3:
+					index=offset+height-1-r;
+					step=stride;
+					break;
+				default:
+					index=offset+(height-1-r)*stride;
+					step=1;
+					break;
+				}
+
+				if(rgba) {
+					for(int c=0;c<width;c++) {
+						int p = data[index]|alphaMask;
+						ints[c]=(p&0xFF00FF00)|((p>>16)&0xFF)|((p&0xFF)<<16);
+						index+=step;
+					}
+					intTarget.put(r*width,ints);
+				} else {
+					int b=0;
+					for(int c=0;c<width;c++) {
+						int p = data[index];
+						bytes[b++]=(byte) (p>>16);
+						bytes[b++]=(byte) (p>>8);
+						bytes[b++]=(byte) p;
+						index+=step;
+					}
+					byteTarget.put(r*width*3,bytes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits a conversion into row bands until each is small enough to run directly.
+	 */
+	private static class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		// bands are never serialized, the job only lives for one conversion
+		private final transient Job job;
+		private final int from,to;
+
+		private Band(Job job, int from, int to) {
+			this.job=job;
+			this.from=from;
+			this.to=to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to-from<=MIN_BAND_ROWS*2 || (to-from)*job.width<PARALLEL_THRESHOLD/4) {
+				job.convertRows(from,to);
+				return;
+			}
+			int mid = (from+to)>>>1;
+			invokeAll(new Band(job,from,mid),new Band(job,mid,to));
+		}
+	}
+}
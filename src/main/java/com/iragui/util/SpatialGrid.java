@@ -0,0 +1,226 @@
+package com.iragui.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import com.iragui.objects.GUIObject;
+
+/**
+ * Uniform grid over window coordinates used to find the objects under a point.
+ * <p>
+ * Each object is stored in every {@link #CELL_SIZE} pixel cell its bounds,
+ * grown by {@link #HIT_MARGIN} on each side, overlap. A query only looks at
+ * the objects of one cell, so hit-testing cost depends on how many objects
+ * overlap the point rather than on how many exist. The margin covers
+ * interactions just outside an object, such as the resize edges of a
+ * {@link com.iragui.objects.SubWindowObject}.
+ * </p>
+ *
+ * <p>Coordinates are OpenGL window coordinates with the origin at the
+ * bottom-left, the same space as {@link GUIObject#getX()} and
+ * {@link GUIObject#getY()}. Objects re-index themselves through
+ * {@link #update(GUIObject)} when their position, size or scale changes, which
+ * is cheap when nothing moved.</p>
+ */
+public class SpatialGrid {
+
+	/** Width and height of a grid cell in pixels. */
+	public static final int CELL_SIZE = 64;
+
+	/** Distance around an object's bounds that still counts as a hit. */
+	public static final int HIT_MARGIN = 16;
+
+	private static final int CELL_SHIFT = Integer.numberOfTrailingZeros(CELL_SIZE);
+
+	/**
+	 * Cell range an object is currently stored in.
+	 */
+	private static class Entry {
+		private int x0,y0,x1,y1;
+		private int cellX0,cellY0,cellX1,cellY1;
+	}
+
+	private final HashMap<Long,ArrayList<GUIObject>> cells = new HashMap<>();
+	private final IdentityHashMap<GUIObject,Entry> entries = new IdentityHashMap<>();
+
+	/**
+	 * Indexes an object, or re-indexes it if it is already present.
+	 *
+	 * @param o the object
+	 */
+	public void add(GUIObject o) {
+		Entry e = entries.get(o);
+		if(e==null) {
+			e = new Entry();
+			entries.put(o,e);
+			bounds(o,e);
+			insert(o,e);
+		} else {
+			update(o);
+		}
+	}
+
+	/**
+	 * Removes an object from the index.
+	 *
+	 * @param o the object
+	 */
+	public void remove(GUIObject o) {
+		Entry e = entries.remove(o);
+		if(e!=null) {
+			erase(o,e);
+		}
+	}
+
+	/**
+	 * Moves an indexed object to the cells of its current bounds. Objects that
+	 * are not indexed are ignored.
+	 *
+	 * @param o the object
+	 */
+	public void update(GUIObject o) {
+		Entry e = entries.get(o);
+		if(e==null) {
+			return;
+		}
+		int x0=e.x0,y0=e.y0,x1=e.x1,y1=e.y1;
+		bounds(o,e);
+		if(x0==e.x0 && y0==e.y0 && x1==e.x1 && y1==e.y1) {
+			return;
+		}
+
+		int cellX0 = e.x0>>CELL_SHIFT, cellY0 = e.y0>>CELL_SHIFT;
+		int cellX1 = e.x1>>CELL_SHIFT, cellY1 = e.y1>>CELL_SHIFT;
+		if(cellX0==e.cellX0 && cellY0==e.cellY0 && cellX1==e.cellX1 && cellY1==e.cellY1) {
+			return;
+		}
+		erase(o,e);
+		insert(o,e);
+	}
+
+	/**
+	 * Re-indexes every object in a collection.
+	 *
+	 * @param objects the objects to check
+	 */
+	public void updateAll(Collection<? extends GUIObject> objects) {
+		for(GUIObject o : objects) {
+			update(o);
+		}
+	}
+
+	/**
+	 * Collects the objects whose bounds, grown by {@link #HIT_MARGIN}, contain a point.
+	 *
+	 * @param x      x coordinate in window pixels
+	 * @param y      y coordinate in window pixels, from the bottom
+	 * @param result list the objects are appended to
+	 * @return the result list
+	 */
+	public ArrayList<GUIObject> query(int x, int y, ArrayList<GUIObject> result) {
+		ArrayList<GUIObject> cell = cells.get(key(x>>CELL_SHIFT,y>>CELL_SHIFT));
+		if(cell==null) {
+			return result;
+		}
+		for(int i=0;i<cell.size();i++) {
+			GUIObject o = cell.get(i);
+			Entry e = entries.get(o);
+			if(x>=e.x0 && x<=e.x1 && y>=e.y0 && y<=e.y1) {
+				result.add(o);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the visible object on the highest layer whose visible bounds
+	 * contain a point, without the hit margin.
+	 *
+	 * @param x x coordinate in window pixels
+	 * @param y y coordinate in window pixels, from the bottom
+	 * @return the topmost object, or null if there is none
+	 */
+	public GUIObject topmostAt(int x, int y) {
+		ArrayList<GUIObject> cell = cells.get(key(x>>CELL_SHIFT,y>>CELL_SHIFT));
+		if(cell==null) {
+			return null;
+		}
+		GUIObject top = null;
+		for(int i=0;i<cell.size();i++) {
+			GUIObject o = cell.get(i);
+			if(!o.getVisible() || (top!=null && o.getLayer()<=top.getLayer())) {
+				continue;
+			}
+			if(x>=o.getX() && x<=o.getX()+width(o) && y>=o.getY() && y<=o.getY()+height(o) &&
+			   o.interactionInVisibleBounds(x,y)) {
+				top=o;
+			}
+		}
+		return top;
+	}
+
+	/** @return the number of indexed objects */
+	public int size() {
+		return entries.size();
+	}
+
+	/** Removes every object. */
+	public void clear() {
+		cells.clear();
+		entries.clear();
+	}
+
+	private static int width(GUIObject o) {
+		return Math.max(o.getSizeX(),o.getSizeX()*o.getScale());
+	}
+
+	private static int height(GUIObject o) {
+		return Math.max(o.getSizeY(),o.getSizeY()*o.getScale());
+	}
+
+	private static void bounds(GUIObject o, Entry e) {
+		e.x0=o.getX()-HIT_MARGIN;
+		e.y0=o.getY()-HIT_MARGIN;
+		e.x1=o.getX()+width(o)+HIT_MARGIN;
+		e.y1=o.getY()+height(o)+HIT_MARGIN;
+	}
+
+	private void insert(GUIObject o, Entry e) {
+		e.cellX0=e.x0>>CELL_SHIFT;
+		e.cellY0=e.y0>>CELL_SHIFT;
+		e.cellX1=e.x1>>CELL_SHIFT;
+		e.cellY1=e.y1>>CELL_SHIFT;
+		for(int cy=e.cellY0;cy<=e.cellY1;cy++) {
+			for(int cx=e.cellX0;cx<=e.cellX1;cx++) {
+				Long k = key(cx,cy);
+				ArrayList<GUIObject> cell = cells.get(k);
+				if(cell==null) {
+					cell = new ArrayList<>();
+					cells.put(k,cell);
+				}
+				cell.add(o);
+			}
+		}
+	}
+
+	private void erase(GUIObject o, Entry e) {
+		for(int cy=e.cellY0;cy<=e.cellY1;cy++) {
+			for(int cx=e.cellX0;cx<=e.cellX1;cx++) {
+				Long k = key(cx,cy);
+				ArrayList<GUIObject> cell = cells.get(k);
+				if(cell!=null) {
+					cell.remove(o);
+					if(cell.isEmpty()) {
+						cells.remove(k);
+					}
+				}
+			}
+		}
+	}
+
+	private static long key(int cellX, int cellY) {
+		return ((long) cellX<<32)|(cellY&0xFFFFFFFFL);
+	}
+}